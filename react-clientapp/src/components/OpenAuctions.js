@@ -2,7 +2,6 @@ import React, {Component} from 'react';
 import {Button, Table} from 'reactstrap';
 import AuthenticationService from './AuthenticationService';
 import EventBus from 'vertx3-eventbus-client';
-import Rx from 'rx';
 
 const url = window.location.protocol + '//' + window.location.host + '/eventbus';
 console.log('SockJS listening on:' +  url);
@@ -12,6 +11,13 @@ export class OpenAuctions extends Component {
   static displayName = OpenAuctions.name;
   Auth = new AuthenticationService();
   eb;
+  // the address where the server streams the updates of the auctions on screen, random thus private to this component
+  subscription = 'subscriptions.' + Array.from({length: 24}, () => Math.floor(Math.random() * 36).toString(36)).join('');
+  // the version of the last snapshot or changes, to resume from after a reconnection (not the versions of the streamed
+  // updates: the updates of different auctions are not streamed in the order of their versions)
+  version;
+  waiting = []; // the requests sent once the subscription is registered
+  registered = false; // whether the server acknowledged the registration of the subscription on this connection
 
   constructor(props) {
     super(props);
@@ -24,19 +30,52 @@ export class OpenAuctions extends Component {
     this.loadData();
   }
 
+  componentWillUnmount() {
+    this.eb.close();
+  }
+
   fetch(url, options) {
     return this.Auth.fetch(url, options);
   }
 
   /**
-   * Load open auctions from REST API
+   * Send a request on the event bus, once the subscription is registered, with the token of the user as the API requests
+   * @param address of the request
+   * @param body of the request
+   * @returns {Promise} the body of the reply
+   */
+  request(address, body) {
+    return new Promise((resolve, reject) => {
+      const headers = {'Authorization': 'Bearer ' + this.Auth.getToken()};
+      const send = () => this.eb.send(address, body, headers, (err, reply) => err ? reject(err) : resolve(reply.body));
+      if (this.registered && this.eb.state === EventBus.OPEN) {
+        send();
+      } else {
+        this.waiting.push(send);
+      }
+    });
+  }
+
+  /**
+   * Subscribe to the open auctions: a snapshot, then the stream of the updates after its version only, thus no bid is
+   * missed in between. Once a version is known, only the changes since are asked for.
    */
   loadData() {
+    const request = {address: this.subscription, offset: 0, max: 20};
+    if (this.version) {
+      request.since = this.version;
+      request.auctions = this.state.auctions.map(auction => auction.id);
+    }
     try {
-      this.fetch('api/auctions?closed=false&offset=0&max=20')
-        .then(response => response)
-        .then(data => {
-          this.setState({auctions: data, loading: false});
+      this.request('auctions.subscribe', request)
+        .then(body => {
+          const reply = JSON.parse(body);
+          this.version = reply.version;
+          if (reply.snapshot) {
+            this.setState({auctions: reply.auctions, loading: false});
+          } else {
+            reply.auctions.forEach(auction => this.onBid(auction));
+          }
         })
         .catch(err => {
           this.setState({err, auctions: [], loading: false});
@@ -47,32 +86,58 @@ export class OpenAuctions extends Component {
   }
 
   /**
-   * Register the event bus for listening to bids from the server
+   * Register the event bus for listening to the updates of the auctions from the server
    */
   registerEventBus(url) {
     this.eb = new EventBus(url);
+    this.eb.enableReconnect(true);
+    let subscribed = false; // by a previous connection
     this.eb.onopen = () => {
-      this.eb.enableReconnect(true);
-      Rx.Observable.create((observer) => {
-        try {
-          this.eb.registerHandler("bids", (err, msg) => {
-            observer.next(msg.body);
-          })
-        } catch (err) {
-          observer.error(err);
+      // the client keeps its handlers across the connections but the server forgets them: registered again explicitly
+      delete this.eb.handlers[this.subscription];
+      this.eb.registerHandler(this.subscription, (err, msg) => {
+        if (err) {
+          this.setState({err});
+          return;
         }
-      }).subscribe(message => {
-        const auction = JSON.parse(message);
-        const data = this.state.auctions.map(item => {
-          return (item.id === auction.id) ? auction : item;
-        });
-        this.setState({auctions: data});
-      }, err => {
-        this.setState({err})
-      })
+        const body = JSON.parse(msg.body);
+        if (body.registered) {
+          this.onRegistered(subscribed);
+          subscribed = true;
+          return;
+        }
+        this.onBid(body);
+      });
+    };
+    this.eb.onclose = () => {
+      this.registered = false;
     };
   }
 
+  /**
+   * Send the waiting requests once the server acknowledged the registration: the stream starts right after the snapshot
+   * @param reconnected whether the subscription is resumed from the last version, the server having forgotten it
+   */
+  onRegistered(reconnected) {
+    this.registered = true;
+    if (reconnected) {
+      this.loadData();
+    }
+    this.waiting.forEach(send => send());
+    this.waiting = [];
+  }
+
+  /**
+   * Update the auction that received a bid
+   * @param auction updated
+   */
+  onBid(auction) {
+    const data = this.state.auctions.map(item => {
+      return (item.id === auction.id) ? auction : item;
+    });
+    this.setState({auctions: data});
+  }
+
   /**
    * Perform a bid for the provided auction
    * Beware that the bid function definition is slightly different from a class method. This is a trick to avoid the explicit binding for React
@@ -3,12 +3,36 @@ import {OpenAuctions} from './OpenAuctions';
 import {ErrorHandler} from './ErrorHandler';
 import {mount, shallow} from 'enzyme';
 
+// the handlers of the client outlive its connections, as those of vertx3-eventbus-client
+jest.mock('vertx3-eventbus-client', () => {
+  const EventBus = jest.fn().mockImplementation(function () {
+    this.handlers = {};
+    this.registrations = [];
+    this.state = EventBus.CLOSED;
+    this.enableReconnect = jest.fn();
+    this.registerHandler = jest.fn((address, callback) => {
+      if (!this.handlers[address]) {
+        this.handlers[address] = [];
+        this.registrations.push(address);// the register frame
+      }
+      this.handlers[address].push(callback);
+    });
+    this.send = jest.fn();
+    this.close = jest.fn();
+  });
+  EventBus.OPEN = 1;
+  EventBus.CLOSED = 3;
+  return EventBus;
+});
+
 
 describe('OpenAuctions test suit', () => {
 
-  it('Show table after loading async data with fetch function', async (done) => {
+  afterEach(() => jest.restoreAllMocks());// the request spies
+
+  it('Show table after subscribing to the snapshot of the open auctions', async (done) => {
     const spy0 = jest.spyOn(OpenAuctions.prototype, 'componentDidMount');
-    const fakePromise = Promise.resolve([{
+    const fakePromise = Promise.resolve(JSON.stringify({version: '1a-42', snapshot: true, auctions: [{
       id: '12345',
       product: 'My super product',
       price: 120.00,
@@ -21,10 +45,10 @@ describe('OpenAuctions test suit', () => {
         price: 100.01,
         buyer: 'Jane Doe',
         ending: '2019-04-17T07:56:40.432Z'
-      }]);
+      }]}));
 
 
-    const spy = jest.spyOn(OpenAuctions.prototype, 'fetch').mockImplementation(() => {
+    const spy = jest.spyOn(OpenAuctions.prototype, 'request').mockImplementation(() => {
       return fakePromise;
     });
     const wrapper = shallow(<OpenAuctions/>);
@@ -64,9 +88,43 @@ describe('OpenAuctions test suit', () => {
 
   });
 
+  it('Register again after a reconnection, then resume from the last version', () => {
+    const component = shallow(<OpenAuctions/>).instance();
+    const eb = component.eb;
+    const acknowledge = () => eb.handlers[component.subscription].forEach(handler =>
+      handler(null, {body: JSON.stringify({registered: true})}));
+
+    eb.state = 1;
+    eb.onopen();
+    expect(eb.registrations).toEqual([component.subscription]);
+    expect(eb.send).not.toHaveBeenCalled();// not before the registration is acknowledged
+    acknowledge();
+    expect(eb.send).toHaveBeenCalledTimes(1);
+    const first = eb.send.mock.calls[0];
+    expect(first[0]).toBe('auctions.subscribe');
+    expect(first[1].since).toBeUndefined();
+    first[3](null, {body: JSON.stringify({version: '1a-42', snapshot: true, auctions: [{id: '12345', price: 120.00}]})});
+
+    return Promise.resolve().then(() => {
+      eb.state = 3;
+      eb.onclose();
+      eb.state = 1;
+      eb.onopen();
+      expect(eb.registrations).toEqual([component.subscription, component.subscription]);
+      expect(eb.handlers[component.subscription]).toHaveLength(1);
+      expect(eb.send).toHaveBeenCalledTimes(1);// not before the registration is acknowledged
+      acknowledge();
+      expect(eb.send).toHaveBeenCalledTimes(2);
+      const resumed = eb.send.mock.calls[1];
+      expect(resumed[0]).toBe('auctions.subscribe');
+      expect(resumed[1].since).toBe('1a-42');
+      expect(resumed[1].auctions).toEqual(['12345']);
+    });
+  });
+
   it('Show error message in case of pb',  () => {
     expect.assertions(3);
-    const spy = jest.spyOn(OpenAuctions.prototype, 'fetch').mockImplementation(() => {
+    const spy = jest.spyOn(OpenAuctions.prototype, 'request').mockImplementation(() => {
       throw new Error('test');
     });
     expect(spy).toThrow(new Error('test'));
@@ -0,0 +1,150 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_LENGTH;
+
+/**
+ * Writes the JSON form of the auctions straight into buffers, without building a JsonObject tree nor an intermediate
+ * String. The output is the one of {@code JsonObject.encode()}: {"id":..,"product":..,"price":..,"ending":..,"buyer":..}.
+ */
+final class AuctionEncoder {
+  private static final Buffer OPEN = Buffer.buffer("[");
+  private static final Buffer SEPARATOR = Buffer.buffer(",");
+  private static final Buffer CLOSE = Buffer.buffer("]");
+  private static final byte[] ID = bytes("{\"id\":");
+  private static final byte[] PRODUCT = bytes(",\"product\":");
+  private static final byte[] PRICE = bytes(",\"price\":");
+  private static final byte[] ENDING = bytes(",\"ending\":");
+  private static final byte[] BUYER = bytes(",\"buyer\":");
+  private static final byte[] NULL = bytes("null");
+  private static final byte[] HEX = bytes("0123456789ABCDEF");
+
+  private AuctionEncoder() {
+  }
+
+  /**
+   * @param auction the auction to encode
+   * @return the JSON form of the auction
+   */
+  static Buffer encode(Auction auction) {
+    final String id = auction.getId();
+    final String product = auction.getProduct();
+    final String ending = auction.getEndingTime().toString();
+    final String buyer = auction.getCurrentBuyer();
+    final String price = Double.toString(auction.getCurrentAuctionValue().doubleValue());// as written by Jackson
+    final Buffer buffer = Buffer.buffer(64 + id.length() + 3 * product.length() + ending.length() + price.length() +
+      (buyer == null ? 4 : 3 * buyer.length()));
+    appendString(buffer.appendBytes(ID), id);
+    appendString(buffer.appendBytes(PRODUCT), product);
+    appendAscii(buffer.appendBytes(PRICE), price);
+    appendString(buffer.appendBytes(ENDING), ending);
+    appendString(buffer.appendBytes(BUYER), buyer);
+    return buffer.appendByte((byte) '}');
+  }
+
+  /**
+   * Send a JSON array made of already encoded items. Its length being known, the items are written as they are (no
+   * copy into a response body) with a Content-Length header, which ends the response.
+   *
+   * @param response the response, its status and other headers being set
+   * @param items    the JSON form of the items
+   */
+  static void send(HttpServerResponse response, List<Buffer> items) {
+    send(response, OPEN, items, CLOSE);
+  }
+
+  /**
+   * Send a JSON array made of already encoded items, within a JSON document, see {@link #send(HttpServerResponse, List)}.
+   *
+   * @param response the response, its status and other headers being set
+   * @param head     the JSON document up to the opening bracket of the array, included
+   * @param items    the JSON form of the items
+   * @param tail     the JSON document from the closing bracket of the array, included
+   */
+  static void send(HttpServerResponse response, Buffer head, List<Buffer> items, Buffer tail) {
+    long length = head.length() + Math.max(items.size() - 1, 0) + tail.length();// with the commas
+    for (Buffer item : items) {
+      length += item.length();
+    }
+    response.putHeader(CONTENT_LENGTH, Long.toString(length)).write(head);
+    for (int i = 0; i < items.size(); i++) {
+      if (i > 0) {
+        response.write(SEPARATOR);
+      }
+      response.write(items.get(i));
+    }
+    response.end(tail);
+  }
+
+  /**
+   * Append a JSON string (quoted and escaped) encoded in UTF-8.
+   */
+  private static void appendString(Buffer buffer, String value) {
+    if (value == null) {
+      buffer.appendBytes(NULL);
+      return;
+    }
+    buffer.appendByte((byte) '"');
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.appendByte((byte) '\\').appendByte((byte) c);
+      } else if (c < 0x20) {
+        appendControl(buffer, c);
+      } else if (c < 0x80) {
+        buffer.appendByte((byte) c);
+      } else if (c < 0x800) {
+        buffer.appendByte((byte) (0xc0 | c >> 6)).appendByte((byte) (0x80 | c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+        final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer.appendByte((byte) (0xf0 | codePoint >> 18)).appendByte((byte) (0x80 | codePoint >> 12 & 0x3f))
+          .appendByte((byte) (0x80 | codePoint >> 6 & 0x3f)).appendByte((byte) (0x80 | codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        buffer.appendByte((byte) '?');// unpaired surrogate, as String.getBytes(UTF_8) does
+      } else {
+        buffer.appendByte((byte) (0xe0 | c >> 12)).appendByte((byte) (0x80 | c >> 6 & 0x3f))
+          .appendByte((byte) (0x80 | c & 0x3f));
+      }
+    }
+    buffer.appendByte((byte) '"');
+  }
+
+  private static void appendControl(Buffer buffer, char c) {
+    buffer.appendByte((byte) '\\');
+    switch (c) {
+      case '\b':
+        buffer.appendByte((byte) 'b');
+        break;
+      case '\t':
+        buffer.appendByte((byte) 't');
+        break;
+      case '\n':
+        buffer.appendByte((byte) 'n');
+        break;
+      case '\f':
+        buffer.appendByte((byte) 'f');
+        break;
+      case '\r':
+        buffer.appendByte((byte) 'r');
+        break;
+      default:
+        buffer.appendByte((byte) 'u').appendByte((byte) '0').appendByte((byte) '0').appendByte(HEX[c >> 4]).appendByte(HEX[c & 0xf]);
+    }
+  }
+
+  private static void appendAscii(Buffer buffer, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      buffer.appendByte((byte) value.charAt(i));
+    }
+  }
+
+  private static byte[] bytes(String ascii) {
+    return ascii.getBytes(StandardCharsets.US_ASCII);
+  }
+}
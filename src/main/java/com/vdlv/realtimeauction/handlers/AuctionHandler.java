@@ -1,133 +1,479 @@
 package com.vdlv.realtimeauction.handlers;
 
 import com.vdlv.realtimeauction.model.Auction;
-import com.vdlv.realtimeauction.model.Bid;
 import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.repository.AuctionChanges;
+import com.vdlv.realtimeauction.repository.AuctionCursor;
 import com.vdlv.realtimeauction.repository.AuctionRepository;
+import com.vdlv.realtimeauction.repository.BidOutcome;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.ReplyException;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.MIMEHeader;
 import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.RequestParameter;
 import io.vertx.ext.web.api.RequestParameters;
 
-import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
+import static io.vertx.core.http.HttpHeaders.ACCEPT;
+import static io.vertx.core.http.HttpHeaders.CACHE_CONTROL;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+import static io.vertx.core.http.HttpHeaders.ETAG;
+import static io.vertx.core.http.HttpHeaders.IF_NONE_MATCH;
 import static io.vertx.core.http.HttpHeaders.createOptimized;
 
 public class AuctionHandler {
+  /**
+   * The response header holding the cursor of the next page of auctions
+   */
+  public static final CharSequence NEXT_CURSOR = createOptimized("X-Next-Cursor");
+  /**
+   * The media type of the compact binary form of the listings and bids, an alternative to JSON negotiated through the
+   * Accept and Content-Type headers, see {@link BinaryAuctionEncoder}
+   */
+  public static final String BINARY_MEDIA_TYPE = "application/x-rta-binary";
+  /**
+   * The maximum price of a bid in cents, the maximum of the contract (openapi.yaml) which does not apply to a binary body
+   */
+  static final long MAX_BID_CENTS = 1_000_000_000_000L * 100;
+  /**
+   * Listings can be cached by the browser, provided they are revalidated with their ETag
+   */
+  private static final CharSequence REVALIDATE = createOptimized("private, no-cache");
+  private static final Buffer CHANGES_TAIL = Buffer.buffer("]}");
+  private static final CharSequence BINARY = createOptimized(BINARY_MEDIA_TYPE);
+  private static final CharSequence VARY = createOptimized("Vary");
+  /**
+   * The encoded forms of an auction, memoized by the auction until its next accepted bid
+   */
+  private static final Function<Auction, Encoded> ENCODER = Encoded::new;
   private final AuctionRepository repository;
+  private final BidPublisher publisher;
   private final static Logger logger = LoggerFactory.getLogger(AuctionHandler.class.getName());
 
-  public AuctionHandler(AuctionRepository repository) {
+  /**
+   * @param repository the auctions
+   * @param publisher  publishes the auctions updated by accepted bids, see {@link #publisher}
+   */
+  public AuctionHandler(AuctionRepository repository, BidPublisher publisher) {
     this.repository = repository;
+    this.publisher = publisher;
+  }
+
+  /**
+   * @param vertx            the Vert.x instance
+   * @param interval         see {@link BidPublisher#BidPublisher}
+   * @param thresholdPercent see {@link BidPublisher#BidPublisher}
+   * @return a publisher of the auctions updated by accepted bids, sharing the JSON forms cached by the auctions with
+   * the responses
+   */
+  public static BidPublisher publisher(Vertx vertx, long interval, int thresholdPercent) {
+    return new BidPublisher(vertx, interval, thresholdPercent, AuctionHandler::json);
   }
 
   /**
-   * Retrieves auctions stored in the backend according to http parameters (closed, offset and max)
+   * @param auction an auction
+   * @return its JSON form, cached by the auction until its next accepted bid
+   */
+  static String json(Auction auction) {
+    return auction.encode(ENCODER).json();
+  }
+
+  /**
+   * Retrieves auctions stored in the backend according to http parameters (closed, offset or cursor and max)
    * The result is sent as a Json array of Json objects containing the auction id, product, price and ending time.
+   * The array is streamed from the JSON forms cached by the auctions, see {@link Auction#encode(Function)}.
+   * When the page is full, a cursor pointing to the next page is sent in the {@link #NEXT_CURSOR} header: a page
+   * requested with a cursor (the offset is then ignored) is stable whatever the bids and closures since the previous one.
+   * The response has an ETag built from the version of the listing (see {@link AuctionRepository#listingVersion}): a
+   * request whose If-None-Match header holds it is answered with a 304 status, without querying the auctions.
+   * A client accepting {@link #BINARY_MEDIA_TYPE} rather than JSON receives the binary form of the listing. A page of
+   * archived auctions which are not cached is read on a worker (see {@link AuctionRepository#query}).
    *
    * @param context the routing context
    */
   public void handleGetAuctions(RoutingContext context) {
     RequestParameters params = context.get("parsedParameters");
 
-    // Get parameters
-    Boolean closed = null;
-    if (params.queryParametersNames().contains("closed")) {// one must check for existence to avoid blocking
-      closed = params.queryParameter("closed").getBoolean();
-    }
-
-    Integer offset = 0;
-    if (params.queryParametersNames().contains("offset")) {// one must check for existence to avoid blocking
-      offset = params.queryParameter("offset").getInteger();
-    }
-    Integer max = 10;
-    if (params.queryParametersNames().contains("max")) {// one must check for existence to avoid blocking
-      max = params.queryParameter("max").getInteger();
+    // Get parameters, already converted by the validators of the contract (absent optional ones are null)
+    final RequestParameter closedParam = params.queryParameter("closed");
+    final Boolean closed = closedParam == null ? null : closedParam.getBoolean();
+    final int offset = params.queryParameter("offset").getInteger();// required
+    final int max = params.queryParameter("max").getInteger();// required
+    final RequestParameter cursorParam = params.queryParameter("cursor");
+    AuctionCursor cursor = null;
+    if (cursorParam != null) {
+      final String value = cursorParam.getString();
+      try {
+        cursor = AuctionCursor.decode(value);
+      } catch (IllegalArgumentException e) {
+        JsonObject message = new JsonObject().put("type", "ValidationException").
+          put("param", "cursor").
+          put("value", value).
+          put("message", e.getMessage());
+        context.response()
+          .putHeader(CONTENT_TYPE, createOptimized("application/json"))
+          .setStatusCode(422)
+          .end(message.encode());
+        return;
+      }
     }
 
     if (logger.isDebugEnabled()) {
-      logger.debug("Params: closed=" + closed + ", offset=" + offset + ", max=" + max);
+      logger.debug("Params: closed=" + closed + ", offset=" + offset + ", cursor=" + cursor + ", max=" + max);
       logger.debug("User: " + context.user().principal().getString("sub"));
     }
 
-    List<Auction> result;
+    final boolean binary = acceptsBinary(context);
+    final String etag = '"' + repository.listingVersion(closed) + (binary ? "-b" : "") + '"';// read before the query, never newer than the result
+    if (matches(context.request().getHeader(IF_NONE_MATCH), etag)) {
+      context.response()
+        .putHeader(ETAG, etag)
+        .putHeader(VARY, ACCEPT)
+        .putHeader(CACHE_CONTROL, REVALIDATE)
+        .setStatusCode(304)
+        .end();
+      return;
+    }
+
+    final AuctionCursor from = cursor;
+    repository.query(() -> findPage(closed, offset, from, max), page -> {
+      if (page.failed()) {
+        context.fail(page.cause());
+      } else {
+        sendPage(context, page.result(), max, binary, etag);
+      }
+    });
+  }
+
+  private List<Auction> findPage(Boolean closed, int offset, AuctionCursor cursor, int max) {
     if (closed == null) {
-      result = repository.findAuctions(offset, max);
+      return cursor == null ? repository.findAuctions(offset, max) : repository.findAuctionsAfter(cursor, max);
     } else if (closed) {
-      result = repository.findClosedAuctions(offset, max);
+      return cursor == null ? repository.findClosedAuctions(offset, max) : repository.findClosedAuctionsAfter(cursor, max);
     } else {
-      result = repository.findOpenAuctions(offset, max);
+      return cursor == null ? repository.findOpenAuctions(offset, max) : repository.findOpenAuctionsAfter(cursor, max);
     }
+  }
+
+  private static void sendPage(RoutingContext context, List<Auction> result, int max, boolean binary, String etag) {
     if (logger.isDebugEnabled())
       logger.debug("Result:" + result);
-    final JsonArray resp = new JsonArray();
-    result.forEach(item -> resp.add(convert(item)));
+    final List<Buffer> items = new ArrayList<>(result.size());
+    result.forEach(item -> items.add(binary ? item.encode(ENCODER).binary() : item.encode(ENCODER).bytes));
+    if (!result.isEmpty() && result.size() == AuctionRepository.pageSize(max)) {
+      context.response().putHeader(NEXT_CURSOR, AuctionCursor.of(result.get(result.size() - 1)).encode());
+    }
     context.response()
+      .putHeader(ETAG, etag)
+      .putHeader(VARY, ACCEPT)
+      .putHeader(CACHE_CONTROL, REVALIDATE)
+      .setStatusCode(200);
+    if (binary) {
+      BinaryAuctionEncoder.send(context.response().putHeader(CONTENT_TYPE, BINARY), items);
+    } else {
+      AuctionEncoder.send(context.response().putHeader(CONTENT_TYPE, createOptimized("application/json")), items);
+    }
+  }
+
+  /**
+   * Retrieves the auctions created, bid on or closed since a version (the since http parameter), see
+   * {@link AuctionRepository#findChangesSince(String)}. The result is sent as a Json object: {version, resync, auctions}
+   * where auctions is a Json array of auctions as sent by {@link #handleGetAuctions}. When resync is true, the changes
+   * are not known and the client must reload the listings. The version is the since parameter of the next request.
+   *
+   * @param context the routing context
+   */
+  public void handleGetChanges(RoutingContext context) {
+    RequestParameters params = context.get("parsedParameters");
+    final RequestParameter sinceParam = params.queryParameter("since");
+    final String since = sinceParam == null ? null : sinceParam.getString();
+    if (logger.isDebugEnabled()) {
+      logger.debug("Params: since=" + since);
+      logger.debug("User: " + context.user().principal().getString("sub"));
+    }
+
+    repository.query(() -> repository.findChangesSince(since), changes -> {
+      if (changes.failed()) {
+        context.fail(changes.cause());
+      } else {
+        sendChanges(context, changes.result());
+      }
+    });
+  }
+
+  private static void sendChanges(RoutingContext context, AuctionChanges changes) {
+    final List<Buffer> items = new ArrayList<>(changes.getAuctions().size());
+    changes.getAuctions().forEach(item -> items.add(item.encode(ENCODER).bytes));
+    final Buffer head = Buffer.buffer(new JsonObject()
+      .put("version", changes.getVersion())
+      .put("resync", changes.isResyncRequired())
+      .encode());
+    head.setByte(head.length() - 1, (byte) ',').appendString("\"auctions\":[");// the object goes on with the array
+    AuctionEncoder.send(context.response()
       .putHeader(CONTENT_TYPE, createOptimized("application/json"))
-      .setStatusCode(200)
-      .end(resp.encode());
+      .setStatusCode(200), head, items, CHANGES_TAIL);
   }
 
   /**
    * Record a bid for an auction. The auction is identified by a path parameter, the bid price is specified through a Json
-   * request body and the user is identified thanks to the JWT token.
+   * request body (or its binary form, see {@link #BINARY_MEDIA_TYPE}) and the user is identified thanks to the JWT token.
+   * The bid is sent to the verticle of the auction's shard, which decides it on its own event loop and replies with
+   * its {@link BidOutcome}, holding a snapshot of the auction: no further lookup is needed.
+   * The broadcast of the updated auction (to its own address, conflated with the other updates of the auction, see
+   * {@link BidPublisher}) and the response share the JSON form cached by the auction, unless the client accepts the
+   * binary form. A rejected bid is answered with a 422 status (404 if the auction does not exist), along
+   * with the reason of the rejection and the current price.
    * @param context the routing context
    */
   public void handleBidForAuction(RoutingContext context) {
     RequestParameters params = context.get("parsedParameters");
 
     String auctionId = params.pathParameter("auctionId").getString();
-    JsonObject bid = context.getBodyAsJson();
+    JsonObject command = new JsonObject().
+      put("auctionId", auctionId).
+      put("buyer", context.user().principal().getString("sub"));
+    final MIMEHeader contentType = context.parsedHeaders().contentType();
+    if (contentType != null && BINARY_MEDIA_TYPE.equals(contentType.value())) {
+      try {
+        command.put("cents", BinaryAuctionEncoder.readBidCents(context.getBody()));// exact, never a double
+      } catch (IllegalArgumentException e) {
+        JsonObject message = new JsonObject().put("type", "ValidationException").
+          put("param", "body").
+          put("message", e.getMessage());
+        context.response()
+          .putHeader(CONTENT_TYPE, createOptimized("application/json"))
+          .setStatusCode(422)
+          .end(message.encode());
+        return;
+      }
+    } else {
+      command.put("price", context.getBodyAsJson().getDouble("price"));
+    }
 
     if (logger.isDebugEnabled()) {
-      logger.debug("Params: auctionId=" + auctionId + ", price=" + bid.getDouble("price"));
-      logger.debug("User: " + context.user().principal().getString("sub"));
+      logger.debug("Command: " + command);
     }
 
-    boolean ok = repository.recordABid(auctionId, new Bid(context.user().principal().getString("sub"), BigDecimal.valueOf(bid.getDouble("price"))));
-    if (ok) {
-      Auction updatedAuction = repository.findAuctionById(auctionId).get();
-      // Publish to the event bus for web socket integration
-      context.vertx().eventBus().publish(Util.BidsTopic, convert(updatedAuction).encode());
+    context.vertx().eventBus().<BidOutcome>send(Util.shardAddress(repository.shardOf(auctionId)), command, reply -> {
+      if (reply.failed()) {
+        fail(context, reply.cause());
+        return;
+      }
+      final BidOutcome outcome = reply.result().body();
+      if (outcome.isAccepted()) {
+        final Encoded updatedAuction = outcome.getAuction().encode(ENCODER);
+        // Publish to the event bus for web socket integration, to the clients showing this auction only
+        publisher.publish(outcome.getAuction(), outcome.getVersion());
+        if (acceptsBinary(context)) {
+          context.response()
+            .putHeader(CONTENT_TYPE, BINARY)
+            .setStatusCode(200)
+            .end(updatedAuction.binary());
+        } else {
+          context.response()
+            .putHeader(CONTENT_TYPE, createOptimized("application/json"))
+            .setStatusCode(200)
+            .end(updatedAuction.bytes);
+        }
+      } else {
+        JsonObject message = new JsonObject().put("type", "BidException").put("message", rejection(outcome));
+        if (outcome.getCurrentPrice() != null) {
+          message.put("price", outcome.getCurrentPrice().doubleValue());
+        }
+        context.response()
+          .putHeader(HttpHeaders.CONTENT_TYPE, createOptimized("application/json"))
+          .setStatusCode(outcome.getStatus() == BidOutcome.Status.NOT_FOUND ? 404 : 422)
+          .end(message.encode());
+      }
+    });
+  }
+
+  /**
+   * Record a batch of bids of the user identified thanks to the JWT token. The request body is a Json array of
+   * {auctionId, price} objects, the response a Json array of outcomes in the same order: {auctionId, price, accepted}
+   * and the reason of a rejection in message.
+   * The bids are sent to the verticles of their shards in one command per shard, and are decided there auction by
+   * auction, in order. Each auction receiving accepted bids is then published once.
+   * @param context the routing context
+   */
+  public void handleBidsForAuctions(RoutingContext context) {
+    final JsonArray bids = context.getBodyAsJsonArray();
+    final String buyer = context.user().principal().getString("sub");
+    if (logger.isDebugEnabled()) {
+      logger.debug("Params: " + bids.size() + " bids");
+      logger.debug("User: " + buyer);
+    }
+
+    // one command per shard
+    final Map<Integer, List<Integer>> shards = new HashMap<>();
+    for (int i = 0; i < bids.size(); i++) {
+      shards.computeIfAbsent(repository.shardOf(bids.getJsonObject(i).getString("auctionId")), shard -> new ArrayList<>()).add(i);
+    }
+    final BidOutcome[] outcomes = new BidOutcome[bids.size()];
+    final List<Future> replies = new ArrayList<>(shards.size());
+    shards.forEach((shard, indexes) -> {
+      final JsonArray shardBids = new JsonArray(new ArrayList<>(indexes.size()));
+      indexes.forEach(i -> shardBids.add(bids.getJsonObject(i)));
+      final Future<Message<BidOutcome[]>> reply = Future.future();
+      context.vertx().eventBus().send(Util.shardAddress(shard), new JsonObject().put("buyer", buyer).put("bids", shardBids), reply);
+      replies.add(reply.map(message -> {
+        final BidOutcome[] shardOutcomes = message.body();
+        for (int i = 0; i < indexes.size(); i++) {
+          outcomes[indexes.get(i)] = shardOutcomes[i];
+        }
+        return null;
+      }));
+    });
+    CompositeFuture.all(replies).setHandler(done -> {
+      if (done.failed()) {
+        fail(context, done.cause());
+        return;
+      }
+      final Set<String> published = new HashSet<>();
+      final JsonArray results = new JsonArray(new ArrayList<>(bids.size()));
+      for (int i = 0; i < bids.size(); i++) {
+        final JsonObject bid = bids.getJsonObject(i);
+        final JsonObject result = new JsonObject().
+          put("auctionId", bid.getString("auctionId")).
+          put("price", bid.getDouble("price")).
+          put("accepted", outcomes[i].isAccepted());
+        if (outcomes[i].isAccepted()) {
+          if (published.add(bid.getString("auctionId"))) {
+            // Publish each updated auction once to the event bus for web socket integration
+            publisher.publish(outcomes[i].getAuction(), outcomes[i].getVersion());
+          }
+        } else {
+          result.put("message", rejection(outcomes[i]));
+        }
+        results.add(result);
+      }
       context.response()
         .putHeader(CONTENT_TYPE, createOptimized("application/json"))
         .setStatusCode(200)
-        .end(convert(updatedAuction).encode());
-    } else {
-      JsonObject message = new JsonObject().put("type", "BidException");
-      Auction targetedAuction = repository.findAuctionById(auctionId).get();
+        .end(results.encode());
+    });
+  }
 
-      if (targetedAuction.isClosed()) {
-        message.put("message", "Sorry, the auction is closed for this product");
-      } else {
-        message.put("message", "Sorry, your offer is below the current product price");
-      }
+  /**
+   * Answer a bid command which failed: a price the shard cannot record is rejected as a malformed binary price is.
+   *
+   * @param context the routing context
+   * @param cause   the failure of the command
+   */
+  private static void fail(RoutingContext context, Throwable cause) {
+    if (cause instanceof ReplyException && ((ReplyException) cause).failureCode() == 400) {
+      JsonObject message = new JsonObject().put("type", "ValidationException").
+        put("param", "body").
+        put("message", cause.getMessage());
       context.response()
-        .putHeader(HttpHeaders.CONTENT_TYPE, createOptimized("application/json"))
+        .putHeader(CONTENT_TYPE, createOptimized("application/json"))
         .setStatusCode(422)
-        .end(message.encodePrettily());
+        .end(message.encode());
+    } else {
+      context.fail(cause);
     }
   }
 
   /**
-   * Convert an auction to a JsonObject
-   *
-   * @param auction the auction to convert
-   * @return the JsonObject
-   */
-  private static JsonObject convert(Auction auction) {
-    return new JsonObject().
-      put("id", auction.getId()).
-      put("product", auction.getProduct()).
-      put("price", auction.getCurrentAuctionValue().doubleValue()).
-      put("ending", auction.getEndingTime().toString()).
-      put("buyer", auction.getCurrentBuyer());
+   * @param context the routing context
+   * @return true if the client prefers the binary form to JSON, the latter being the default
+   */
+  private static boolean acceptsBinary(RoutingContext context) {
+    for (MIMEHeader accepted : context.parsedHeaders().accept()) {// by decreasing preference
+      if (accepted.weight() <= 0) {// not MIMEHeader.isPermitted(), inverted in this version of Vert.x
+        continue;
+      }
+      if (BINARY_MEDIA_TYPE.equals(accepted.value())) {
+        return true;
+      }
+      if ("application".equals(accepted.component()) && ("json".equals(accepted.subComponent()) || "*".equals(accepted.subComponent()))
+        || "*".equals(accepted.component())) {
+        return false;
+      }
+    }
+    return false;
   }
 
+  /**
+   * @param ifNoneMatch the If-None-Match header of a request, if any
+   * @param etag        the entity tag of the current response
+   * @return true if the client already has the current response
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);// weak comparison
+      }
+      if (tag.equals(etag) || tag.equals("*")) {
+        return true;
+      }
+    }
+    return false;
+  }
 
+  /**
+   * @param outcome the outcome of a rejected bid
+   * @return the reason of the rejection
+   */
+  private static String rejection(BidOutcome outcome) {
+    switch (outcome.getStatus()) {
+      case CLOSED:
+        return "Sorry, the auction is closed for this product";
+      case NOT_FOUND:
+        return "Sorry, this auction does not exist";
+      default:
+        return "Sorry, your offer is below the current product price";
+    }
+  }
+
+  /**
+   * The JSON form of an auction, as bytes for the HTTP responses (Vert.x buffers are not released once written, the
+   * same bytes can be sent any number of times) and as a string for the event bus bridge, and its binary form, computed
+   * on demand.
+   */
+  private static final class Encoded {
+    private final Auction auction;
+    private final Buffer bytes;
+    private String json;
+    private Buffer binary;
+
+    private Encoded(Auction auction) {
+      this.auction = auction;
+      this.bytes = AuctionEncoder.encode(auction);
+    }
+
+    private Buffer binary() {
+      if (binary == null) {
+        binary = BinaryAuctionEncoder.encode(auction);// a benign race as well
+      }
+      return binary;
+    }
+
+    private String json() {
+      if (json == null) {
+        json = bytes.toString();// a benign race, only the auctions receiving bids are broadcast
+      }
+      return json;
+    }
+  }
 }
@@ -0,0 +1,199 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.http.ServerWebSocket;
+import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A native WebSocket endpoint pushing the price updates of the auctions a client subscribes to, an alternative to the
+ * event bus bridge for the capable clients: no SockJS framing, no JSON envelope nor address, and a few bytes per update
+ * rather than the whole auction.
+ * <p>
+ * The client manages its subscriptions with text frames: {"subscribe": [auction ids]}, answered with
+ * {"subscribed": {auction id: index}}, and {"unsubscribe": [auction ids]}. The index of an auction is its short form on
+ * the connection. Beyond {@link #MAX_SUBSCRIPTIONS} auctions, the reply also lists the ids not subscribed to:
+ * {"subscribed": {...}, "rejected": [auction ids], "error": message}. The updates are pushed as binary frames, see {@link BinaryAuctionEncoder#encodeUpdate}: the auction
+ * index, the new price and the buyer, named once per connection then referred to by its index. Malformed requests are
+ * answered with {"error": message}.
+ * <p>
+ * The updates are received from the local event bus (see {@link Util#priceUpdatesAddress(String)}), one consumer per
+ * subscribed auction, thus a connection only handles the updates of its auctions. They go through the bounded
+ * {@link OutboundQueue} of the connection, encoded when written: a buyer is named to the client in the frame actually
+ * written, whatever updates the policy of the queue conflates or drops.
+ */
+public final class AuctionSocketHandler implements Handler<RoutingContext> {
+  /**
+   * The maximum number of auctions a connection can subscribe to
+   */
+  static final int MAX_SUBSCRIPTIONS = 1000;
+  private final static Logger logger = LoggerFactory.getLogger(AuctionSocketHandler.class.getName());
+  private final Subscribers subscribers;
+
+  /**
+   * @param subscribers registers the outbound queue of each connection
+   */
+  public AuctionSocketHandler(Subscribers subscribers) {
+    this.subscribers = subscribers;
+  }
+
+  @Override
+  public void handle(RoutingContext context) {
+    final ServerWebSocket socket = context.request().upgrade();
+    new Connection(context, socket, subscribers);
+  }
+
+  /**
+   * The subscriptions of a client and the buyers it knows.
+   */
+  private static final class Connection {
+    private final RoutingContext context;
+    private final ServerWebSocket socket;
+    private final OutboundQueue<Push> queue;
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    private final Map<String, Integer> buyers = new HashMap<>();
+    private int nextIndex;
+
+    private Connection(RoutingContext context, ServerWebSocket socket, Subscribers subscribers) {
+      this.context = context;
+      this.socket = socket;
+      this.queue = subscribers.add("native", socket, this::write, socket::close);
+      socket.textMessageHandler(this::handleRequest);
+      socket.binaryMessageHandler(frame -> error("Binary requests are not supported"));
+      socket.closeHandler(v -> {
+        subscriptions.values().forEach(subscription -> subscription.consumer.unregister());
+        subscriptions.clear();
+        subscribers.remove(queue);
+      });
+      if (logger.isDebugEnabled()) {
+        logger.debug("A native socket was created listening to auction prices");
+      }
+    }
+
+    private void handleRequest(String text) {
+      final JsonObject request;
+      try {
+        request = new JsonObject(text);
+      } catch (DecodeException e) {
+        error("Malformed request: " + e.getMessage());
+        return;
+      }
+      final JsonArray subscribe = ids(request, "subscribe");
+      final JsonArray unsubscribe = ids(request, "unsubscribe");
+      if (subscribe == null && unsubscribe == null) {
+        error("Expected subscribe or unsubscribe with an array of auction ids");
+        return;
+      }
+      if (unsubscribe != null) {
+        unsubscribe.forEach(id -> {
+          final Subscription subscription = subscriptions.remove(id);
+          if (subscription != null) {
+            subscription.consumer.unregister();
+          }
+        });
+      }
+      if (subscribe != null) {
+        final JsonObject subscribed = new JsonObject();
+        final JsonArray rejected = new JsonArray();
+        for (Object id : subscribe) {
+          final Subscription subscription = subscribe((String) id);
+          if (subscription == null) {
+            rejected.add(id);
+          } else {
+            subscribed.put((String) id, subscription.index);
+          }
+        }
+        final JsonObject reply = new JsonObject().put("subscribed", subscribed);
+        if (!rejected.isEmpty()) {// a single reply, the client knows which auctions it does not receive
+          reply.put("rejected", rejected).put("error", "Too many subscriptions, at most " + MAX_SUBSCRIPTIONS);
+        }
+        socket.writeTextMessage(reply.encode());
+      }
+    }
+
+    /**
+     * @return the subscription to the auction, null if there are too many subscriptions
+     */
+    private Subscription subscribe(String auctionId) {
+      Subscription subscription = subscriptions.get(auctionId);
+      if (subscription == null) {
+        if (subscriptions.size() >= MAX_SUBSCRIPTIONS) {
+          return null;
+        }
+        final int index = nextIndex++;// never reused, an update in flight cannot be mistaken for another auction
+        subscription = new Subscription(index, context.vertx().eventBus().<PriceUpdate>localConsumer(
+          Util.priceUpdatesAddress(auctionId), message -> queue.offer(index, new Push(index, message.body()))));
+        subscriptions.put(auctionId, subscription);
+      }
+      return subscription;
+    }
+
+    private void write(Push push) {
+      final PriceUpdate update = push.update;
+      final int index = push.index;
+      final Integer buyer = buyers.get(update.getBuyer());
+      final Buffer frame;
+      if (buyer == null) {
+        final int newBuyer = buyers.size();
+        buyers.put(update.getBuyer(), newBuyer);
+        frame = BinaryAuctionEncoder.encodeUpdate(index, update.getCents(), newBuyer, update.getBuyer());
+      } else {
+        frame = BinaryAuctionEncoder.encodeUpdate(index, update.getCents(), buyer, null);
+      }
+      socket.writeBinaryMessage(frame);
+    }
+
+    private void error(String message) {
+      socket.writeTextMessage(new JsonObject().put("error", message).encode());
+    }
+
+    /**
+     * @return the array of auction ids of the request, null if absent or not an array of strings
+     */
+    private static JsonArray ids(JsonObject request, String key) {
+      final Object ids = request.getValue(key);
+      if (!(ids instanceof JsonArray)) {
+        return null;
+      }
+      for (Object id : (JsonArray) ids) {
+        if (!(id instanceof String)) {
+          return null;
+        }
+      }
+      return (JsonArray) ids;
+    }
+  }
+
+  /**
+   * An update of a subscribed auction, queued until written.
+   */
+  private static final class Push {
+    private final int index;
+    private final PriceUpdate update;
+
+    private Push(int index, PriceUpdate update) {
+      this.index = index;
+      this.update = update;
+    }
+  }
+
+  private static final class Subscription {
+    private final int index;
+    private final MessageConsumer<PriceUpdate> consumer;
+
+    private Subscription(int index, MessageConsumer<PriceUpdate> consumer) {
+      this.index = index;
+      this.consumer = consumer;
+    }
+  }
+}
@@ -0,0 +1,261 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.repository.AuctionChanges;
+import com.vdlv.realtimeauction.repository.AuctionRepository;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Consistent subscriptions to the open auctions over the event bus bridge: a snapshot tagged with a version of the
+ * repository, then the stream of the updates after this version only, thus no bid is lost or applied out of order
+ * between the two.
+ * <p>
+ * The client first registers to the address of its subscription (see {@link Util#SubscriptionsTopic}, with a random
+ * suffix of its own), which is acknowledged by a {@link #REGISTERED} message on this address, then sends
+ * {"address", "offset", "max"} to {@link Util#SubscribeAddress}. The reply is
+ * {"version", "snapshot": true, "auctions": [the page of open auctions]}, and the updates of these auctions are streamed
+ * to the address of the subscription, along with their version and auction (the {@link BidPublisher#VERSION_HEADER}
+ * and {@link #AUCTION_HEADER} headers). The consumers of the updates are registered along with the snapshot, on the
+ * event loop publishing them: an update published before is reflected in the snapshot, an update published after is
+ * streamed unless the snapshot already has its version.
+ * <p>
+ * A client reconnecting with its last version asks for {"address", "since": version, "auctions": [ids]}: the reply is
+ * {"version", "snapshot": false, "auctions": [those changed since]}, read from the change log (see
+ * {@link AuctionRepository#findChangesSince}), and the stream resumes from there. When these changes are no longer
+ * known, or would have to be read from the archive, a full snapshot is sent instead. The server forgets the
+ * registrations of a closed connection: the client registers again, and waits for the acknowledgement, before resuming. Malformed requests fail with the
+ * code 400, as well as the requests of a client not registered to the address of its subscription (see
+ * {@link #register(Object, String)}).
+ * <p>
+ * A subscription is not thread safe: it is used from the event loop of the verticle publishing the bids.
+ */
+public final class AuctionSubscriptions {
+  /**
+   * The header of a streamed update holding the id of its auction
+   */
+  public static final String AUCTION_HEADER = "auction";
+  /**
+   * The first message of the address of a subscription: {"registered": true}, the client may subscribe
+   */
+  public static final String REGISTERED = new JsonObject().put("registered", true).encode();
+  private static final Pattern ADDRESS =
+    Pattern.compile(Pattern.quote(Util.SubscriptionsTopic + '.') + "[A-Za-z0-9_-]{16,64}");
+  private final static Logger logger = LoggerFactory.getLogger(AuctionSubscriptions.class.getName());
+  private final Vertx vertx;
+  private final AuctionRepository repository;
+  private final Map<String, Stream> streams = new HashMap<>();
+  private final Map<String, Object> clients = new HashMap<>();// the client of each address
+  private final Map<Object, Integer> registered = new HashMap<>();// the number of addresses of each client
+  private final int maxPerClient;
+
+  /**
+   * @param vertx        the Vert.x instance
+   * @param repository   the auctions
+   * @param maxPerClient the maximum number of subscription addresses of a client
+   */
+  public AuctionSubscriptions(Vertx vertx, AuctionRepository repository, int maxPerClient) {
+    this.vertx = vertx;
+    this.repository = repository;
+    this.maxPerClient = maxPerClient;
+  }
+
+  /**
+   * @param address an event bus address
+   * @return true if it is the address of a subscription
+   */
+  public static boolean isSubscription(String address) {
+    return address != null && address.startsWith(Util.SubscriptionsTopic + '.');
+  }
+
+  /**
+   * Handle a subscription request, replying with a snapshot or the changes since a version, and (re)starting the stream
+   * of the updates after them.
+   *
+   * @param request the subscription request
+   */
+  public void handleSubscribe(Message<Object> request) {
+    if (!(request.body() instanceof JsonObject)) {
+      request.fail(400, "Expected a subscription object");
+      return;
+    }
+    final JsonObject body = (JsonObject) request.body();
+    final String address;
+    final int offset;
+    final int max;
+    final String since;
+    final JsonArray ids;
+    try {
+      address = body.getString("address");
+      offset = body.getInteger("offset", 0);
+      max = body.getInteger("max", 0);
+      since = body.getString("since");
+      ids = body.getJsonArray("auctions");
+    } catch (ClassCastException e) {
+      request.fail(400, "Malformed subscription: " + e.getMessage());
+      return;
+    }
+    if (address == null || !ADDRESS.matcher(address).matches()) {
+      request.fail(400, "Expected the address of the subscription: " + Util.SubscriptionsTopic
+        + ".<16 to 64 letters, digits, - or _>");
+      return;
+    }
+    if (!clients.containsKey(address)) {
+      request.fail(400, "Register to the address of the subscription first");// nobody would receive the stream
+      return;
+    }
+    final int maxIds = AuctionRepository.pageSize(Integer.MAX_VALUE);// a full page
+    if (ids != null && (ids.size() > maxIds || !ids.stream().allMatch(String.class::isInstance))) {
+      request.fail(400, "Expected an array of at most " + maxIds + " auction ids");
+      return;
+    }
+
+    final AuctionChanges changes = since == null || ids == null ? null : repository.findCachedChangesSince(since);
+    final boolean snapshot = changes == null || changes.isResyncRequired();
+    final String version;
+    final List<Auction> auctions;
+    final Set<String> watched = new LinkedHashSet<>();
+    if (snapshot) {
+      version = repository.findChangesSince(null).getVersion();// read before the query, never newer than the snapshot
+      auctions = repository.findOpenAuctions(offset, max);
+      auctions.forEach(auction -> watched.add(auction.getId()));
+    } else {
+      version = changes.getVersion();
+      ids.forEach(id -> watched.add((String) id));
+      auctions = new ArrayList<>();
+      changes.getAuctions().stream().filter(auction -> watched.contains(auction.getId())).forEach(auctions::add);
+    }
+    close(address);
+    streams.put(address, new Stream(address, watched, repository.changeNumber(version)));
+    if (logger.isDebugEnabled()) {
+      logger.debug("Subscription " + address + " to " + watched.size() + " auctions from version " + version
+        + (snapshot ? " (snapshot)" : " (resumed)"));
+    }
+
+    final StringBuilder reply = new StringBuilder(new JsonObject()
+      .put("version", version)
+      .put("snapshot", snapshot)
+      .encode());
+    reply.setLength(reply.length() - 1);
+    reply.append(",\"auctions\":[");// the object goes on with the array of the cached JSON forms
+    for (int i = 0; i < auctions.size(); i++) {
+      reply.append(i == 0 ? "" : ",").append(AuctionHandler.json(auctions.get(i)));
+    }
+    request.reply(reply.append("]}").toString());
+  }
+
+  /**
+   * Record that a client listens to the address of a subscription, its stream being closed along with the client. An
+   * address belongs to the first client registering to it, and a client owns a bounded number of addresses: each stream
+   * registers up to a page of consumers.
+   *
+   * @param client  the client, e.g. its socket
+   * @param address the address of the subscription
+   * @return false if the registration must be denied: the address belongs to another client, or the client has too
+   * many subscriptions
+   */
+  public boolean register(Object client, String address) {
+    final Object owner = clients.get(address);
+    if (owner != null) {
+      return owner == client;
+    }
+    final int count = registered.getOrDefault(client, 0);
+    if (count >= maxPerClient) {
+      return false;
+    }
+    clients.put(address, client);
+    registered.put(client, count + 1);
+    return true;
+  }
+
+  /**
+   * Close the stream of a subscription, its client no longer listening to it (unless the address belongs to another
+   * client).
+   *
+   * @param client  the client
+   * @param address the address of the subscription
+   */
+  public void unregister(Object client, String address) {
+    if (clients.remove(address, client)) {
+      registered.computeIfPresent(client, (owner, count) -> count == 1 ? null : count - 1);
+      close(address);
+    }
+  }
+
+  /**
+   * Close the streams of a client, e.g. when its socket is closed.
+   *
+   * @param client the client
+   */
+  public void unregisterAll(Object client) {
+    if (registered.remove(client) == null) {
+      return;// no subscription
+    }
+    clients.entrySet().removeIf(entry -> {
+      if (entry.getValue() != client) {
+        return false;
+      }
+      close(entry.getKey());
+      return true;
+    });
+  }
+
+  /**
+   * @return the number of streaming subscriptions
+   */
+  public int size() {
+    return streams.size();
+  }
+
+  private void close(String address) {
+    final Stream stream = streams.remove(address);
+    if (stream != null) {
+      stream.consumers.forEach(MessageConsumer::unregister);
+    }
+  }
+
+  /**
+   * The updates of the auctions of a subscription, after its version.
+   */
+  private final class Stream {
+    private final String address;
+    private final long since;
+    private final List<MessageConsumer<String>> consumers = new ArrayList<>();
+
+    private Stream(String address, Set<String> auctionIds, long since) {
+      this.address = address;
+      this.since = since;
+      for (String id : auctionIds) {
+        consumers.add(vertx.eventBus().<String>localConsumer(Util.bidsAddress(id), message -> forward(id, message)));
+      }
+    }
+
+    private void forward(String auctionId, Message<String> update) {
+      final String version = update.headers().get(BidPublisher.VERSION_HEADER);
+      final long number = repository.changeNumber(version);
+      if (number >= 0 && number <= since) {
+        return;// already in the snapshot or the changes
+      }
+      final DeliveryOptions options = new DeliveryOptions().addHeader(AUCTION_HEADER, auctionId);
+      if (version != null) {
+        options.addHeader(BidPublisher.VERSION_HEADER, version);
+      }
+      vertx.eventBus().publish(address, update.body(), options);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.verticles.LocalCodec;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Publishes the auctions updated by accepted bids to their event bus address (see {@link Util#bidsAddress(String)}),
+ * along with their new price (see {@link PriceUpdate}), conflating the updates of hot auctions: only the latest state
+ * of an auction is kept, and the pending auctions are flushed once per interval. An update raising the price of an
+ * auction by at least a given threshold since its last publication is published at once, along with the updates
+ * suppressed before it. The auctions are encoded when they are published, thus with their latest bid, along with the
+ * version of this bid (the 'version' header, see {@link #VERSION_HEADER}).
+ * <p>
+ * The flush timer runs only while auctions receive bids. Counters of the published and suppressed updates are kept.
+ * A publisher is not thread safe: it is used from the event loop of a single verticle.
+ */
+public final class BidPublisher {
+  /**
+   * The header of a published auction holding the version of the change log once its latest bid was recorded, see
+   * {@link com.vdlv.realtimeauction.repository.BidOutcome#getVersion()}
+   */
+  public static final String VERSION_HEADER = "version";
+  private final Vertx vertx;
+  private final long interval;
+  private final BigDecimal threshold;
+  private final Function<Auction, String> encoder;
+  private final Map<String, Conflated> auctions = new HashMap<>();
+  private long timer = -1;
+  private volatile long published;// written by the event loop only
+  private volatile long suppressed;
+
+  /**
+   * @param vertx            the Vert.x instance
+   * @param interval         the interval in milliseconds between two flushes, 0 to publish each update at once
+   * @param thresholdPercent the rise of the price, in percent of the last published price, publishing an update at
+   *                         once (0 to disable)
+   * @param encoder          gives the published form of an auction
+   */
+  public BidPublisher(Vertx vertx, long interval, int thresholdPercent, Function<Auction, String> encoder) {
+    this.vertx = vertx;
+    this.interval = interval;
+    this.threshold = thresholdPercent <= 0 ? null : BigDecimal.valueOf(100 + thresholdPercent, 2);
+    this.encoder = encoder;
+    LocalCodec.register(vertx, PriceUpdate.class);
+  }
+
+  /**
+   * Publish an auction updated by an accepted bid, without version, see {@link #publish(Auction, String)}.
+   *
+   * @param auction the updated auction
+   */
+  public void publish(Auction auction) {
+    publish(auction, null);
+  }
+
+  /**
+   * Publish an auction updated by an accepted bid, at once or with the next flush.
+   *
+   * @param auction the updated auction
+   * @param version the version of the accepted bid, null if unknown
+   */
+  public void publish(Auction auction, String version) {
+    if (interval <= 0) {
+      send(auction, version);
+      return;
+    }
+    Conflated conflated = auctions.get(auction.getId());
+    if (conflated == null) {
+      conflated = new Conflated();
+      auctions.put(auction.getId(), conflated);
+    }
+    if (conflated.pending != null) {
+      suppressed++;// superseded before being published
+    }
+    conflated.pending = auction;
+    conflated.pendingVersion = version;
+    conflated.active = true;
+    if (conflated.publishedPrice != null && threshold != null
+      && auction.getCurrentAuctionValue().compareTo(conflated.publishedPrice.multiply(threshold)) >= 0) {
+      conflated.flush();
+    }
+    if (timer < 0) {
+      timer = vertx.setTimer(interval, id -> flush());
+    }
+  }
+
+  /**
+   * @return the number of updates published
+   */
+  public long getPublished() {
+    return published;
+  }
+
+  /**
+   * @return the number of updates suppressed, a more recent update of the same auction being published instead
+   */
+  public long getSuppressed() {
+    return suppressed;
+  }
+
+  /**
+   * Stop the flush timer, the pending updates being published.
+   */
+  public void close() {
+    if (timer >= 0) {
+      vertx.cancelTimer(timer);
+      timer = -1;
+    }
+    auctions.values().forEach(Conflated::flush);
+    auctions.clear();
+  }
+
+  /**
+   * Publish the pending updates. The auctions that have not received any bid since the previous flush are forgotten.
+   */
+  private void flush() {
+    timer = -1;
+    for (Iterator<Conflated> i = auctions.values().iterator(); i.hasNext(); ) {
+      final Conflated conflated = i.next();
+      if (conflated.active) {
+        conflated.flush();
+        conflated.active = false;
+      } else {
+        i.remove();
+      }
+    }
+    if (!auctions.isEmpty()) {
+      timer = vertx.setTimer(interval, id -> flush());// until the auctions cool down
+    }
+  }
+
+  private void send(Auction auction, String version) {
+    final DeliveryOptions options = new DeliveryOptions();
+    if (version != null) {
+      options.addHeader(VERSION_HEADER, version);
+    }
+    vertx.eventBus().publish(Util.bidsAddress(auction.getId()), encoder.apply(auction), options);
+    vertx.eventBus().publish(Util.priceUpdatesAddress(auction.getId()), PriceUpdate.of(auction));// for the native sockets
+    published++;
+  }
+
+  /**
+   * The state of an auction receiving bids.
+   */
+  private final class Conflated {
+    private Auction pending;// the latest update not published yet
+    private String pendingVersion;
+    private BigDecimal publishedPrice;// the price last published
+    private boolean active;// updated since the previous flush
+
+    private void flush() {
+      if (pending != null) {
+        publishedPrice = pending.getCurrentAuctionValue();
+        send(pending, pendingVersion);
+        pending = null;
+        pendingVersion = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonObject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_LENGTH;
+
+/**
+ * A compact binary form of the auctions, an alternative to their JSON form (see {@link AuctionEncoder}) negotiated with
+ * the {@link #MEDIA_TYPE} media type:
+ * <ul>
+ * <li>varint: an unsigned LEB128 integer (7 bits per byte, the least significant group first)</li>
+ * <li>string: a varint holding the length of its UTF-8 bytes plus one (0 for null), then these bytes</li>
+ * <li>id: 0 then the 16 bytes of a UUID (most significant first), or 1 then a string</li>
+ * <li>auction: id, product (string), price in cents (varint), ending time in microseconds since the epoch (varint),
+ * buyer (string)</li>
+ * <li>listing: the number of auctions (varint) then the auctions</li>
+ * <li>bid request: the price in cents (varint)</li>
+ * <li>price update (see {@link AuctionSocketHandler}): the index of the auction on the connection (varint), the price in
+ * cents (varint), the index of the buyer on the connection (varint), followed by the name of the buyer (string) when
+ * it is new to the connection, i.e. when its index is the number of buyers already named</li>
+ * </ul>
+ */
+final class BinaryAuctionEncoder {
+  /**
+   * The media type of the binary form
+   */
+  static final String MEDIA_TYPE = AuctionHandler.BINARY_MEDIA_TYPE;
+  private static final int UUID_ID = 0;
+  private static final int STRING_ID = 1;
+
+  private BinaryAuctionEncoder() {
+  }
+
+  /**
+   * @param auction the auction to encode
+   * @return the binary form of the auction
+   */
+  static Buffer encode(Auction auction) {
+    final byte[] product = auction.getProduct().getBytes(StandardCharsets.UTF_8);
+    final String buyer = auction.getCurrentBuyer();
+    final byte[] buyerBytes = buyer == null ? null : buyer.getBytes(StandardCharsets.UTF_8);
+    final Buffer buffer = Buffer.buffer(48 + product.length + (buyerBytes == null ? 0 : buyerBytes.length));
+    appendId(buffer, auction.getId());
+    appendBytes(buffer, product);
+    appendVarint(buffer, auction.getCurrentAuctionCents());
+    appendVarint(buffer, auction.getEndingMicros());
+    appendBytes(buffer, buyerBytes);
+    return buffer;
+  }
+
+  /**
+   * Send a listing made of already encoded auctions, see {@link AuctionEncoder#send(HttpServerResponse, List)}.
+   *
+   * @param response the response, its status and other headers being set
+   * @param items    the binary form of the auctions
+   */
+  static void send(HttpServerResponse response, List<Buffer> items) {
+    final Buffer count = appendVarint(Buffer.buffer(5), items.size());
+    long length = count.length();
+    for (Buffer item : items) {
+      length += item.length();
+    }
+    response.putHeader(CONTENT_LENGTH, Long.toString(length));
+    if (items.isEmpty()) {
+      response.end(count);
+      return;
+    }
+    response.write(count);
+    for (int i = 0; i < items.size() - 1; i++) {
+      response.write(items.get(i));
+    }
+    response.end(items.get(items.size() - 1));
+  }
+
+  /**
+   * @param index    the index of the auction on the connection
+   * @param cents    the new price of the auction, in cents
+   * @param buyer    the index of the buyer on the connection
+   * @param newBuyer the name of the buyer if it is new to the connection, null otherwise
+   * @return the price update
+   */
+  static Buffer encodeUpdate(int index, long cents, int buyer, String newBuyer) {
+    final Buffer buffer = Buffer.buffer(newBuyer == null ? 16 : 24 + newBuyer.length() * 3);
+    appendVarint(buffer, index);
+    appendVarint(buffer, cents);
+    appendVarint(buffer, buyer);
+    if (newBuyer != null) {
+      appendBytes(buffer, newBuyer.getBytes(StandardCharsets.UTF_8));
+    }
+    return buffer;
+  }
+
+  /**
+   * Decode the price updates of a frame (e.g. to check it).
+   *
+   * @param frame  a frame made of price updates
+   * @param buyers the names of the buyers of the connection, by index, receiving the new ones
+   * @return the updates: {index, price, buyer}
+   * @throws IllegalArgumentException if the frame is malformed
+   */
+  static List<JsonObject> decodeUpdates(Buffer frame, List<String> buyers) {
+    final Reader reader = new Reader(frame);
+    final List<JsonObject> updates = new ArrayList<>();
+    while (reader.position < frame.length()) {
+      final long index = reader.varint();
+      final long cents = reader.varint();
+      final long buyer = reader.varint();
+      if (buyer == buyers.size()) {
+        buyers.add(reader.string());
+      } else if (buyer > buyers.size()) {
+        throw new IllegalArgumentException("Unknown buyer " + buyer);
+      }
+      updates.add(new JsonObject()
+        .put("index", index)
+        .put("price", Bid.fromCents(cents).doubleValue())
+        .put("buyer", buyers.get((int) buyer)));
+    }
+    return updates;
+  }
+
+  /**
+   * @param body a bid request
+   * @return the price of the bid in cents
+   * @throws IllegalArgumentException if the request is malformed, or the price beyond
+   * {@link AuctionHandler#MAX_BID_CENTS}
+   */
+  static long readBidCents(Buffer body) {
+    final Reader reader = new Reader(body);
+    final long cents = reader.varint();
+    if (reader.position != body.length()) {
+      throw new IllegalArgumentException("Unexpected bytes after the price");
+    }
+    if (cents < 0 || cents > AuctionHandler.MAX_BID_CENTS) {// a varint of 64 bits may be negative
+      throw new IllegalArgumentException("The price must be at most " + AuctionHandler.MAX_BID_CENTS + " cents");
+    }
+    return cents;
+  }
+
+  /**
+   * Decode a listing, the auctions being provided in their JSON form (e.g. to check a response).
+   *
+   * @param listing a listing
+   * @return the auctions of the listing
+   * @throws IllegalArgumentException if the listing is malformed
+   */
+  static List<JsonObject> decodeListing(Buffer listing) {
+    final Reader reader = new Reader(listing);
+    final long count = reader.varint();
+    final List<JsonObject> auctions = new ArrayList<>();
+    for (long i = 0; i < count; i++) {
+      auctions.add(reader.auction());
+    }
+    return auctions;
+  }
+
+  /**
+   * @param auction the binary form of an auction
+   * @return its JSON form
+   * @throws IllegalArgumentException if the auction is malformed
+   */
+  static JsonObject decode(Buffer auction) {
+    return new Reader(auction).auction();
+  }
+
+  private static Buffer appendVarint(Buffer buffer, long value) {
+    while ((value & ~0x7fL) != 0) {
+      buffer.appendByte((byte) (value & 0x7f | 0x80));
+      value >>>= 7;
+    }
+    return buffer.appendByte((byte) value);
+  }
+
+  private static void appendId(Buffer buffer, String id) {
+    final UUID uuid = asUuid(id);
+    if (uuid == null) {
+      buffer.appendByte((byte) STRING_ID);
+      appendBytes(buffer, id.getBytes(StandardCharsets.UTF_8));
+    } else {
+      buffer.appendByte((byte) UUID_ID).appendLong(uuid.getMostSignificantBits()).appendLong(uuid.getLeastSignificantBits());
+    }
+  }
+
+  private static void appendBytes(Buffer buffer, byte[] bytes) {
+    if (bytes == null) {
+      buffer.appendByte((byte) 0);
+    } else {
+      appendVarint(buffer, bytes.length + 1L).appendBytes(bytes);
+    }
+  }
+
+  /**
+   * @return the UUID if the id is the canonical form of a UUID (thus decoded as the same id), null otherwise
+   */
+  private static UUID asUuid(String id) {
+    if (id.length() != 36) {
+      return null;
+    }
+    try {
+      final UUID uuid = UUID.fromString(id);
+      return uuid.toString().equals(id) ? uuid : null;
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A cursor over a buffer holding binary forms.
+   */
+  private static final class Reader {
+    private final Buffer buffer;
+    private int position;
+
+    private Reader(Buffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private JsonObject auction() {
+      final String id = id();
+      final String product = string();
+      final long cents = varint();
+      final long micros = varint();
+      return new JsonObject().
+        put("id", id).
+        put("product", product).
+        put("price", Bid.fromCents(cents).doubleValue()).
+        put("ending", Bid.fromMicros(micros).toString()).
+        put("buyer", string());
+    }
+
+    private long varint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        final byte b = next();
+        value |= (long) (b & 0x7f) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed varint at " + position);
+    }
+
+    private String id() {
+      final byte type = next();
+      if (type == UUID_ID) {
+        check(16);
+        final UUID uuid = new UUID(buffer.getLong(position), buffer.getLong(position + 8));
+        position += 16;
+        return uuid.toString();
+      } else if (type == STRING_ID) {
+        return string();
+      }
+      throw new IllegalArgumentException("Unknown id type " + type);
+    }
+
+    private String string() {
+      final long length = varint() - 1;
+      if (length < 0) {
+        return null;
+      }
+      check(length);
+      final String value = buffer.getString(position, position + (int) length, StandardCharsets.UTF_8.name());
+      position += (int) length;
+      return value;
+    }
+
+    private byte next() {
+      check(1);
+      return buffer.getByte(position++);
+    }
+
+    private void check(long length) {
+      if (length > buffer.length() - position) {
+        throw new IllegalArgumentException("Truncated at " + position);
+      }
+    }
+  }
+}
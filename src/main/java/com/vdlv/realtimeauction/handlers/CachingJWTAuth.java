@@ -0,0 +1,93 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.jwt.JWTOptions;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link JWTAuth} remembering the tokens it has already verified, until they expire: a token presented again is
+ * authenticated without verifying its signature. Only the tokens holding an expiration time (the exp claim) are
+ * remembered, and at most a given number of them.
+ * <p>
+ * It fronts a single {@code JWTAuthHandler}: the tokens are remembered whatever the options of the authentication
+ * (audience, issuer...), which must not change from a request to another.
+ */
+public final class CachingJWTAuth implements JWTAuth {
+  private final JWTAuth delegate;
+  private final int capacity;
+  private final ConcurrentMap<String, Verified> verified = new ConcurrentHashMap<>();
+
+  /**
+   * @param delegate the provider verifying and generating the tokens
+   * @param capacity the maximum number of tokens remembered
+   */
+  public CachingJWTAuth(JWTAuth delegate, int capacity) {
+    this.delegate = delegate;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+    final String token = authInfo.getString("jwt");
+    if (token != null) {
+      final Verified cached = verified.get(token);
+      if (cached != null) {
+        if (cached.expiresAt > System.currentTimeMillis()) {// the wall clock, as the delegate's
+          resultHandler.handle(Future.succeededFuture(cached.user));
+          return;
+        }
+        verified.remove(token, cached);
+      }
+    }
+    delegate.authenticate(authInfo, res -> {
+      if (res.succeeded() && token != null) {
+        remember(token, res.result());
+      }
+      resultHandler.handle(res);
+    });
+  }
+
+  @Override
+  public String generateToken(JsonObject claims, JWTOptions options) {
+    return delegate.generateToken(claims, options);
+  }
+
+  /**
+   * @return the number of tokens remembered
+   */
+  int size() {
+    return verified.size();
+  }
+
+  private void remember(String token, User user) {
+    final Long exp = user.principal().getLong("exp");
+    if (exp == null) {
+      return;// valid forever, it must be verified each time
+    }
+    if (verified.size() >= capacity) {
+      final long now = System.currentTimeMillis();
+      verified.values().removeIf(entry -> entry.expiresAt <= now);
+      if (verified.size() >= capacity) {
+        verified.clear();// all still valid: start over rather than scanning them on each new token
+      }
+    }
+    verified.put(token, new Verified(user, exp * 1000));
+  }
+
+  private static final class Verified {
+    private final User user;
+    private final long expiresAt;
+
+    private Verified(User user, long expiresAt) {
+      this.user = user;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
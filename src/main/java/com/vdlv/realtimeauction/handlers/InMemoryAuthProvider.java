@@ -0,0 +1,225 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.AbstractUser;
+import io.vertx.ext.auth.AuthProvider;
+import io.vertx.ext.auth.User;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link AuthProvider} holding the credentials of a users file in memory, an alternative to the Shiro properties
+ * realm for the login storms: the file has the same format (user.name = password,role... and role.name =
+ * permission...) and is read once, the passwords being kept as salted SHA-256 hashes only.
+ * <p>
+ * The credentials are verified on a dedicated pool of threads rather than on the Vert.x worker pool. The pending
+ * verifications are bounded, in total and per username: beyond these bounds the authentication fails at once rather
+ * than queuing, the client being expected to retry later.
+ */
+public final class InMemoryAuthProvider implements AuthProvider {
+  /**
+   * The name of the pool verifying the credentials
+   */
+  static final String EXECUTOR = "auth-verifier";
+  /**
+   * The maximum number of pending verifications for a username
+   */
+  static final int MAX_PENDING_PER_USER = 3;
+  /**
+   * The maximum number of pending verifications per thread of the pool
+   */
+  private static final int MAX_PENDING_PER_WORKER = 256;
+  private static final int SALT_LENGTH = 16;
+  private final Map<String, Credentials> credentials;
+  private final Credentials unknown;// verified against when the username is unknown, in the same time
+  private final Map<String, Set<String>> permissions;
+  private final WorkerExecutor executor;
+  private final int maxPending;
+  private final AtomicInteger pending = new AtomicInteger();
+  private final ConcurrentMap<String, Integer> pendingByUser = new ConcurrentHashMap<>();
+
+  private InMemoryAuthProvider(Vertx vertx, Properties users, int workers) {
+    final SecureRandom random = new SecureRandom();
+    final Map<String, Credentials> credentials = new HashMap<>();
+    final Map<String, Set<String>> permissions = new HashMap<>();
+    for (String key : users.stringPropertyNames()) {
+      final String[] values = users.getProperty(key).split(",");
+      for (int i = 0; i < values.length; i++) {
+        values[i] = values[i].trim();
+      }
+      if (key.startsWith("user.")) {
+        final Set<String> roles = new HashSet<>(Arrays.asList(values).subList(1, values.length));
+        credentials.put(key.substring("user.".length()), new Credentials(random, values[0], roles));
+      } else if (key.startsWith("role.")) {
+        permissions.put(key.substring("role.".length()), new HashSet<>(Arrays.asList(values)));
+      }
+    }
+    this.credentials = credentials;
+    this.unknown = new Credentials(random, "", Collections.emptySet());
+    this.permissions = permissions;
+    this.executor = vertx.createSharedWorkerExecutor(EXECUTOR, workers);
+    this.maxPending = workers * MAX_PENDING_PER_WORKER;
+  }
+
+  /**
+   * Create a provider from a users file (blocking, to be called at startup).
+   *
+   * @param vertx   the Vert.x instance
+   * @param file    the path of the users file, or its class path resource if there is no such file
+   * @param workers the number of threads verifying the credentials
+   * @return the provider
+   * @throws UncheckedIOException if the users file cannot be read
+   */
+  public static InMemoryAuthProvider create(Vertx vertx, String file, int workers) {
+    final Properties users = new Properties();
+    try (InputStream in = Files.isRegularFile(Paths.get(file)) ? new FileInputStream(file)
+      : InMemoryAuthProvider.class.getClassLoader().getResourceAsStream(file)) {
+      if (in == null) {
+        throw new IOException("No users file " + file);
+      }
+      users.load(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new InMemoryAuthProvider(vertx, users, workers);
+  }
+
+  @Override
+  public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+    final String username = authInfo.getString("username");
+    final String password = authInfo.getString("password");
+    if (username == null || password == null) {
+      resultHandler.handle(Future.failedFuture("Invalid username/password"));
+      return;
+    }
+    if (pending.incrementAndGet() > maxPending) {
+      pending.decrementAndGet();
+      resultHandler.handle(Future.failedFuture("Too many pending authentications"));
+      return;
+    }
+    if (pendingByUser.merge(username, 1, Integer::sum) > MAX_PENDING_PER_USER) {
+      done(username);
+      resultHandler.handle(Future.failedFuture("Too many pending authentications for " + username));
+      return;
+    }
+    executor.<User>executeBlocking(future -> {
+      final Credentials user = credentials.get(username);
+      final boolean verified = (user == null ? unknown : user).verify(password);
+      if (verified && user != null) {
+        future.complete(new InMemoryUser(username, user.roles, permissions));
+      } else {
+        future.fail("Invalid username/password");
+      }
+    }, false, res -> {
+      done(username);
+      resultHandler.handle(res);
+    });
+  }
+
+  /**
+   * Release the resources of the provider.
+   */
+  public void close() {
+    executor.close();
+  }
+
+  private void done(String username) {
+    pendingByUser.computeIfPresent(username, (name, count) -> count == 1 ? null : count - 1);
+    pending.decrementAndGet();
+  }
+
+  /**
+   * The salted hash of a password.
+   */
+  private static final class Credentials {
+    private final byte[] salt = new byte[SALT_LENGTH];
+    private final byte[] hash;
+    private final Set<String> roles;
+
+    private Credentials(SecureRandom random, String password, Set<String> roles) {
+      random.nextBytes(salt);
+      this.hash = hash(salt, password);
+      this.roles = roles;
+    }
+
+    private boolean verify(String password) {
+      return MessageDigest.isEqual(hash, hash(salt, password));// in constant time
+    }
+
+    private static byte[] hash(byte[] salt, String password) {
+      try {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(salt);
+        return digest.digest(password.getBytes(StandardCharsets.UTF_8));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);// every JVM provides SHA-256
+      }
+    }
+  }
+
+  /**
+   * An authenticated user: its principal is {username} as with the Shiro realm, its authorities are "role:name" for
+   * its roles and the permissions of its roles.
+   */
+  private static final class InMemoryUser extends AbstractUser {
+    private final JsonObject principal;
+    private final Set<String> roles;
+    private final Map<String, Set<String>> permissions;
+
+    private InMemoryUser(String username, Set<String> roles, Map<String, Set<String>> permissions) {
+      this.principal = new JsonObject().put("username", username);
+      this.roles = roles;
+      this.permissions = permissions;
+    }
+
+    @Override
+    protected void doIsPermitted(String authority, Handler<AsyncResult<Boolean>> resultHandler) {
+      if (authority.startsWith("role:")) {
+        resultHandler.handle(Future.succeededFuture(roles.contains(authority.substring("role:".length()))));
+        return;
+      }
+      for (String role : roles) {
+        final Set<String> granted = permissions.getOrDefault(role, Collections.emptySet());
+        if (granted.contains("*") || granted.contains(authority)) {
+          resultHandler.handle(Future.succeededFuture(true));
+          return;
+        }
+      }
+      resultHandler.handle(Future.succeededFuture(false));
+    }
+
+    @Override
+    public JsonObject principal() {
+      return principal;
+    }
+
+    @Override
+    public void setAuthProvider(AuthProvider authProvider) {
+      // the authorities are known without the provider
+    }
+  }
+}
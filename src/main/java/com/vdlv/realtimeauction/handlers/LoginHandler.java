@@ -2,10 +2,16 @@ package com.vdlv.realtimeauction.handlers;
 
 import io.vertx.core.Handler;
 import io.vertx.ext.auth.AuthProvider;
+import io.vertx.ext.auth.jwt.JWTAuth;
 import io.vertx.ext.web.RoutingContext;
 
 public interface LoginHandler extends Handler<RoutingContext> {
-  static LoginHandler create(AuthProvider authProvider) {
-    return new LoginHandlerImpl(authProvider);
+  /**
+   * @param authProvider the provider authenticating the users
+   * @param jwtAuth      the provider signing the tokens of the authenticated users
+   * @return the login handler
+   */
+  static LoginHandler create(AuthProvider authProvider, JWTAuth jwtAuth) {
+    return new LoginHandlerImpl(authProvider, jwtAuth);
   }
 }
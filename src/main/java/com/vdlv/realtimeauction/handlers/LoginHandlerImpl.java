@@ -5,18 +5,18 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.auth.AuthProvider;
-import io.vertx.ext.auth.KeyStoreOptions;
 import io.vertx.ext.auth.jwt.JWTAuth;
-import io.vertx.ext.auth.jwt.JWTAuthOptions;
 import io.vertx.ext.jwt.JWTOptions;
 import io.vertx.ext.web.RoutingContext;
 
 public class LoginHandlerImpl implements LoginHandler {
   private final AuthProvider authProvider;
+  private final JWTAuth jwtAuth;
   private final static Logger logger = LoggerFactory.getLogger(LoginHandler.class.getName());
 
-  LoginHandlerImpl(AuthProvider authProvider) {
+  LoginHandlerImpl(AuthProvider authProvider, JWTAuth jwtAuth) {
     this.authProvider = authProvider;
+    this.jwtAuth = jwtAuth;
   }
 
   @Override
@@ -31,13 +31,7 @@ public class LoginHandlerImpl implements LoginHandler {
           if (logger.isDebugEnabled()) {
             logger.debug("User " + authInfo.getValue("username") + " has been authenticated.");
           }
-          JWTAuthOptions config = new JWTAuthOptions()
-            .setKeyStore(new KeyStoreOptions()
-              .setPath("keystore.jceks")
-              .setPassword("secret"));
-
-          JWTAuth provider = JWTAuth.create(context.vertx(), config);
-          final String token = provider.generateToken(new JsonObject().put("sub", authInfo.getValue("username")), new JWTOptions().setExpiresInMinutes(60));
+          final String token = jwtAuth.generateToken(new JsonObject().put("sub", authInfo.getValue("username")), new JWTOptions().setExpiresInMinutes(60));
           JsonObject result = new JsonObject().put("token", token).put("authenticated", true);
           context.response()
             .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaders.createOptimized("application/json"))
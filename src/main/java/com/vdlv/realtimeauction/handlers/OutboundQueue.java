@@ -0,0 +1,211 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The bounded outbound queue of a real-time subscriber (a socket of the event bus bridge or a native socket): the frames
+ * are written at once while the socket keeps up, and queued while its write queue is full, until it drains. The frames
+ * are queued in any form, e.g. the updates of a native socket, encoded when written. When the queue reaches its
+ * capacity, its {@link Policy} applies: a slow browser or a congested mobile client can never make the memory grow.
+ * <p>
+ * Frames are offered with a key, the auction they update: the conflating policy only keeps the latest frame of an
+ * auction. The depth of the queue, the frames dropped and conflated are counted, see {@link #toJson()}: they tell
+ * nothing about the client (e.g. its address), being listed to every logged-in user.
+ * A queue is not thread safe: it is used from the event loop of its socket.
+ */
+public final class OutboundQueue<T> {
+  /**
+   * What happens to the frames of a subscriber that does not keep up
+   */
+  public enum Policy {
+    /**
+     * Only the latest frame of an auction is queued, the oldest frame being dropped if the queue still overflows
+     */
+    CONFLATE,
+    /**
+     * The oldest frame is dropped
+     */
+    DROP_OLDEST,
+    /**
+     * The subscriber is disconnected
+     */
+    DISCONNECT;
+
+    /**
+     * @param name the name of a policy, in any case, with dashes or underscores (e.g. drop-oldest)
+     * @return the policy
+     * @throws IllegalArgumentException if there is no such policy
+     */
+    public static Policy parse(String name) {
+      return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+  }
+
+  private final String id;
+  private final String transport;
+  private final WriteStream<?> stream;
+  private final Consumer<T> writer;
+  private final Runnable closer;
+  private final int capacity;
+  private final Policy policy;
+  private final Map<Object, T> latest = new LinkedHashMap<>();// conflating policy
+  private final ArrayDeque<T> frames = new ArrayDeque<>();// other policies
+  private boolean closed;
+  private long written;
+  private long dropped;
+  private long conflated;
+
+  /**
+   * @param id        the id of the subscriber
+   * @param transport the kind of socket (e.g. sockjs)
+   * @param stream    the socket, telling when its write queue is full and drained
+   * @param writer    writes a frame to the socket
+   * @param closer    disconnects the socket
+   * @param capacity  the maximum number of frames queued
+   * @param policy    what happens when the queue is full
+   */
+  public OutboundQueue(String id, String transport, WriteStream<?> stream, Consumer<T> writer, Runnable closer,
+                       int capacity, Policy policy) {
+    this.id = id;
+    this.transport = transport;
+    this.stream = stream;
+    this.writer = writer;
+    this.closer = closer;
+    this.capacity = capacity;
+    this.policy = policy;
+    stream.drainHandler(v -> drain());
+  }
+
+  /**
+   * @return true if a frame can be written at once, nothing being queued and the socket keeping up
+   */
+  public boolean isWritable() {
+    return !closed && depth() == 0 && !stream.writeQueueFull();
+  }
+
+  /**
+   * Write a frame, or queue it if the socket does not keep up.
+   *
+   * @param key   the auction updated by the frame, never conflated if null
+   * @param frame the frame
+   */
+  public void offer(Object key, T frame) {
+    if (closed) {
+      dropped++;
+      return;
+    }
+    if (isWritable()) {
+      write(frame);
+      return;
+    }
+    switch (policy) {
+      case CONFLATE:
+        if (key != null && latest.containsKey(key)) {
+          latest.put(key, frame);// keeps its place
+          conflated++;
+          return;
+        }
+        if (latest.size() >= capacity) {
+          final Iterator<T> oldest = latest.values().iterator();
+          oldest.next();
+          oldest.remove();
+          dropped++;
+        }
+        latest.put(key == null ? new Object() : key, frame);
+        break;
+      case DROP_OLDEST:
+        if (frames.size() >= capacity) {
+          frames.pollFirst();
+          dropped++;
+        }
+        frames.addLast(frame);
+        break;
+      default:
+        if (frames.size() >= capacity) {
+          dropped += frames.size() + 1;
+          frames.clear();
+          closed = true;
+          closer.run();
+          return;
+        }
+        frames.addLast(frame);
+    }
+  }
+
+  /**
+   * Discard the queued frames, the socket being closed.
+   */
+  public void close() {
+    closed = true;
+    latest.clear();
+    frames.clear();
+  }
+
+  /**
+   * @return the number of frames queued
+   */
+  public int depth() {
+    return latest.size() + frames.size();
+  }
+
+  /**
+   * @return the number of frames dropped
+   */
+  public long getDropped() {
+    return dropped;
+  }
+
+  /**
+   * @return the number of frames replaced by a more recent frame of the same auction
+   */
+  public long getConflated() {
+    return conflated;
+  }
+
+  /**
+   * @return the id of the subscriber
+   */
+  public String getId() {
+    return id;
+  }
+
+  /**
+   * @return the metrics of the subscriber: {id, transport, policy, capacity, depth, written, dropped, conflated}
+   */
+  public JsonObject toJson() {
+    return new JsonObject()
+      .put("id", id)
+      .put("transport", transport)
+      .put("policy", policy.name())
+      .put("capacity", capacity)
+      .put("depth", depth())
+      .put("written", written)
+      .put("dropped", dropped)
+      .put("conflated", conflated);
+  }
+
+  private void drain() {
+    while (!closed && depth() > 0 && !stream.writeQueueFull()) {
+      if (!latest.isEmpty()) {
+        final Iterator<T> oldest = latest.values().iterator();
+        final T frame = oldest.next();
+        oldest.remove();
+        write(frame);
+      } else {
+        write(frames.pollFirst());
+      }
+    }
+  }
+
+  private void write(T frame) {
+    writer.accept(frame);
+    written++;
+  }
+}
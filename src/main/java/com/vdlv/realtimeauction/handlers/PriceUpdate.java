@@ -0,0 +1,51 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+
+/**
+ * The new price of an auction and its buyer, published locally when a bid is accepted (see
+ * {@link com.vdlv.realtimeauction.model.Util#priceUpdatesAddress(String)}): the native WebSocket clients receive it as a
+ * delta rather than the whole auction. It is immutable, thus passed by reference on the event bus.
+ */
+public final class PriceUpdate {
+  private final String auctionId;
+  private final long cents;
+  private final String buyer;
+
+  private PriceUpdate(String auctionId, long cents, String buyer) {
+    this.auctionId = auctionId;
+    this.cents = cents;
+    this.buyer = buyer;
+  }
+
+  /**
+   * @param auction an auction
+   * @return its current price and buyer
+   */
+  static PriceUpdate of(Auction auction) {
+    return new PriceUpdate(auction.getId(), auction.getCurrentAuctionCents(), auction.getCurrentBuyer());
+  }
+
+  public String getAuctionId() {
+    return auctionId;
+  }
+
+  /**
+   * @return the price in cents
+   */
+  public long getCents() {
+    return cents;
+  }
+
+  /**
+   * @return the buyer of the last accepted bid
+   */
+  public String getBuyer() {
+    return buyer;
+  }
+
+  @Override
+  public String toString() {
+    return "PriceUpdate{auctionId='" + auctionId + "', cents=" + cents + ", buyer='" + buyer + "'}";
+  }
+}
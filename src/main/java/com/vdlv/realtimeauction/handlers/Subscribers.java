@@ -0,0 +1,84 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The outbound queues of the connected real-time subscribers, all sharing the same capacity and
+ * {@link OutboundQueue.Policy}, exposing their metrics to see who is lagging.
+ */
+public final class Subscribers {
+  private final int capacity;
+  private final OutboundQueue.Policy policy;
+  private final Map<String, OutboundQueue<?>> queues = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of frames queued per subscriber
+   * @param policy   what happens to the frames of a subscriber whose queue is full
+   */
+  public Subscribers(int capacity, OutboundQueue.Policy policy) {
+    this.capacity = capacity;
+    this.policy = policy;
+  }
+
+  /**
+   * Register a new subscriber.
+   *
+   * @param transport the kind of socket (e.g. sockjs)
+   * @param stream    the socket, telling when its write queue is full and drained
+   * @param writer    writes a frame to the socket
+   * @param closer    disconnects the socket
+   * @param <T>       the type of the frames
+   * @return the outbound queue of the subscriber, to remove when its socket is closed
+   */
+  public <T> OutboundQueue<T> add(String transport, WriteStream<?> stream, Consumer<T> writer, Runnable closer) {
+    final OutboundQueue<T> queue = new OutboundQueue<>(transport + '-' + ids.incrementAndGet(), transport, stream,
+      writer, closer, capacity, policy);
+    queues.put(queue.getId(), queue);
+    return queue;
+  }
+
+  /**
+   * Forget a subscriber, its socket being closed.
+   *
+   * @param queue its outbound queue
+   */
+  public void remove(OutboundQueue<?> queue) {
+    queue.close();
+    queues.remove(queue.getId());
+  }
+
+  /**
+   * @return the number of connected subscribers
+   */
+  public int size() {
+    return queues.size();
+  }
+
+  /**
+   * Handle the request for the metrics of the subscribers, the most lagging first.
+   *
+   * @param context the routing context
+   */
+  public void handleGetSubscribers(RoutingContext context) {
+    final JsonArray subscribers = new JsonArray();
+    queues.values().stream()
+      .sorted(Comparator.<OutboundQueue<?>>comparingInt(OutboundQueue::depth)
+        .thenComparingLong(OutboundQueue::getDropped)
+        .reversed())
+      .map(OutboundQueue::toJson)
+      .forEach(subscribers::add);
+    context.response()
+      .putHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+      .end(subscribers.encode());
+  }
+}
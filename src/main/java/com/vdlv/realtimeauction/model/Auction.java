@@ -6,22 +6,51 @@ import org.apache.commons.lang3.StringUtils;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.ZonedDateTime;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static com.vdlv.realtimeauction.model.Util.ZERO;
 
 /**
  * Represents an auction in this system.
+ * <p>
+ * An auction is {@link State#SCHEDULED} until a scheduler takes over its lifecycle (see {@link #activate()}): it is
+ * then {@link State#OPEN} until the scheduler closes it at its ending time (see {@link #close()}). Whether a scheduled
+ * auction is closed is computed from the clock, whereas the state of an activated auction is just read.
  */
 public final class Auction implements Shareable, Comparable<Auction> {
   private final String id;
   private final String product;
   private ZonedDateTime endingTime;
   private final BigDecimal firstPrice;
-  private final ArrayDeque<Bid> bids;
+  private final long firstCents;
+  private final long endingMicros;
+  private final AtomicReference<BidHistory> history;
+  private final AtomicReference<State> state;
+  private final AtomicReference<Encoding<?>> encoding;
+
+  /**
+   * The lifecycle of an auction.
+   */
+  public enum State {
+    /**
+     * Not handled by a scheduler yet: open until its ending time according to the clock.
+     */
+    SCHEDULED,
+    /**
+     * Open until a scheduler closes it.
+     */
+    OPEN,
+    /**
+     * Closed, the winning bid (if any) is known.
+     */
+    CLOSED
+  }
 
   /**
    * Create a new Auction from a technical <b>and business</b> point of view.
@@ -51,7 +80,19 @@ public final class Auction implements Shareable, Comparable<Auction> {
    * @param endingTime the time when the auction will be closed
    */
   public Auction(String product, BigDecimal firstPrice, ZonedDateTime endingTime) {
-    this.id = UUID.randomUUID().toString();
+    this(UUID.randomUUID().toString(), product, firstPrice, endingTime);
+  }
+
+  /**
+   * Restore an existing Auction (e.g. from a journal), the same business rules are applied but the id is provided.
+   *
+   * @param id         the auction id
+   * @param product    a description of the product
+   * @param firstPrice the first price for this sell
+   * @param endingTime the time when the auction will be closed
+   */
+  public Auction(String id, String product, BigDecimal firstPrice, ZonedDateTime endingTime) {
+    this.id = id;
     this.product = product;
     if (StringUtils.isBlank(product)) {
       throw new IllegalArgumentException(("Product description should not ne null or empty"));
@@ -62,24 +103,30 @@ public final class Auction implements Shareable, Comparable<Auction> {
     } else {
       this.firstPrice = firstPrice.setScale(2, RoundingMode.CEILING);
     }
-    this.bids = new ArrayDeque<>();
+    this.firstCents = Bid.toCents(this.firstPrice);
+    this.endingMicros = Bid.toMicros(endingTime);
+    this.history = new AtomicReference<>(BidHistory.EMPTY);
+    this.state = new AtomicReference<>(State.SCHEDULED);
+    this.encoding = new AtomicReference<>();
   }
 
   /**
    * A full ctor that is used for {@link Shareable#copy()}
    *
-   * @param id auction id
-   * @param product the product detail
-   * @param endingTime the auction's ending time
-   * @param firstPrice the first price
-   * @param bids a stack of bids
+   * @param auction the auction copied (its id, product, ending time, first price and encoded form)
+   * @param history the (immutable) bid history
+   * @param state the lifecycle state
    */
-  private Auction(String id, String product, ZonedDateTime endingTime, BigDecimal firstPrice, ArrayDeque<Bid> bids) {
-    this.id = id;
-    this.product = product;
-    this.endingTime = endingTime;
-    this.firstPrice = firstPrice;
-    this.bids = bids;
+  private Auction(Auction auction, BidHistory history, State state) {
+    this.id = auction.id;
+    this.product = auction.product;
+    this.endingTime = auction.endingTime;
+    this.firstPrice = auction.firstPrice;
+    this.firstCents = auction.firstCents;
+    this.endingMicros = auction.endingMicros;
+    this.history = new AtomicReference<>(history);
+    this.state = new AtomicReference<>(state);
+    this.encoding = auction.encoding;// copies share the encoded form of the auction
   }
 
   /**
@@ -121,7 +168,7 @@ public final class Auction implements Shareable, Comparable<Auction> {
    * @return the current buyer
    */
   public String getCurrentBuyer() {
-    return Optional.ofNullable(bids.peekLast()).orElse(Util.UnluckyAuctionBid).getBuyer();
+    return lastBidOrElse(Util.UnluckyAuctionBid).getBuyer();
   }
 
   /**
@@ -130,19 +177,54 @@ public final class Auction implements Shareable, Comparable<Auction> {
    */
   public Optional<Bid> getWinningBid() {
     if (isClosed()) {
-      return Optional.ofNullable(bids.peekLast());
+      return Optional.ofNullable(lastBidOrElse(null));
     } else {
       return Optional.empty();
     }
 
   }
 
-  private boolean isClosed(ZonedDateTime time) {
-    return getEndingTime().isBefore(time);
+  private boolean isClosedAt(long micros) {
+    return endingMicros < micros;
   }
 
   public boolean isClosed() {
-    return isClosed(Util.universalNow());
+    switch (state.get()) {
+      case OPEN:
+        return false;
+      case CLOSED:
+        return true;
+      default:
+        return isClosedAt(UniversalClock.current().micros());
+    }
+  }
+
+  /**
+   * @return the lifecycle state of this auction
+   */
+  public State getState() {
+    return state.get();
+  }
+
+  /**
+   * Hand the lifecycle of this auction over to a scheduler: from now on, the auction is closed only once
+   * {@link #close()} is called.
+   *
+   * @return {@link State#OPEN}, or {@link State#CLOSED} if the ending time is already reached
+   */
+  public State activate() {
+    final State activated = isClosedAt(UniversalClock.current().micros()) ? State.CLOSED : State.OPEN;
+    state.set(activated);
+    return activated;
+  }
+
+  /**
+   * Close an open auction, to be called by the scheduler at its ending time.
+   *
+   * @return true if the auction has been closed by this call
+   */
+  public boolean close() {
+    return state.compareAndSet(State.OPEN, State.CLOSED);
   }
 
   public boolean isOpen() {
@@ -155,29 +237,100 @@ public final class Auction implements Shareable, Comparable<Auction> {
    * A bid is acceptable if it is not null, not outdated (see {@link #isBidOutdated})
    * and corresponds to the best price (see {@link #isTheBestPrice}).
    * A bid is recordable if one can persist it in the store.
+   * <p>
+   * This method is lock-free and can be called concurrently: the best price check and the append are done in a single
+   * compare-and-set on the bid history, thus two concurrent bids can never silently overwrite each other.
    *
    * @param bid a provided bid
    * @return true if the bid is accepted (acceptable and recordable)
    */
   public boolean addBid(Bid bid) {
-    if (bid != null && !isBidOutdated(bid) && isTheBestPrice(bid)) {
-      return bids.add(bid);
-    } else {
+    if (bid == null || isBidOutdated(bid)) {
       return false;
     }
+    BidHistory current;
+    do {
+      current = history.get();
+      if (!isTheBestPrice(bid, current)) {
+        return false;
+      }
+    } while (!history.compareAndSet(current, current.append(bid)));
+    return true;
   }
 
   /**
    * @return the value of the auction 'now'
    */
   public BigDecimal getCurrentAuctionValue() {
-    if (bids.isEmpty()) {
+    final BidHistory current = history.get();
+    if (current.size() == 0) {
       return firstPrice;
     } else {
-      return bids.peekLast().getPrice();
+      return Bid.fromCents(current.lastCents());
     }
   }
 
+  /**
+   * @return the value of the auction 'now', in cents (see {@link #getCurrentAuctionValue()})
+   */
+  public long getCurrentAuctionCents() {
+    final BidHistory current = history.get();
+    return current.size() == 0 ? firstCents : current.lastCents();
+  }
+
+  /**
+   * @return the ending time of the auction, in microseconds since the epoch (see {@link #getEndingTime()})
+   */
+  public long getEndingMicros() {
+    return endingMicros;
+  }
+
+  /**
+   * @return the bids accepted so far, from the oldest to the most recent
+   */
+  public List<Bid> getBids() {
+    final BidHistory current = history.get();
+    final List<Bid> result = new ArrayList<>(current.size());
+    for (int i = 0; i < current.size(); i++) {
+      result.add(current.get(i));
+    }
+    return result;
+  }
+
+  /**
+   * @return the version of this auction, which increases each time a bid is accepted
+   */
+  public int getVersion() {
+    return history.get().size();
+  }
+
+  /**
+   * Memoize an encoded form of this auction (e.g. its JSON bytes), shared with its copies: the encoder is called again
+   * only once a bid has been accepted since the previous call.
+   *
+   * @param encoder the encoder, which must always be the same instance (one encoded form is kept per auction)
+   * @param <T>     the type of the encoded form
+   * @return the encoded form of this auction at its current version (or at a more recent one)
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T encode(Function<Auction, T> encoder) {
+    final BidHistory current = history.get();
+    final Encoding<?> cached = encoding.get();
+    if (cached != null && cached.history == current && cached.encoder == encoder) {
+      return (T) cached.value;
+    }
+    final T value = encoder.apply(this);
+    encoding.set(new Encoding<>(current, encoder, value));// keyed by the history read before encoding, never stale
+    return value;
+  }
+
+  /**
+   * @return the number of bids accepted so far
+   */
+  public int getBidCount() {
+    return history.get().size();
+  }
+
   /**
    * Checks if the bid is outdated (it was made after the auction end time)
    *
@@ -185,7 +338,7 @@ public final class Auction implements Shareable, Comparable<Auction> {
    * @return true if the bid is outdated false otherwise
    */
   public boolean isBidOutdated(Bid bid) {
-    return isClosed(bid.getTime());
+    return bid.micros() > endingMicros;
   }
 
   /**
@@ -199,14 +352,22 @@ public final class Auction implements Shareable, Comparable<Auction> {
    * @return true if the bid win false otherwise
    */
   public boolean isTheBestPrice(Bid bid) {
-    if (bids.isEmpty()) {
-      return bid.getPrice().compareTo(getFirstPrice()) >= 0;// can be equal to the first price
+    return isTheBestPrice(bid, history.get());
+  }
+
+  private boolean isTheBestPrice(Bid bid, BidHistory current) {
+    if (current.size() == 0) {
+      return bid.cents() >= firstCents;// can be equal to the first price
     } else {
-      final BigDecimal currentBestPrice = bids.peekLast().getPrice();
-      return bid.getPrice().compareTo(currentBestPrice) == 1;
+      return bid.cents() > current.lastCents();
     }
   }
 
+  private Bid lastBidOrElse(Bid other) {
+    final BidHistory current = history.get();
+    return current.size() == 0 ? other : current.get(current.size() - 1);
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
@@ -234,7 +395,7 @@ public final class Auction implements Shareable, Comparable<Auction> {
 
   @Override
   public Shareable copy() {
-    return new Auction(id, product, endingTime, firstPrice, bids.clone());// A Bid object is immutable, thus cloning should be OK
+    return new Auction(this, history.get(), state.get());// The bid history is immutable, thus sharing it is OK
   }
 
   @Override
@@ -244,4 +405,19 @@ public final class Auction implements Shareable, Comparable<Auction> {
     }
     return -getEndingTime().compareTo(auction.getEndingTime());
   }
+
+  /**
+   * An encoded form of an auction and the bid history it was computed from.
+   */
+  private static final class Encoding<T> {
+    private final BidHistory history;
+    private final Function<Auction, T> encoder;
+    private final T value;
+
+    private Encoding(BidHistory history, Function<Auction, T> encoder, T value) {
+      this.history = history;
+      this.encoder = encoder;
+      this.value = value;
+    }
+  }
 }
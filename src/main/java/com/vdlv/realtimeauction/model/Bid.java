@@ -5,6 +5,8 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Objects;
 
@@ -12,11 +14,15 @@ import static com.vdlv.realtimeauction.model.Util.ZERO;
 
 /**
  * Represents a bid. It should be associated to an auction (although we haven't enforced it yet through modelling)
+ * <p>
+ * A bid is stored as primitives: the price in cents and the time in epoch microseconds, the auctions storing their bid
+ * history column-wise with an interned buyer id (see {@link BidHistory}). The getters are views built on demand.
  */
 public final class Bid implements Shareable {
+  private static final long MICROS_PER_SECOND = 1_000_000L;
   private final String buyer;
-  private final BigDecimal price;
-  private final ZonedDateTime time;
+  private final long cents;
+  private final long micros;
 
   /**
    * <ul>Several business rules are applied internally:
@@ -28,17 +34,87 @@ public final class Bid implements Shareable {
    * @throws IllegalArgumentException if buyer is null or empty (should not happen)
    */
   public Bid(String buyer, BigDecimal price) {
+    this(buyer, price, UniversalClock.current().micros());
+  }
+
+  /**
+   * A ctor of a bid whose price is given in cents (e.g. by the binary form of a bid), without any rounding.
+   *
+   * @param buyer must be identified
+   * @param cents the price in cents
+   * @throws IllegalArgumentException if buyer is null or empty (should not happen)
+   */
+  public Bid(String buyer, long cents) {
+    this(buyer, BigDecimal.valueOf(cents, 2));
+  }
+
+  /**
+   * A ctor restoring a bid done in the past (e.g. from a journal), the same business rules are applied.
+   *
+   * @param buyer must be identified
+   * @param price self described
+   * @param time  when the bid was done (kept with a microsecond precision)
+   * @throws IllegalArgumentException if buyer is null or empty (should not happen)
+   */
+  public Bid(String buyer, BigDecimal price, ZonedDateTime time) {
+    this(buyer, price, toMicros(time));
+  }
+
+  private Bid(String buyer, BigDecimal price, long micros) {
     if (StringUtils.isBlank(buyer)) {
       throw new IllegalArgumentException(("The buyer should be identified"));
     }
     this.buyer = buyer;
 
     if (price == null || ZERO.compareTo(price) == 1) {
-      this.price = ZERO;
+      this.cents = 0;
     } else {
-      this.price = price.setScale(2, RoundingMode.CEILING);
+      this.cents = toCents(price);
     }
-    this.time = Util.universalNow();
+    this.micros = micros;
+  }
+
+  /**
+   * A bid of a {@link BidHistory}.
+   */
+  Bid(String buyer, long cents, long micros) {
+    this.buyer = buyer;
+    this.cents = cents;
+    this.micros = micros;
+  }
+
+  /**
+   * @param price a price
+   * @return the price in cents (rounded up)
+   */
+  static long toCents(BigDecimal price) {
+    final BigDecimal rounded = price.scale() > 2 ? price.setScale(2, RoundingMode.CEILING) : price;
+    return rounded.scaleByPowerOfTen(2).longValueExact();// no BigInteger involved for usual prices
+  }
+
+  /**
+   * @param cents a price in cents
+   * @return the price
+   */
+  public static BigDecimal fromCents(long cents) {
+    return BigDecimal.valueOf(cents, 2);
+  }
+
+  /**
+   * @param time a time
+   * @return the time in microseconds since the epoch
+   */
+  static long toMicros(ZonedDateTime time) {
+    return Math.addExact(Math.multiplyExact(time.toEpochSecond(), MICROS_PER_SECOND), time.getNano() / 1_000);
+  }
+
+  /**
+   * @param micros a time in microseconds since the epoch
+   * @return the time (UTC)
+   */
+  public static ZonedDateTime fromMicros(long micros) {
+    return Instant.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND), Math.floorMod(micros, MICROS_PER_SECOND) * 1_000)
+      .atZone(ZoneOffset.UTC);
   }
 
   /**
@@ -52,38 +128,45 @@ public final class Bid implements Shareable {
    * @return The price associated to this offer (in the current modelling it could be any currency (fiat or ether, bitcoins, socks...)
    */
   public BigDecimal getPrice() {
-    return price;
+    return fromCents(cents);
   }
 
   /**
    * @return The time when this bid has been done (created from a technical point of view). Once again this modelling should evolved in a real use case.
    */
   public ZonedDateTime getTime() {
-    return time;
+    return fromMicros(micros);
   }
 
+  long cents() {
+    return cents;
+  }
+
+  long micros() {
+    return micros;
+  }
 
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
     if (o == null || getClass() != o.getClass()) return false;
     Bid bid = (Bid) o;
-    return Objects.equals(getBuyer(), bid.getBuyer()) &&
-      Objects.equals(getPrice(), bid.getPrice()) &&
-      getTime().equals(bid.getTime());
+    return buyer.equals(bid.buyer) &&
+      cents == bid.cents &&
+      micros == bid.micros;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getBuyer(), getPrice(), getTime());
+    return Objects.hash(buyer, cents, micros);
   }
 
   @Override
   public String toString() {
     return "Bid{" +
       "buyer='" + buyer + '\'' +
-      ", price=" + price +
-      ", time=" + time +
+      ", price=" + getPrice() +
+      ", time=" + getTime() +
       '}';
   }
 }
@@ -0,0 +1,91 @@
+package com.vdlv.realtimeauction.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An immutable view of the bids of an auction, stored column-wise in primitive arrays (price in cents, time in epoch
+ * microseconds, interned buyer name, see {@link Buyers}): a bid costs 20 bytes and comparing prices is a long comparison.
+ * <p>
+ * Appending a bid returns a new view. The arrays are shared between the successive views and are written in place as
+ * long as the appended slot is claimed by nobody else, otherwise (e.g. two copies of an auction receiving different
+ * bids, or a concurrent append) they are copied first. Thus a view never changes once published, and appends are
+ * lock-free.
+ */
+final class BidHistory {
+  static final BidHistory EMPTY = new BidHistory(new Buffer(0), 0);
+
+  private final Buffer buffer;
+  private final int size;
+
+  private BidHistory(Buffer buffer, int size) {
+    this.buffer = buffer;
+    this.size = size;
+  }
+
+  /**
+   * @return the number of bids
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the price in cents of the last bid, this history must not be empty
+   */
+  long lastCents() {
+    return buffer.cents[size - 1];
+  }
+
+  /**
+   * @param index the index of a bid, from the oldest to the most recent
+   * @return a view of this bid
+   */
+  Bid get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Bid " + index + " of " + size);
+    }
+    return new Bid(buffer.buyers[index], buffer.cents[index], buffer.micros[index]);
+  }
+
+  /**
+   * @param bid a bid
+   * @return a new history ending with this bid
+   */
+  BidHistory append(Bid bid) {
+    Buffer target = buffer;
+    if (size == target.cents.length || !target.used.compareAndSet(size, size + 1)) {// claim the slot
+      target = buffer.copy(size, Math.max(4, size + (size >> 1) + 1));
+    }
+    target.cents[size] = bid.cents();
+    target.micros[size] = bid.micros();
+    target.buyers[size] = Buyers.intern(bid.getBuyer());
+    return new BidHistory(target, size + 1);// published by the caller through a volatile write
+  }
+
+  /**
+   * The arrays shared by the views of a history.
+   */
+  private static final class Buffer {
+    private final long[] cents;
+    private final long[] micros;
+    private final String[] buyers;
+    private final AtomicInteger used = new AtomicInteger();// the number of claimed slots
+
+    private Buffer(int capacity) {
+      this(new long[capacity], new long[capacity], new String[capacity]);
+    }
+
+    private Buffer(long[] cents, long[] micros, String[] buyers) {
+      this.cents = cents;
+      this.micros = micros;
+      this.buyers = buyers;
+    }
+
+    private Buffer copy(int size, int capacity) {
+      final Buffer copy = new Buffer(Arrays.copyOf(cents, capacity), Arrays.copyOf(micros, capacity), Arrays.copyOf(buyers, capacity));
+      copy.used.set(size + 1);// the slot being appended
+      return copy;
+    }
+  }
+}
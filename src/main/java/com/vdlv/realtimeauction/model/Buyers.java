@@ -0,0 +1,67 @@
+package com.vdlv.realtimeauction.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The interning table of the buyers: the bid histories share a single instance of the name of a buyer rather than one
+ * per bid.
+ * <p>
+ * The table does not keep the buyers alive: a name is held weakly, and its entry is released once no bid history
+ * refers to it any longer (e.g. once the auctions of a buyer are archived), thus the table is bounded by the buyers of
+ * the auctions in memory rather than by all the buyers ever seen.
+ */
+final class Buyers {
+  private static final ConcurrentMap<String, Name> names = new ConcurrentHashMap<>();
+  private static final ReferenceQueue<String> released = new ReferenceQueue<>();
+
+  private Buyers() {
+  }
+
+  /**
+   * @param buyer a buyer
+   * @return the shared instance of its name (this one on the first call, or once the previous one is released)
+   */
+  static String intern(String buyer) {
+    final Name name = names.get(buyer);
+    final String shared = name == null ? null : name.get();
+    return shared != null ? shared : register(buyer);
+  }
+
+  private static String register(String buyer) {
+    purge();
+    final String key = new String(buyer);// not the interned instance: the key must not keep it alive
+    while (true) {
+      final Name name = names.get(key);
+      final String shared = name == null ? null : name.get();
+      if (shared != null) {
+        return shared;
+      }
+      final Name registered = new Name(key, buyer);
+      if (name == null ? names.putIfAbsent(key, registered) == null : names.replace(key, name, registered)) {
+        return buyer;
+      }
+    }
+  }
+
+  private static void purge() {
+    Name name;
+    while ((name = (Name) released.poll()) != null) {
+      names.remove(name.key, name);// unless registered again in the meantime
+    }
+  }
+
+  /**
+   * A name held weakly, along with its key in the table.
+   */
+  private static final class Name extends WeakReference<String> {
+    private final String key;
+
+    private Name(String key, String buyer) {
+      super(buyer, released);
+      this.key = key;
+    }
+  }
+}
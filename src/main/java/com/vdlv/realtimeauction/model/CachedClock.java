@@ -0,0 +1,56 @@
+package com.vdlv.realtimeauction.model;
+
+import io.vertx.core.Vertx;
+
+/**
+ * A coarse clock reading a cached time, refreshed from a source clock by a periodic Vert.x timer: reading it costs a
+ * volatile read. Its precision is the period of the timer.
+ */
+public final class CachedClock extends UniversalClock {
+  private final UniversalClock source;
+  private volatile long micros;
+  private Vertx vertx;
+  private long timerId = -1;
+
+  /**
+   * @param source the clock providing the time
+   */
+  public CachedClock(UniversalClock source) {
+    this.source = source;
+    this.micros = source.micros();
+  }
+
+  /**
+   * @param vertx      the Vert.x instance running the refresh timer
+   * @param resolution the period of the refresh in milliseconds
+   * @return a cached system clock, refreshed until {@link #stop()} is called
+   */
+  public static CachedClock start(Vertx vertx, long resolution) {
+    final CachedClock clock = new CachedClock(UniversalClock.system());
+    clock.vertx = vertx;
+    clock.timerId = vertx.setPeriodic(resolution, id -> clock.refresh());
+    return clock;
+  }
+
+  /**
+   * Read the source clock.
+   */
+  public void refresh() {
+    micros = source.micros();
+  }
+
+  /**
+   * Cancel the refresh timer, if any.
+   */
+  public void stop() {
+    if (timerId >= 0) {
+      vertx.cancelTimer(timerId);
+      timerId = -1;
+    }
+  }
+
+  @Override
+  public long micros() {
+    return micros;
+  }
+}
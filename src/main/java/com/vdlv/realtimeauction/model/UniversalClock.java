@@ -0,0 +1,88 @@
+package com.vdlv.realtimeauction.model;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * The clock of the application, always in the UTC time zone (see {@link Util#universalNow()}).
+ * <p>
+ * All the model and repository code reads the time from the {@link #current()} clock, which can be replaced: by a
+ * {@link CachedClock} to avoid reading the system clock on the hot path, or by a {@link VirtualClock} to run
+ * simulations and replays at the pace of the caller rather than at the pace of the wall clock.
+ */
+public abstract class UniversalClock extends Clock {
+  private static final long MICROS_PER_SECOND = 1_000_000L;
+  private static final UniversalClock SYSTEM = new UniversalClock() {
+    @Override
+    public long micros() {
+      final Instant now = Instant.now();
+      return now.getEpochSecond() * MICROS_PER_SECOND + now.getNano() / 1_000;
+    }
+  };
+  private static volatile UniversalClock current = SYSTEM;
+
+  /**
+   * @return the clock used by the application
+   */
+  public static UniversalClock current() {
+    return current;
+  }
+
+  /**
+   * @param clock the clock used by the application from now on
+   */
+  public static void use(UniversalClock clock) {
+    current = clock;
+  }
+
+  /**
+   * @return the system clock (the default one)
+   */
+  public static UniversalClock system() {
+    return SYSTEM;
+  }
+
+  /**
+   * @return the current time in microseconds since the epoch (without allocation for the clocks of this package)
+   */
+  public abstract long micros();
+
+  @Override
+  public long millis() {
+    return Math.floorDiv(micros(), 1_000L);
+  }
+
+  @Override
+  public Instant instant() {
+    final long micros = micros();
+    return Instant.ofEpochSecond(Math.floorDiv(micros, MICROS_PER_SECOND), Math.floorMod(micros, MICROS_PER_SECOND) * 1_000);
+  }
+
+  @Override
+  public ZoneId getZone() {
+    return ZoneOffset.UTC;
+  }
+
+  @Override
+  public Clock withZone(ZoneId zone) {
+    final UniversalClock source = this;
+    return new Clock() {
+      @Override
+      public ZoneId getZone() {
+        return zone;
+      }
+
+      @Override
+      public Clock withZone(ZoneId other) {
+        return source.withZone(other);
+      }
+
+      @Override
+      public Instant instant() {
+        return source.instant();
+      }
+    };
+  }
+}
@@ -1,7 +1,6 @@
 package com.vdlv.realtimeauction.model;
 
 import java.math.BigDecimal;
-import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 
 import static java.math.RoundingMode.CEILING;
@@ -31,15 +30,150 @@ public interface Util {
   /**
    * One should worry about time with an auction system that may run world wild
    *
-   * @return 'now' according to UTC time zone offset
+   * @return 'now' according to UTC time zone offset, read from the application clock (see {@link UniversalClock})
    */
   static ZonedDateTime universalNow() {
-    return ZonedDateTime.now(ZoneOffset.UTC);
+    return ZonedDateTime.now(UniversalClock.current());
   }
 
   static long auctionValidityInMinutes() {
     return 5;
   }
 
+  /**
+   * The prefix of the addresses where the updated auctions are published when a bid is accepted, one address per auction
+   * (see {@link #bidsAddress(String)}).
+   */
   String BidsTopic = "bids";
+
+  /**
+   * The address where an event is published when an auction closes (see {@link Auction.State#CLOSED}).
+   */
+  String ClosedAuctionsTopic = "auctions.closed";
+
+  /**
+   * The address where a client asks for a snapshot of the open auctions followed by the stream of their updates (or
+   * resumes its stream from a known version), see AuctionSubscriptions.
+   */
+  String SubscribeAddress = "auctions.subscribe";
+
+  /**
+   * The prefix of the addresses where the subscriptions stream their updates, one address per subscription chosen by
+   * its client (a random suffix).
+   */
+  String SubscriptionsTopic = "subscriptions";
+
+  /**
+   * @return the number of shards auctions are partitioned across (one per core unless the 'auction.shards' system
+   * property says otherwise)
+   */
+  static int shardCount() {
+    return Integer.getInteger("auction.shards", Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return the number of changes kept to answer the delta requests (65536 unless the 'auction.changes' system property
+   * says otherwise)
+   */
+  static int changeLogCapacity() {
+    return Integer.getInteger("auction.changes", 65536);
+  }
+
+  /**
+   * @return the number of verified JWT tokens kept to skip the verification of their signature (10000 unless the
+   * 'auth.tokens' system property says otherwise)
+   */
+  static int tokenCacheCapacity() {
+    return Integer.getInteger("auth.tokens", 10000);
+  }
+
+  /**
+   * @return the interval in milliseconds between two publications of an auction receiving bids, the intermediate
+   * updates being conflated (50 unless the 'bids.conflation' system property says otherwise, 0 to publish every update)
+   */
+  static long conflationInterval() {
+    return Long.getLong("bids.conflation", 50);
+  }
+
+  /**
+   * @return the rise of price, in percent of the last published price, publishing an update at once rather than with
+   * the next conflation flush (10 unless the 'bids.conflation.threshold' system property says otherwise, 0 to disable)
+   */
+  static int conflationThreshold() {
+    return Integer.getInteger("bids.conflation.threshold", 10);
+  }
+
+  /**
+   * @return the maximum number of frames queued for a real-time subscriber that does not keep up (256 unless the
+   * 'subscribers.queue' system property says otherwise)
+   */
+  static int subscriberQueueCapacity() {
+    return Integer.getInteger("subscribers.queue", 256);
+  }
+
+  /**
+   * @return what happens to the frames of a subscriber whose queue is full: conflate (the default), drop-oldest or
+   * disconnect (the 'subscribers.policy' system property), see OutboundQueue.Policy
+   */
+  static String subscriberPolicy() {
+    return System.getProperty("subscribers.policy", "conflate");
+  }
+
+  /**
+   * @return the maximum number of subscription streams of a client of the event bus bridge (4 unless the
+   * 'subscriptions.per.socket' system property says otherwise), each one registering up to a page of consumers
+   */
+  static int subscriptionsPerSocket() {
+    return Integer.getInteger("subscriptions.per.socket", 4);
+  }
+
+  /**
+   * @return the users file (the 'auth.users' system property, a path or a class path resource, vertx-users.properties by
+   * default)
+   */
+  static String usersFile() {
+    return System.getProperty("auth.users", "vertx-users.properties");
+  }
+
+  /**
+   * @return the number of threads verifying the credentials (one per core unless the 'auth.workers' system property
+   * says otherwise)
+   */
+  static int authWorkers() {
+    return Integer.getInteger("auth.workers", Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @return true if the users are authenticated by the Shiro properties realm rather than by the in-memory credentials
+   * (the 'auth.shiro' system property)
+   */
+  static boolean shiroRealm() {
+    return Boolean.getBoolean("auth.shiro");
+  }
+
+  /**
+   * @param auctionId the id of an auction
+   * @return the event bus address where this auction is published when a bid is accepted, so that only the clients
+   * showing it receive it
+   */
+  static String bidsAddress(String auctionId) {
+    return BidsTopic + '.' + auctionId;
+  }
+
+  /**
+   * @param auctionId the id of an auction
+   * @return the (local) event bus address where the new price of this auction is published, along with its buyer, when
+   * a bid is accepted: the compact form of {@link #bidsAddress(String)} pushed to the native WebSocket clients
+   */
+  static String priceUpdatesAddress(String auctionId) {
+    return "prices." + auctionId;
+  }
+
+  /**
+   * @param shard a shard index
+   * @return the event bus address of the verticle deciding the bids of this shard
+   */
+  static String shardAddress(int shard) {
+    return "auctions.shard." + shard;
+  }
 }
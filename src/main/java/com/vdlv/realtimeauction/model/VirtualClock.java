@@ -0,0 +1,44 @@
+package com.vdlv.realtimeauction.model;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A simulated clock: the time only moves when {@link #advance(Duration)} or {@link #set(Instant)} is called, thus a
+ * benchmark or a replay can run hours of auction activity in seconds, and deterministically.
+ */
+public final class VirtualClock extends UniversalClock {
+  private final AtomicLong micros;
+
+  /**
+   * @param start the initial time
+   */
+  public VirtualClock(Instant start) {
+    this.micros = new AtomicLong(toMicros(start));
+  }
+
+  /**
+   * @param duration how much the time moves forward
+   * @return the new time in microseconds since the epoch
+   */
+  public long advance(Duration duration) {
+    return micros.addAndGet(duration.toNanos() / 1_000);
+  }
+
+  /**
+   * @param time the new time, which can be in the past of the current one
+   */
+  public void set(Instant time) {
+    micros.set(toMicros(time));
+  }
+
+  @Override
+  public long micros() {
+    return micros.get();
+  }
+
+  private static long toMicros(Instant time) {
+    return Math.addExact(Math.multiplyExact(time.getEpochSecond(), 1_000_000L), time.getNano() / 1_000);
+  }
+}
@@ -0,0 +1,285 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import io.vertx.core.Context;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * The read-only tier of the auctions closed for a while (see {@link AuctionRepository#archiveClosedAuctions}).
+ * <p>
+ * Archived auctions are appended to a single file (archive.dat), framed as [length][crc32][payload] like the journal
+ * records. Only their position in the listing order and their offset in the file are kept in memory, the auctions
+ * themselves are loaded on demand through a bounded LRU cache. The index is rebuilt by a scan of the file on startup,
+ * a torn record at the end of the file (crash during an archival) being discarded.
+ * <p>
+ * Auctions are indexed only once they are durable in the archive and removed from the store, thus they are never
+ * listed twice. An auction upserted again after having been archived is removed from the index, the store being the
+ * reference.
+ * <p>
+ * Loading an auction which is not cached reads the file: on an event loop, it fails with a {@link WouldBlockException}
+ * rather than blocking, and the query must run on a worker (see {@link AuctionRepository#query}).
+ */
+final class AuctionArchive implements Listing.Source, AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(AuctionArchive.class);
+  private static final int HEADER_SIZE = 8;
+
+  private final FileChannel channel;
+  private final ConcurrentSkipListMap<AuctionCursor, Long> index = new ConcurrentSkipListMap<>();
+  private final ConcurrentMap<String, AuctionCursor> ids = new ConcurrentHashMap<>();
+  private final Map<Long, Auction> cache;
+  private long end;
+
+  private AuctionArchive(FileChannel channel, int cacheSize) {
+    this.channel = channel;
+    this.cache = new LinkedHashMap<Long, Auction>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Auction> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Open the archive stored in a directory (blocking).
+   *
+   * @param directory the archive directory (created if needed)
+   * @param cacheSize the maximum number of archived auctions kept in memory
+   * @return the archive with its index loaded
+   * @throws IOException if the archive cannot be read or created
+   */
+  static AuctionArchive open(Path directory, int cacheSize) throws IOException {
+    Files.createDirectories(directory);
+    final FileChannel channel = FileChannel.open(directory.resolve("archive.dat"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    final AuctionArchive archive = new AuctionArchive(channel, cacheSize);
+    archive.scan();
+    return archive;
+  }
+
+  /**
+   * Append an auction, not durable until {@link #force()} is called nor listed until it is indexed.
+   *
+   * @param auction a closed auction
+   * @return the offset of its record, see {@link #index(Auction, long)}
+   * @throws IOException if the archive cannot be written
+   */
+  synchronized long append(Auction auction) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    AuctionSerialization.writeAuction(new DataOutputStream(bytes), auction);
+    final byte[] payload = bytes.toByteArray();
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    final ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+    record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+    final long offset = end;
+    while (record.hasRemaining()) {
+      end += channel.write(record, end);
+    }
+    return offset;
+  }
+
+  /**
+   * Discard the records appended from an offset, e.g. when they cannot be made durable.
+   *
+   * @param offset the offset of the first record to discard
+   * @throws IOException if the archive cannot be truncated
+   */
+  synchronized void discardFrom(long offset) throws IOException {
+    channel.truncate(offset);
+    end = offset;
+  }
+
+  /**
+   * List an appended auction, once durable.
+   *
+   * @param auction an archived auction
+   * @param offset  the offset of its record
+   */
+  void index(Auction auction, long offset) {
+    index(AuctionCursor.of(auction), auction.getId(), offset);
+  }
+
+  /**
+   * Make the appended auctions durable (blocking).
+   *
+   * @throws IOException if the archive cannot be written
+   */
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  /**
+   * @param id the id of an auction
+   * @return the archived auction or null if it is not archived
+   */
+  Auction get(String id) {
+    final AuctionCursor cursor = ids.get(id);
+    if (cursor == null) {
+      return null;
+    }
+    final Long offset = index.get(cursor);
+    return offset == null ? null : load(offset);
+  }
+
+  /**
+   * @param id the id of an auction
+   * @return true if the auction is archived, without reading it
+   */
+  boolean contains(String id) {
+    return ids.containsKey(id);
+  }
+
+  /**
+   * Forget an archived auction (its record stays in the file).
+   *
+   * @param id the id of an auction
+   */
+  void remove(String id) {
+    final AuctionCursor cursor = ids.remove(id);
+    if (cursor != null) {
+      index.remove(cursor);
+    }
+  }
+
+  @Override
+  public int size() {
+    return index.size();
+  }
+
+  @Override
+  public Iterator<? extends Map.Entry<AuctionCursor, Auction>> entries(AuctionCursor cursor) {
+    final Iterator<Map.Entry<AuctionCursor, Long>> offsets = (cursor == null ? index : index.tailMap(cursor, false)).entrySet().iterator();
+    return new Iterator<Map.Entry<AuctionCursor, Auction>>() {
+      @Override
+      public boolean hasNext() {
+        return offsets.hasNext();
+      }
+
+      @Override
+      public Map.Entry<AuctionCursor, Auction> next() {
+        final Map.Entry<AuctionCursor, Long> entry = offsets.next();
+        return new AbstractMap.SimpleImmutableEntry<AuctionCursor, Auction>(entry.getKey(), null) {
+          @Override
+          public Auction getValue() {
+            return load(entry.getValue());// only the auctions of the page are loaded
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      logger.error("Failed to close the archive", e);
+    }
+  }
+
+  private void index(AuctionCursor cursor, String id, long offset) {
+    final AuctionCursor previous = ids.put(id, cursor);
+    if (previous != null) {
+      index.remove(previous);// archived again after a restart, the latest record wins
+    }
+    index.put(cursor, offset);
+  }
+
+  private Auction load(long offset) {
+    synchronized (cache) {
+      final Auction cached = cache.get(offset);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    if (Context.isOnEventLoopThread()) {
+      throw WouldBlockException.INSTANCE;
+    }
+    try {
+      final ByteBuffer header = read(offset, HEADER_SIZE);
+      final Auction auction = decode(read(offset + HEADER_SIZE, header.getInt()).array());
+      synchronized (cache) {
+        cache.put(offset, auction);
+      }
+      return auction;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to read the archive at " + offset, e);
+    }
+  }
+
+  private void scan() throws IOException {
+    final long size = channel.size();
+    while (end + HEADER_SIZE <= size) {
+      final ByteBuffer header = read(end, HEADER_SIZE);
+      final int length = header.getInt();
+      final int checksum = header.getInt();
+      if (length <= 0 || end + HEADER_SIZE + length > size) {
+        break;
+      }
+      final byte[] payload = read(end + HEADER_SIZE, length).array();
+      final CRC32 crc = new CRC32();
+      crc.update(payload);
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      final Auction auction = decode(payload);
+      index(AuctionCursor.of(auction), auction.getId(), end);
+      end += HEADER_SIZE + length;
+    }
+    if (end < size) {
+      logger.warn("Torn record found at the end of the archive, it is discarded");
+      channel.truncate(end);
+    }
+  }
+
+  private ByteBuffer read(long position, int length) throws IOException {
+    final ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of the archive");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static Auction decode(byte[] payload) throws IOException {
+    return AuctionSerialization.readAuction(new DataInputStream(new ByteArrayInputStream(payload)));
+  }
+
+  /**
+   * Thrown when an archived auction which is not cached is requested on an event loop, which must not block.
+   */
+  static final class WouldBlockException extends IllegalStateException {
+    private static final WouldBlockException INSTANCE = new WouldBlockException();
+
+    private WouldBlockException() {
+      super("An archived auction cannot be read on an event loop, the query must run on a worker");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;// a signal, thrown often
+    }
+  }
+}
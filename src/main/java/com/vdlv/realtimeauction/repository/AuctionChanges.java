@@ -0,0 +1,52 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The auctions changed (created, bid on or closed) after a given version, see {@link AuctionRepository#findChangesSince}.
+ * When the changes are no longer known (or the version is unknown, e.g. after a restart), a resynchronization is
+ * required: the client must reload its listings, and ask for the changes since the version provided here.
+ */
+public final class AuctionChanges {
+  private final String version;
+  private final boolean resyncRequired;
+  private final List<Auction> auctions;
+
+  private AuctionChanges(String version, boolean resyncRequired, List<Auction> auctions) {
+    this.version = version;
+    this.resyncRequired = resyncRequired;
+    this.auctions = auctions;
+  }
+
+  static AuctionChanges of(String version, List<Auction> auctions) {
+    return new AuctionChanges(version, false, auctions);
+  }
+
+  static AuctionChanges resync(String version) {
+    return new AuctionChanges(version, true, Collections.emptyList());
+  }
+
+  /**
+   * @return the version to ask the next changes from
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return true if the changes are not known, the listings must be reloaded
+   */
+  public boolean isResyncRequired() {
+    return resyncRequired;
+  }
+
+  /**
+   * @return the changed auctions, in the order of their first change
+   */
+  public List<Auction> getAuctions() {
+    return auctions;
+  }
+}
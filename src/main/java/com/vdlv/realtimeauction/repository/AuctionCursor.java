@@ -0,0 +1,89 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * The position of an auction in the listing order: from the most recent ending time to the oldest, the id breaking
+ * ties between auctions ending at the same time.
+ * It is used as the key of the repository indexes and, once encoded, as an opaque pagination cursor: a page requested
+ * with a cursor starts right after the auction the cursor was built from, whatever happened to the other auctions.
+ */
+public final class AuctionCursor implements Comparable<AuctionCursor> {
+  private final long endingSeconds;
+  private final int endingNanos;
+  private final String id;
+
+  private AuctionCursor(long endingSeconds, int endingNanos, String id) {
+    this.endingSeconds = endingSeconds;
+    this.endingNanos = endingNanos;
+    this.id = id;
+  }
+
+  /**
+   * @param auction an auction
+   * @return the position of this auction
+   */
+  public static AuctionCursor of(Auction auction) {
+    final Instant ending = auction.getEndingTime().toInstant();
+    return new AuctionCursor(ending.getEpochSecond(), ending.getNano(), auction.getId());
+  }
+
+  /**
+   * @param encoded a cursor provided by {@link #encode()}
+   * @return the decoded cursor
+   * @throws IllegalArgumentException if the provided value is not a valid cursor
+   */
+  public static AuctionCursor decode(String encoded) {
+    final String[] parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(":", 3);
+    if (parts.length != 3 || parts[2].isEmpty()) {
+      throw new IllegalArgumentException("Malformed cursor: " + encoded);
+    }
+    return new AuctionCursor(Long.parseLong(parts[0]), Integer.parseInt(parts[1]), parts[2]);// NumberFormatException is an IllegalArgumentException
+  }
+
+  /**
+   * @return an opaque and url safe representation of this cursor
+   */
+  public String encode() {
+    final String raw = endingSeconds + ":" + endingNanos + ":" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Override
+  public int compareTo(AuctionCursor cursor) {
+    int result = Long.compare(cursor.endingSeconds, endingSeconds);// from the most recent to the oldest
+    if (result == 0) {
+      result = Integer.compare(cursor.endingNanos, endingNanos);
+    }
+    return result == 0 ? id.compareTo(cursor.id) : result;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    AuctionCursor cursor = (AuctionCursor) o;
+    return endingSeconds == cursor.endingSeconds &&
+      endingNanos == cursor.endingNanos &&
+      id.equals(cursor.id);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(endingSeconds, endingNanos, id);
+  }
+
+  @Override
+  public String toString() {
+    return "AuctionCursor{" +
+      "endingSeconds=" + endingSeconds +
+      ", endingNanos=" + endingNanos +
+      ", id='" + id + '\'' +
+      '}';
+  }
+}
@@ -2,27 +2,35 @@ package com.vdlv.realtimeauction.repository;
 
 import com.vdlv.realtimeauction.model.Auction;
 import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
 import io.vertx.core.Vertx;
-import io.vertx.core.shareddata.SharedData;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
-import static java.util.stream.Collectors.toList;
 
 /**
  * A simple Repository for persisting auctions. This repository use SharedData support of Vert.x, in a real world scenario, a database such as MongoDB or Redis
  * should be a better option.
  * The current implementation works only for a single node deployment (one JVM only), a distributable backend must be used otherwise.
+ * Auctions are kept in memory, a {@link BidJournal} can be opened to make them survive a restart, and an
+ * {@link AuctionArchive} can be opened to move the auctions closed for a while out of the heap.
  */
 public class AuctionRepository {
-  private final SharedData backend;
+  private final Vertx vertx;
+  private final AuctionStore store;
 
   public AuctionRepository(Vertx vertx) {
-    this.backend = vertx.sharedData();
-  }
-
-  private Map<String, Auction> auctionStorage() {
-    return backend.getLocalMap("auctions");
+    this.vertx = vertx;
+    this.store = AuctionStore.of(vertx);
   }
 
   /**
@@ -31,7 +39,21 @@ public class AuctionRepository {
    * @return the auctions that are still open
    */
   public List<Auction> findOpenAuctions(Integer offset, Integer max) {
-    return extractResults(auctionStorage().values().stream().filter(Auction::isOpen).collect(toList()), offset, max);
+    return store.read(() -> {
+      final Listing open = store.open();
+      return extractPage(open::from, open.size(), offset, max);
+    });
+  }
+
+  /**
+   * Keyset pagination: the page is found by a seek in the index, whatever its depth.
+   *
+   * @param cursor the position of the last auction of the previous page
+   * @param max max item per page
+   * @return the auctions that are still open, after the provided position
+   */
+  public List<Auction> findOpenAuctionsAfter(AuctionCursor cursor, Integer max) {
+    return store.read(() -> extractPage(store.open().after(cursor), max));
   }
 
   /**
@@ -40,7 +62,21 @@ public class AuctionRepository {
    * @return the auctions that are closed
    */
   public List<Auction> findClosedAuctions(Integer offset, Integer max) {
-    return extractResults(auctionStorage().values().stream().filter(Auction::isClosed).collect(toList()), offset, max);
+    return store.read(() -> {
+      final Listing closed = store.closed();
+      return extractPage(closed::from, closed.size(), offset, max);
+    });
+  }
+
+  /**
+   * Keyset pagination: the page is found by a seek in the index, whatever its depth.
+   *
+   * @param cursor the position of the last auction of the previous page
+   * @param max max item per page
+   * @return the auctions that are closed, after the provided position
+   */
+  public List<Auction> findClosedAuctionsAfter(AuctionCursor cursor, Integer max) {
+    return store.read(() -> extractPage(store.closed().after(cursor), max));
   }
 
   /**
@@ -49,7 +85,36 @@ public class AuctionRepository {
    * @return all actions
    */
   public List<Auction> findAuctions(Integer offset, Integer max) {
-    return extractResults(new ArrayList<>(auctionStorage().values()), offset, max);
+    return store.read(() -> {
+      final Listing open = store.open();
+      final Listing closed = store.closed();
+      final int openSize = open.size();
+      // open auctions always end after the closed ones: the concatenation of both partitions is sorted
+      return extractPage(from -> from < openSize ? Listing.concat(open.from(from), closed.all()) : closed.from(from - openSize),
+        openSize + closed.size(), offset, max);
+    });
+  }
+
+  /**
+   * Keyset pagination: the page is found by a seek in the indexes, whatever its depth.
+   *
+   * @param cursor the position of the last auction of the previous page
+   * @param max max item per page
+   * @return all actions after the provided position
+   */
+  public List<Auction> findAuctionsAfter(AuctionCursor cursor, Integer max) {
+    return store.read(() -> extractPage(Listing.concat(store.open().after(cursor), store.closed().after(cursor)), max));
+  }
+
+  /**
+   * The version of a listing is cheap to get: it allows to answer a conditional request without querying anything.
+   *
+   * @param closed null for all the auctions, true for the closed ones, false for the open ones
+   * @return an opaque version which changes whenever the listings of these auctions change (an accepted bid, an upsert,
+   * a closure or an archival), and after a restart
+   */
+  public String listingVersion(Boolean closed) {
+    return store.version(closed);
   }
 
   /**
@@ -57,7 +122,150 @@ public class AuctionRepository {
    * @return the auction if any
    */
   public Optional<Auction> findAuctionById(String id) {
-    return Optional.ofNullable(auctionStorage().get(id));
+    store.expire();
+    return Optional.ofNullable(lookup(id));
+  }
+
+  /**
+   * Delta query: the traffic of a client catching up depends on the number of changes, not on the number of auctions.
+   * Only the last changes are known (see the 'auction.changes' system property).
+   *
+   * @param version the version provided by the previous call, null to get the current version
+   * @return the auctions changed (created, bid on or closed) since this version, or a resynchronization marker if these
+   * changes are no longer known
+   */
+  public AuctionChanges findChangesSince(String version) {
+    store.expire();// the closures due are logged
+    final ChangeLog changes = store.changes();
+    final long since = changeNumber(version);
+    final Set<String> ids = new LinkedHashSet<>();
+    final long upTo = since < 0 ? -1 : changes.since(since, ids);
+    if (upTo < 0) {
+      return AuctionChanges.resync(changeVersion(changes.version()));
+    }
+    final List<Auction> auctions = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      final Auction auction = lookup(id);
+      if (auction != null) {
+        auctions.add(auction);
+      }
+    }
+    return AuctionChanges.of(changeVersion(upTo), auctions);
+  }
+
+  /**
+   * Delta query which never blocks, see {@link #findChangesSince(String)}: when the changes include archived auctions
+   * which are not cached and the caller is an event loop, a resynchronization is required rather than reading them.
+   *
+   * @param version the version provided by the previous call, null to get the current version
+   * @return the auctions changed since this version, or a resynchronization marker
+   */
+  public AuctionChanges findCachedChangesSince(String version) {
+    try {
+      return findChangesSince(version);
+    } catch (AuctionArchive.WouldBlockException e) {
+      return AuctionChanges.resync(changeVersion(store.changes().version()));
+    }
+  }
+
+  /**
+   * Run a query of this repository from an event loop without blocking it. The archived auctions are read from the disk
+   * unless they are cached: a query reading an archived auction which is not cached runs again on a worker. The others,
+   * by far the most frequent, run at once.
+   *
+   * @param query         a query of this repository (a listing, a lookup or a delta query), which may run twice
+   * @param resultHandler receives the result of the query
+   * @param <T>           the type of the result
+   */
+  public <T> void query(Supplier<T> query, Handler<AsyncResult<T>> resultHandler) {
+    final T result;
+    try {
+      result = query.get();
+    } catch (AuctionArchive.WouldBlockException e) {
+      vertx.executeBlocking(future -> future.complete(query.get()), false, resultHandler);
+      return;
+    }
+    resultHandler.handle(Future.succeededFuture(result));
+  }
+
+  /**
+   * @param version a version provided by {@link #findChangesSince} or {@link BidOutcome#getVersion()}
+   * @return the number of this version, the versions of this repository being ordered by their numbers, or -1 if the
+   * version is not one of this repository (e.g. before a restart)
+   */
+  public long changeNumber(String version) {
+    final String prefix = store.epoch() + '-';
+    if (version == null || !version.startsWith(prefix)) {
+      return -1;// another store, e.g. before a restart
+    }
+    try {
+      return Long.parseLong(version.substring(prefix.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private String changeVersion(long number) {
+    return store.epoch() + '-' + number;
+  }
+
+  /**
+   * @param auction the auction which rejected a bid
+   * @param bid     the rejected bid
+   * @return the outcome of the bid, with a snapshot of the auction
+   */
+  private static BidOutcome rejected(Auction auction, Bid bid) {
+    return BidOutcome.rejected((Auction) auction.copy(), isClosedFor(auction, bid));
+  }
+
+  /**
+   * @return true if the auction rejected the bid because it is closed, rather than because the bid is too low
+   */
+  private static boolean isClosedFor(Auction auction, Bid bid) {
+    return auction.isClosed() || auction.isBidOutdated(bid);
+  }
+
+  /**
+   * @param id the id of an auction not in the store
+   * @return the outcome of a bid for this auction: it may have been archived
+   */
+  private BidOutcome notFound(String id) {
+    final AuctionArchive archive = store.archive();
+    final Auction archived = archive == null ? null : archive.get(id);
+    return archived == null ? BidOutcome.notFound() : BidOutcome.rejected((Auction) archived.copy(), true);
+  }
+
+  /**
+   * @param id            the id of an auction not in the store
+   * @param resultHandler receives the outcome of a bid for this auction, read on a worker when it has been archived
+   *                      (the archive is read from the disk)
+   */
+  private void notFound(String id, Handler<AsyncResult<BidOutcome>> resultHandler) {
+    final AuctionArchive archive = store.archive();
+    if (archive == null || !archive.contains(id)) {
+      resultHandler.handle(Future.succeededFuture(BidOutcome.notFound()));
+    } else {
+      vertx.executeBlocking(future -> future.complete(notFound(id)), false, resultHandler);
+    }
+  }
+
+  /**
+   * @return a copy of the live or archived auction, null if it does not exist
+   */
+  private Auction lookup(String id) {
+    Auction auction = store.get(id);
+    if (auction == null && store.archive() != null) {
+      auction = store.archive().get(id);
+    }
+    return auction == null ? null : (Auction) auction.copy();
+  }
+
+  /**
+   * @param id the id of an auction (existing or not)
+   * @return the index of the shard holding this auction, see {@link Util#shardAddress(int)}
+   */
+  public int shardOf(String id) {
+    return store.shardOf(id);
   }
 
   /**
@@ -67,26 +275,237 @@ public class AuctionRepository {
    * @return the auction (might be useful with certain types of repository that generates ids)
    */
   public Auction upsertAuction(Auction auction) {
-    auctionStorage().put(auction.getId(), auction);
+    store.put((Auction) auction.copy());
+    final BidJournal journal = store.journal();
+    if (journal != null) {
+      journal.appendAuction(auction, null);
+    }
     return auction;
   }
 
   /**
-   * Try to associate a bid to an auction
+   * Try to associate a bid to an auction. The bid is applied atomically on the stored auction (no copy of the bid
+   * history is involved), thus concurrent bids coming from different event loops cannot be lost.
    *
    * @param id  auction Id
    * @param bid the bid
-   * @return true if the bid is recorded. False is returned if the bid is not acceptable (see {@link Auction#addBid(Bid))} or if the auction does not exists
-   */
-  public boolean recordABid(String id, Bid bid) {
-    Optional<Auction> result = findAuctionById(id);
-    if (result.isPresent()) {
-      final Auction auction = result.get();
-      final boolean returnValue = auction.addBid(bid);
-      upsertAuction(auction);
-      return returnValue;// is correctly added
+   * @return the outcome of the bid: it is recorded, or it is not acceptable (see {@link Auction#addBid(Bid)}), or the
+   * auction does not exist
+   * @throws IllegalStateException if the repository is journaled, a bid being recorded only once durable (see
+   *                               {@link #recordABid(String, Bid, Handler)})
+   */
+  public BidOutcome recordABid(String id, Bid bid) {
+    if (store.journal() != null) {
+      throw new IllegalStateException("The repository is journaled, a bid is recorded once durable");
+    }
+    final Auction auction = store.get(id);
+    return auction == null ? notFound(id) : apply(id, auction, bid);
+  }
+
+  /**
+   * Try to associate a bid to an auction, see {@link #recordABid(String, Bid)}. When the repository is journaled, the
+   * bid is journaled first and applied once durable (see {@link BidJournal#appendBid}): a bid whose record fails is
+   * never visible. A bid outbid while being journaled is rejected, as it is by a replay.
+   *
+   * @param id            auction Id
+   * @param bid           the bid
+   * @param resultHandler receives the outcome of the bid, accepted once recorded (and durable), or the failure of its
+   *                      record
+   */
+  public void recordABid(String id, Bid bid, Handler<AsyncResult<BidOutcome>> resultHandler) {
+    final Auction auction = store.get(id);
+    final BidJournal journal = store.journal();
+    if (auction == null) {
+      notFound(id, resultHandler);
+    } else if (journal == null || !isAcceptable(auction, bid)) {
+      resultHandler.handle(Future.succeededFuture(apply(id, auction, bid)));
     } else {
-      return false;// the auction does not exists
+      journal.appendBid(id, bid, () -> apply(id, auction, bid), resultHandler);
+    }
+  }
+
+  /**
+   * @return the outcome of the bid once applied to the auction
+   */
+  private BidOutcome apply(String id, Auction auction, Bid bid) {
+    if (!auction.addBid(bid)) {
+      return rejected(auction, bid);
+    }
+    final String version = changeVersion(store.bidAccepted(id));
+    return BidOutcome.accepted((Auction) auction.copy(), version);
+  }
+
+  /**
+   * @return true if the auction would accept the bid in its current state, thus the bid is worth journaling
+   */
+  private static boolean isAcceptable(Auction auction, Bid bid) {
+    return !auction.isBidOutdated(bid) && auction.isTheBestPrice(bid);
+  }
+
+  /**
+   * Try to associate several bids to an auction in one pass (the auction is looked up once), see
+   * {@link #recordABid(String, Bid)}. The bids are applied in order, thus a bid may be outbid by a following one of the
+   * same batch. When the repository is journaled, the bids are journaled first and applied once durable (see
+   * {@link #recordABid(String, Bid, Handler)}), and the result is provided once all of them are.
+   *
+   * @param id            auction Id
+   * @param bids          the bids, in order
+   * @param resultHandler receives, for each bid in order, its outcome: they share the snapshot of the auction taken once
+   *                      all the bids are applied
+   */
+  public void recordBids(String id, List<Bid> bids, Handler<AsyncResult<List<BidOutcome>>> resultHandler) {
+    final Auction auction = store.get(id);
+    final BidJournal journal = store.journal();
+    if (auction == null) {
+      notFound(id, outcome -> resultHandler.handle(outcome.map(notFound -> Collections.nCopies(bids.size(), notFound))));
+      return;
+    }
+    final boolean[] added = new boolean[bids.size()];
+    if (journal == null) {
+      boolean accepted = false;
+      for (int i = 0; i < bids.size(); i++) {
+        added[i] = auction.addBid(bids.get(i));
+        accepted |= added[i];
+      }
+      final String version = accepted ? changeVersion(store.bidAccepted(id)) : null;
+      resultHandler.handle(Future.succeededFuture(outcomes(auction, (Auction) auction.copy(), bids, added, version)));
+      return;
+    }
+    final List<Integer> journaled = new ArrayList<>(bids.size());
+    for (int i = 0; i < bids.size(); i++) {
+      if (isAcceptable(auction, bids.get(i))) {
+        journaled.add(i);
+      }
+    }
+    if (journaled.isEmpty()) {
+      resultHandler.handle(Future.succeededFuture(outcomes(auction, (Auction) auction.copy(), bids, added, null)));
+      return;
+    }
+    // applied by the journal writer, one after the other, the last one taking the snapshot
+    final String[] version = new String[1];
+    final Auction[] snapshot = new Auction[1];
+    final List<Future> durables = new ArrayList<>(journaled.size());
+    for (int index : journaled) {
+      final Bid bid = bids.get(index);
+      final boolean last = index == journaled.get(journaled.size() - 1);
+      final Future<Void> durable = Future.future();
+      journal.<Void>appendBid(id, bid, () -> {
+        added[index] = auction.addBid(bid);
+        if (added[index]) {
+          version[0] = changeVersion(store.bidAccepted(id));
+        }
+        if (last) {
+          snapshot[0] = (Auction) auction.copy();
+        }
+        return null;
+      }, durable);
+      durables.add(durable);
+    }
+    CompositeFuture.all(durables).map(done -> outcomes(auction, snapshot[0], bids, added, version[0])).setHandler(resultHandler);
+  }
+
+  /**
+   * @return the outcomes of a batch of bids sharing the snapshot of their auction
+   */
+  private static List<BidOutcome> outcomes(Auction auction, Auction snapshot, List<Bid> bids, boolean[] added, String version) {
+    final List<BidOutcome> outcomes = new ArrayList<>(bids.size());
+    for (int i = 0; i < bids.size(); i++) {
+      outcomes.add(added[i] ? BidOutcome.accepted(snapshot, version) : BidOutcome.rejected(snapshot, isClosedFor(auction, bids.get(i))));
+    }
+    return outcomes;
+  }
+
+  /**
+   * Persist this repository in a journal from now on, after having restored the auctions recorded in this journal.
+   * This method is blocking and must be called before using the repository.
+   *
+   * @param directory   the journal directory
+   * @param segmentSize the size of a journal segment file in bytes
+   * @throws IOException if the journal cannot be read or created
+   */
+  public void openJournal(Path directory, int segmentSize) throws IOException {
+    store.journal(BidJournal.open(directory, segmentSize, new BidJournal.Visitor() {
+      @Override
+      public void onAuction(Auction auction) {
+        store.put(auction);
+      }
+
+      @Override
+      public void onBid(String auctionId, Bid bid) {
+        final Auction auction = store.get(auctionId);
+        if (auction != null) {
+          auction.addBid(bid);
+        }
+      }
+    }));
+  }
+
+  /**
+   * Write a snapshot of all auctions and compact the journal accordingly (blocking). Bids keep being recorded
+   * meanwhile. Does nothing when the repository is not journaled.
+   *
+   * @throws IOException if the snapshot cannot be written
+   */
+  public void snapshot() throws IOException {
+    final BidJournal journal = store.journal();
+    if (journal != null) {
+      journal.compact(store.all());
+    }
+  }
+
+  /**
+   * Stop journaling once the pending records are durable (blocking).
+   */
+  public void closeJournal() {
+    final BidJournal journal = store.journal();
+    if (journal != null) {
+      store.journal(null);
+      journal.close();
+    }
+  }
+
+  /**
+   * Close the auctions that have reached their ending time, a "closed" event being published for each of them on
+   * {@link Util#ClosedAuctionsTopic}. Listings do it on their own, but this must be called periodically for the events
+   * to be published on time.
+   */
+  public void closeEndedAuctions() {
+    store.expire();
+  }
+
+  /**
+   * Move the auctions closed for longer than a grace period to the archive tier (blocking, to be called from a
+   * worker). They are still returned by the closed listings and by id, but they no longer use the heap of the live
+   * store. Does nothing when no archive is opened.
+   *
+   * @param gracePeriod how long a closed auction stays in the live store
+   * @return the number of archived auctions
+   * @throws IOException if the archive cannot be written
+   */
+  public int archiveClosedAuctions(Duration gracePeriod) throws IOException {
+    return store.archiveClosedBefore(Util.universalNow().minus(gracePeriod));
+  }
+
+  /**
+   * Open the archive of the closed auctions (blocking). It must be opened before the journal, a journal replay
+   * taking precedence over the archive.
+   *
+   * @param directory the archive directory
+   * @param cacheSize the maximum number of archived auctions kept in memory
+   * @throws IOException if the archive cannot be read or created
+   */
+  public void openArchive(Path directory, int cacheSize) throws IOException {
+    store.archive(AuctionArchive.open(directory, cacheSize));
+  }
+
+  /**
+   * Close the archive of the closed auctions, they are no longer available.
+   */
+  public void closeArchive() {
+    final AuctionArchive archive = store.archive();
+    if (archive != null) {
+      store.archive(null);
+      archive.close();
     }
   }
 
@@ -98,14 +517,46 @@ public class AuctionRepository {
    * @return extracted results
    */
   static List<Auction> extractResults(List<Auction> all, Integer offset, Integer max) {
-    int checkedMax = checkMax(max, all.size());
-    int checkedOffset = checkOffset(offset, checkedMax, all.size());
     Collections.sort(all);
-    int idEnd = checkedOffset + checkedMax;
-    if (idEnd > all.size()) {
-      idEnd = all.size();
+    return extractPage(from -> all.subList(from, all.size()), all.size(), offset, max);
+  }
+
+  /**
+   * Handle pagination over already sorted results: only the auctions of the page are visited and they are copied
+   * before being returned.
+   * @param sorted the complete result set, already sorted, from the provided offset
+   * @param size the size of the complete result set
+   * @param offset the offset from to start extraction
+   * @param max the number of items to extract
+   * @return extracted results
+   */
+  static List<Auction> extractPage(IntFunction<Iterable<Auction>> sorted, int size, Integer offset, Integer max) {
+    int checkedMax = checkMax(max, size);
+    int checkedOffset = checkOffset(offset, checkedMax, size);
+    final List<Auction> page = new ArrayList<>(checkedMax);
+    final Iterator<Auction> iterator = sorted.apply(checkedOffset).iterator();
+    while (page.size() < checkedMax && iterator.hasNext()) {
+      page.add((Auction) iterator.next().copy());
     }
-    return all.subList(checkedOffset, idEnd);
+    return page;
+  }
+
+  /**
+   * Handle keyset pagination: the results are already positioned at the beginning of the page.
+   * @param sorted the results after the cursor, already sorted
+   * @param max the number of items to extract
+   * @return extracted results
+   */
+  static List<Auction> extractPage(Iterable<Auction> sorted, Integer max) {
+    return extractPage(from -> sorted, Integer.MAX_VALUE, 0, max);
+  }
+
+  /**
+   * @param max max item per page as requested
+   * @return the number of items of a full page
+   */
+  public static int pageSize(Integer max) {
+    return checkMax(max, Integer.MAX_VALUE);
   }
 
   /**
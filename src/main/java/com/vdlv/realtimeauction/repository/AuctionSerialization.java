@@ -0,0 +1,93 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * The compact binary representation of auctions and bids shared by the journal records and the snapshots.
+ * Prices are written as an unscaled long and a scale, times as epoch seconds and nanos.
+ */
+final class AuctionSerialization {
+
+  private AuctionSerialization() {
+  }
+
+  /**
+   * @param out     the output
+   * @param auction an auction, written with its bid history
+   * @throws IOException if the output cannot be written
+   */
+  static void writeAuction(DataOutput out, Auction auction) throws IOException {
+    out.writeUTF(auction.getId());
+    out.writeUTF(auction.getProduct());
+    writePrice(out, auction.getFirstPrice());
+    writeTime(out, auction.getEndingTime());
+    final List<Bid> bids = auction.getBids();
+    out.writeInt(bids.size());
+    for (Bid bid : bids) {
+      writeBid(out, bid);
+    }
+  }
+
+  /**
+   * @param in the input
+   * @return an auction, restored with its bid history
+   * @throws IOException if the input cannot be read
+   */
+  static Auction readAuction(DataInput in) throws IOException {
+    final Auction auction = new Auction(in.readUTF(), in.readUTF(), readPrice(in), readTime(in));
+    final int bids = in.readInt();
+    for (int i = 0; i < bids; i++) {
+      auction.addBid(readBid(in));
+    }
+    return auction;
+  }
+
+  /**
+   * @param out the output
+   * @param bid a bid
+   * @throws IOException if the output cannot be written
+   */
+  static void writeBid(DataOutput out, Bid bid) throws IOException {
+    out.writeUTF(bid.getBuyer());
+    writePrice(out, bid.getPrice());
+    writeTime(out, bid.getTime());
+  }
+
+  /**
+   * @param in the input
+   * @return a bid
+   * @throws IOException if the input cannot be read
+   */
+  static Bid readBid(DataInput in) throws IOException {
+    return new Bid(in.readUTF(), readPrice(in), readTime(in));
+  }
+
+  private static void writePrice(DataOutput out, BigDecimal price) throws IOException {
+    out.writeLong(price.unscaledValue().longValueExact());
+    out.writeByte(price.scale());
+  }
+
+  private static BigDecimal readPrice(DataInput in) throws IOException {
+    return BigDecimal.valueOf(in.readLong(), in.readByte());
+  }
+
+  private static void writeTime(DataOutput out, ZonedDateTime time) throws IOException {
+    final Instant instant = time.toInstant();
+    out.writeLong(instant.getEpochSecond());
+    out.writeInt(instant.getNano());
+  }
+
+  private static ZonedDateTime readTime(DataInput in) throws IOException {
+    return Instant.ofEpochSecond(in.readLong(), in.readInt()).atZone(ZoneOffset.UTC);
+  }
+}
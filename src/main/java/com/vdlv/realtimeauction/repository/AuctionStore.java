@@ -0,0 +1,475 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.UniversalClock;
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * The in-memory storage shared by all {@link AuctionRepository} instances of a Vert.x instance.
+ * It holds the live auctions: they are never copied when a bid is recorded, {@link Auction#addBid} being thread safe.
+ * This object is shared "as is" through a {@link LocalMap} (see {@link Shareable#copy()} default implementation).
+ * <p>
+ * Auctions are partitioned by id hash across {@link Util#shardCount()} shards. The store is shared by all the event
+ * loops rather than owned by the shards: the bids of a shard are decided on the event loop of its verticle (see
+ * {@code AuctionShardVerticle}), which orders the bids of an auction, but they are applied by the journal writer once
+ * durable when the repository is journaled, the upserts come from any event loop, and the listings read the indexes of
+ * all shards directly, without a scatter-gather through the verticles. Within a shard, auctions are also indexed by
+ * ending time (from the most recent to the oldest) in two partitions: the open auctions and the closed ones. An
+ * auction moves from the former to the latter when its ending timer fires (see {@link TimerWheel}): a "closed" event
+ * is then published on the event bus ({@link Util#ClosedAuctionsTopic}). The wheel is advanced periodically (see
+ * {@code AuctionLifecycleVerticle}) and before each listing, so that listings do not show an auction expired for long
+ * as open: a single thread advances it at a time, the others going on without waiting for it (see {@link #expire()}).
+ * Listings merge the indexes of all shards, and are read consistently with the moves between the partitions (see
+ * {@link #read(Supplier)}).
+ * <p>
+ * When an {@link AuctionArchive} is attached, the auctions closed for a while are moved to it: the closed listing
+ * merges the archive as well, and the store only holds the live and recently closed auctions.
+ * <p>
+ * Each shard counts the changes of its partitions (accepted bids, upserts, closures and archivals), so that a listing
+ * can be known to be unchanged without being queried, see {@link #version(Boolean)}. The ids of the auctions created, bid
+ * on or closed are also recorded in a bounded {@link ChangeLog}, for the clients to catch up with the changes only.
+ */
+final class AuctionStore implements Shareable {
+  private static final int OPTIMISTIC_READS = 3;// before locking the shards
+  private final Shard[] shards;
+  private final TimerWheel<Auction> endings = new TimerWheel<>(UniversalClock.current().millis());
+  private final ReentrantLock expiring = new ReentrantLock();// held by the thread advancing the wheel
+  private final Consumer<Auction> closedListener;
+  private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 1);// versions restart with the store
+  private final ChangeLog changes = new ChangeLog(Util.changeLogCapacity());
+  private volatile BidJournal journal;
+  private volatile AuctionArchive archive;
+
+  private AuctionStore(int shardCount, Consumer<Auction> closedListener) {
+    this.closedListener = closedListener;
+    this.shards = new Shard[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Shard();
+    }
+  }
+
+  /**
+   * @param vertx the Vert.x instance
+   * @return the store associated to this Vert.x instance (created on the first call)
+   */
+  static AuctionStore of(Vertx vertx) {
+    final LocalMap<String, AuctionStore> stores = vertx.sharedData().getLocalMap("auctions");
+    return stores.computeIfAbsent("store", key -> new AuctionStore(Util.shardCount(),
+      auction -> vertx.eventBus().publish(Util.ClosedAuctionsTopic, closedEvent(auction).encode())));
+  }
+
+  /**
+   * @param auction a closed auction
+   * @return the event published when this auction closes
+   */
+  static JsonObject closedEvent(Auction auction) {
+    final JsonObject event = new JsonObject()
+      .put("auctionId", auction.getId())
+      .put("product", auction.getProduct())
+      .put("price", auction.getCurrentAuctionValue().doubleValue());
+    auction.getWinningBid().ifPresent(bid -> event.put("winner", bid.getBuyer()));
+    return event;
+  }
+
+  /**
+   * @param id the id of an auction
+   * @return the index of the shard holding this auction
+   */
+  int shardOf(String id) {
+    return (id.hashCode() & Integer.MAX_VALUE) % shards.length;
+  }
+
+  /**
+   * @param id the id of the auction
+   * @return the live auction or null if it does not exist
+   */
+  Auction get(String id) {
+    return shards[shardOf(id)].auctions.get(id);
+  }
+
+  /**
+   * Insert or replace an auction and index it in the right partition of its shard.
+   *
+   * @param auction the auction to insert or override
+   */
+  void put(Auction auction) {
+    if (shards[shardOf(auction.getId())].put(auction, archive) == Auction.State.OPEN) {
+      endings.schedule(auction.getEndingTime().toInstant().toEpochMilli() + 1, auction);// closed strictly after its ending time
+    }
+    changes.add(auction.getId());
+  }
+
+  /**
+   * Move the auctions closed before a given time to the archive (blocking).
+   *
+   * @param closedBefore the auctions whose ending time is before this time are archived
+   * @return the number of archived auctions
+   * @throws IOException if the archive cannot be written
+   */
+  int archiveClosedBefore(ZonedDateTime closedBefore) throws IOException {
+    final AuctionArchive archive = this.archive;
+    if (archive == null) {
+      return 0;
+    }
+    expire();
+    final List<Auction> appended = new ArrayList<>();
+    final List<Long> offsets = new ArrayList<>();
+    try {
+      for (Shard shard : shards) {
+        for (Auction auction : shard.closed.index.descendingMap().values()) {// from the oldest
+          if (!auction.getEndingTime().isBefore(closedBefore)) {
+            break;
+          }
+          offsets.add(archive.append(auction));
+          appended.add(auction);
+        }
+      }
+      archive.force();// removed from the store only once durable in the archive
+    } catch (IOException e) {
+      if (!offsets.isEmpty()) {
+        try {
+          archive.discardFrom(offsets.get(0));// not resurrected by a restart
+        } catch (IOException discarding) {
+          e.addSuppressed(discarding);
+        }
+      }
+      throw e;
+    }
+    int archived = 0;
+    for (int i = 0; i < appended.size(); i++) {
+      final Auction auction = appended.get(i);
+      final long offset = offsets.get(i);
+      if (shards[shardOf(auction.getId())].remove(auction, () -> archive.index(auction, offset))) {
+        archived++;
+      }
+    }
+    return archived;
+  }
+
+  /**
+   * Record that a bid has been accepted by an open auction.
+   *
+   * @param id the id of the auction
+   * @return the version of the change, see {@link ChangeLog#add(String)}
+   */
+  long bidAccepted(String id) {
+    shards[shardOf(id)].openVersion.incrementAndGet();
+    return changes.add(id);
+  }
+
+  /**
+   * @return the log of the auctions created, bid on or closed
+   */
+  ChangeLog changes() {
+    return changes;
+  }
+
+  /**
+   * @return an identifier of this store, distinct from the one of another store (e.g. before a restart)
+   */
+  String epoch() {
+    return epoch;
+  }
+
+  /**
+   * @param closed null for all the auctions, true for the closed ones, false for the open ones
+   * @return an opaque version of the listings of these auctions, up to date with the current time: it changes whenever
+   * their content changes, and differs from the versions of another store (e.g. before a restart)
+   */
+  String version(Boolean closed) {
+    expire();
+    long open = 0;
+    long closedCount = 0;
+    for (Shard shard : shards) {
+      open += shard.openVersion.get();
+      closedCount += shard.closedVersion.get();
+    }
+    if (closed == null) {
+      return epoch + '-' + open + '-' + closedCount;
+    }
+    return epoch + '-' + (closed ? closedCount : open);
+  }
+
+  /**
+   * @return the live auctions of all shards, in no particular order
+   */
+  Iterable<Auction> all() {
+    final List<Collection<Auction>> auctions = new ArrayList<>(shards.length);
+    for (Shard shard : shards) {
+      auctions.add(shard.auctions.values());
+    }
+    return () -> auctions.stream().flatMap(Collection::stream).iterator();
+  }
+
+  /**
+   * @return the journal recording the changes of this store, null if the store is not persisted
+   */
+  BidJournal journal() {
+    return journal;
+  }
+
+  /**
+   * @param journal the journal recording the changes of this store from now on
+   */
+  void journal(BidJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * @return the archive of the auctions closed for a while, null if there is no archive
+   */
+  AuctionArchive archive() {
+    return archive;
+  }
+
+  /**
+   * @param archive the archive receiving the auctions closed for a while from now on
+   */
+  void archive(AuctionArchive archive) {
+    this.archive = archive;
+  }
+
+  /**
+   * Run a query over the listings (see {@link #open()} and {@link #closed()}) consistently with the writes of the
+   * shards: an auction moving from a partition to another (closure, upsert or archival) is seen once, neither twice nor
+   * never. The query runs without locking and runs again if a shard has been written meanwhile, under the read locks
+   * of all the shards when they keep being written. The ending timers due are advanced beforehand.
+   *
+   * @param query a query reading the listings, which may run several times
+   * @param <T>   the type of the result
+   * @return the result of the query
+   */
+  <T> T read(Supplier<T> query) {
+    expire();
+    final long[] stamps = new long[shards.length];
+    for (int attempt = 0; attempt < OPTIMISTIC_READS; attempt++) {
+      boolean written = false;
+      for (int i = 0; i < shards.length && !written; i++) {
+        stamps[i] = shards[i].lock.tryOptimisticRead();
+        written = stamps[i] == 0;// being written right now
+      }
+      if (written) {
+        continue;
+      }
+      final T result = query.get();
+      if (validate(stamps)) {
+        return result;
+      }
+    }
+    for (int i = 0; i < shards.length; i++) {// in order, while a writer locks a single shard
+      stamps[i] = shards[i].lock.readLock();
+    }
+    try {
+      return query.get();
+    } finally {
+      for (int i = 0; i < shards.length; i++) {
+        shards[i].lock.unlockRead(stamps[i]);
+      }
+    }
+  }
+
+  private boolean validate(long[] stamps) {
+    for (int i = 0; i < shards.length; i++) {
+      if (!shards[i].lock.validate(stamps[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the open auctions of all shards, to be read through {@link #read(Supplier)}
+   */
+  Listing open() {
+    final List<Partition> partitions = new ArrayList<>(shards.length);
+    for (Shard shard : shards) {
+      partitions.add(shard.open);
+    }
+    return new Listing(partitions);
+  }
+
+  /**
+   * @return the closed auctions of all shards and of the archive, to be read through {@link #read(Supplier)}
+   */
+  Listing closed() {
+    final List<Listing.Source> sources = new ArrayList<>(shards.length + 1);
+    for (Shard shard : shards) {
+      sources.add(shard.closed);
+    }
+    final AuctionArchive archive = this.archive;
+    if (archive != null) {
+      sources.add(archive);
+    }
+    return new Listing(sources);
+  }
+
+  /**
+   * Advance the ending timers to the current time: the auctions that have reached their ending time are moved to the
+   * closed partition of their shard and the closed listener is notified. It costs nothing when no timer is due.
+   * <p>
+   * It is not a contention point across the shards: when another thread is already advancing the timers, it returns at
+   * once, the auctions being closed by that thread (a listing may then show an auction expired within the last ticks as
+   * open, while its bids are rejected anyway).
+   */
+  void expire() {
+    if (!expiring.tryLock()) {
+      return;
+    }
+    try {
+      for (Auction auction : endings.advance(UniversalClock.current().millis())) {
+        if (shards[shardOf(auction.getId())].close(auction)) {
+          changes.add(auction.getId());
+          closedListener.accept(auction);
+        }
+      }
+    } finally {
+      expiring.unlock();
+    }
+  }
+
+  /**
+   * The auctions of a shard, written from several threads (upserts, closures, archival) under its lock.
+   */
+  private static final class Shard {
+    private final StampedLock lock = new StampedLock();// taken by the moves between the partitions
+    private final ConcurrentMap<String, Auction> auctions = new ConcurrentHashMap<>();
+    private final Partition open = new Partition();
+    private final Partition closed = new Partition();
+    private final AtomicLong openVersion = new AtomicLong();
+    private final AtomicLong closedVersion = new AtomicLong();
+
+    /**
+     * Upserts are serialized (they are rare compared to bids, which never touch the indexes).
+     *
+     * @param archive the archive, if any, the auction leaves at the same time (the store is the reference)
+     * @return the state of the auction once activated
+     */
+    private Auction.State put(Auction auction, AuctionArchive archive) {
+      final long stamp = lock.writeLock();
+      try {
+        final Auction previous = auctions.put(auction.getId(), auction);
+        if (previous != null && !open.remove(previous)) {
+          closed.remove(previous);
+        }
+        if (archive != null) {
+          archive.remove(auction.getId());
+        }
+        final Auction.State state = auction.activate();
+        if (state == Auction.State.OPEN) {
+          open.add(auction);
+        } else {
+          closed.add(auction);
+        }
+        openVersion.incrementAndGet();// the auction may have moved from a partition to the other
+        closedVersion.incrementAndGet();
+        return state;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Close an auction when its ending timer fires, unless it has been replaced in the meantime.
+     *
+     * @return true if the auction has been closed
+     */
+    private boolean close(Auction auction) {
+      final long stamp = lock.writeLock();
+      try {
+        if (auctions.get(auction.getId()) == auction && auction.close()) {
+          open.remove(auction);
+          closed.add(auction);
+          openVersion.incrementAndGet();
+          closedVersion.incrementAndGet();
+          return true;
+        }
+        return false;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    /**
+     * Remove an archived auction, unless it has been replaced in the meantime.
+     *
+     * @param archived indexes the auction in the archive once removed, at once for the listings
+     * @return true if the auction has been removed
+     */
+    private boolean remove(Auction auction, Runnable archived) {
+      final long stamp = lock.writeLock();
+      try {
+        if (auctions.get(auction.getId()) != auction) {
+          return false;
+        }
+        auctions.remove(auction.getId());
+        closed.remove(auction);
+        archived.run();
+        closedVersion.incrementAndGet();// still listed, from the archive
+        return true;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+  }
+
+  /**
+   * An index of auctions ordered by {@link AuctionCursor}, with a constant time size, written under the lock of its
+   * shard.
+   */
+  static final class Partition implements Listing.Source {
+    private final ConcurrentSkipListMap<AuctionCursor, Auction> index = new ConcurrentSkipListMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private void add(Auction auction) {
+      if (index.putIfAbsent(AuctionCursor.of(auction), auction) == null) {
+        size.incrementAndGet();
+      }
+    }
+
+    /**
+     * @return true if this very auction was indexed, rather than another version of it (the auctions with the same id,
+     * product and ending time are equal)
+     */
+    private boolean remove(Auction auction) {
+      final AuctionCursor key = AuctionCursor.of(auction);
+      if (index.get(key) == auction) {
+        index.remove(key);
+        size.decrementAndGet();
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public int size() {
+      return size.get();
+    }
+
+    @Override
+    public Iterator<Map.Entry<AuctionCursor, Auction>> entries(AuctionCursor cursor) {
+      return (cursor == null ? index : index.tailMap(cursor, false)).entrySet().iterator();
+    }
+  }
+}
@@ -0,0 +1,506 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * A write-ahead journal of the auctions upserted and of the bids accepted, made of memory-mapped append-only segment
+ * files (journal-&lt;sequence&gt;.log).
+ * <p>
+ * Records are written by a single thread which batches all the records appended while the previous batch was being
+ * flushed: a single fsync makes a whole batch durable (group commit). An append is acknowledged once it is durable, and
+ * a bid is applied only then, by the writer, in the order of the journal: the bids applied are the ones a replay
+ * restores.
+ * <p>
+ * A record is framed as [length][crc32][payload], a zero length marking the end of a segment. On startup the segments
+ * are replayed in order, a torn record (crash during a write) stopping the replay of its segment, then appends go to
+ * a brand new segment. The records of a batch which cannot be made durable are failed and zeroed, thus never replayed,
+ * and an append to a closed journal fails.
+ * <p>
+ * The journal is compacted by snapshots (snapshot-&lt;sequence&gt;.bin): a binary image of all auctions taken after
+ * the journal has rolled to the segment &lt;sequence&gt;. Once a snapshot is written, the previous segments and
+ * snapshots are deleted, and a replay starts from the latest snapshot followed by the segments after it only.
+ * Replaying a record already included in the snapshot is harmless: an upsert replaces the auction with the same state
+ * and a bid is not better than itself.
+ */
+public final class BidJournal implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(BidJournal.class);
+  private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d+)\\.log");
+  private static final Pattern SNAPSHOT_NAME = Pattern.compile("snapshot-(\\d+)\\.bin");
+  private static final int SNAPSHOT_MAGIC = 0x52544153;// RTAS
+  private static final int HEADER_SIZE = 8;
+  private static final byte AUCTION = 1;
+  private static final byte BID = 2;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private volatile boolean closed;
+  private volatile boolean terminated;// the writer no longer takes the writes, see #enqueue
+  private long sequence;
+  private FileChannel channel;
+  private MappedByteBuffer segment;
+
+  /**
+   * Receives the journal records during a replay.
+   */
+  public interface Visitor {
+    /**
+     * @param auction an upserted auction (with its bids at that time)
+     */
+    void onAuction(Auction auction);
+
+    /**
+     * @param auctionId the auction id
+     * @param bid       an accepted bid
+     */
+    void onBid(String auctionId, Bid bid);
+  }
+
+  private BidJournal(Path directory, int segmentSize, long sequence) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.sequence = sequence;
+    this.writer = new Thread(this::writeLoop, "bid-journal-writer");
+    this.writer.setDaemon(true);
+  }
+
+  /**
+   * Open the journal stored in a directory (blocking). The latest snapshot and the segments after it are replayed
+   * before any append is possible.
+   *
+   * @param directory   the journal directory (created if needed)
+   * @param segmentSize the size of a segment file in bytes
+   * @param visitor     receives the auctions of the snapshot and the records of the segments
+   * @return the journal, ready to append records in a new segment
+   * @throws IOException if the journal cannot be read or created
+   */
+  public static BidJournal open(Path directory, int segmentSize, Visitor visitor) throws IOException {
+    Files.createDirectories(directory);
+    final List<Path> snapshots = list(directory, SNAPSHOT_NAME);
+    long replayFrom = 0;
+    if (!snapshots.isEmpty()) {
+      final Path latest = snapshots.get(snapshots.size() - 1);
+      readSnapshot(latest, visitor);
+      replayFrom = sequenceOf(latest, SNAPSHOT_NAME);
+    }
+    final List<Path> segments = list(directory, SEGMENT_NAME);
+    for (Path segment : segments) {
+      if (sequenceOf(segment, SEGMENT_NAME) >= replayFrom) {
+        replay(segment, visitor);
+      }
+    }
+    final long last = segments.isEmpty() ? replayFrom : Math.max(replayFrom, sequenceOf(segments.get(segments.size() - 1), SEGMENT_NAME));
+    final BidJournal journal = new BidJournal(directory, segmentSize, last);
+    journal.roll();
+    journal.deleteBefore(replayFrom);// leftovers of a compaction interrupted by a crash
+    journal.writer.start();
+    return journal;
+  }
+
+  /**
+   * Append an auction (with its current bids). Thread safe and non-blocking.
+   *
+   * @param auction        the upserted auction
+   * @param durableHandler called (on the caller context if any) once the record is durable, can be null
+   */
+  public void appendAuction(Auction auction, Handler<AsyncResult<Void>> durableHandler) {
+    append(encode(out -> {
+      out.writeByte(AUCTION);
+      AuctionSerialization.writeAuction(out, auction);
+    }), null, durableHandler);
+  }
+
+  /**
+   * Append a bid, applied once durable. Thread safe and non-blocking. The bids of an auction must be appended in the
+   * order they were made (which is the case when they are made by the verticle of the auction's shard).
+   * <p>
+   * The bid is applied by the writer thread, in the order of the journal, before the snapshots taken after a rollover
+   * read the state (see {@link #compact}). A bid whose record fails is not applied.
+   *
+   * @param auctionId     the auction id
+   * @param bid           the bid
+   * @param apply         applies the bid to the auction once it is durable, e.g. with {@link Auction#addBid(Bid)}
+   * @param resultHandler called (on the caller context if any) with the result of the application once the record is
+   *                      durable, can be null
+   * @param <T>           the type of the result of the application
+   */
+  public <T> void appendBid(String auctionId, Bid bid, Supplier<T> apply, Handler<AsyncResult<T>> resultHandler) {
+    append(encode(out -> {
+      out.writeByte(BID);
+      out.writeUTF(auctionId);
+      AuctionSerialization.writeBid(out, bid);
+    }), apply, resultHandler);
+  }
+
+  /**
+   * Write a snapshot of the provided state and delete the segments it makes useless (blocking, to be called from a
+   * worker). Appends are not blocked: the writer only rolls to a new segment before the state is read, once the bids
+   * appended before are applied.
+   *
+   * @param state all the auctions, read after the journal has rolled
+   * @throws IOException if the snapshot cannot be written
+   */
+  public void compact(Iterable<Auction> state) throws IOException {
+    final long boundary = rollover();
+    final Path temporary = directory.resolve("snapshot-" + boundary + ".tmp");
+    try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      final CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(file)), new CRC32());
+      final DataOutputStream out = new DataOutputStream(checked);
+      out.writeInt(SNAPSHOT_MAGIC);
+      for (Auction auction : state) {
+        out.writeBoolean(true);
+        AuctionSerialization.writeAuction(out, auction);
+      }
+      out.writeBoolean(false);
+      out.writeLong(checked.getChecksum().getValue());// checksum of all the previous bytes
+      out.flush();
+      file.force(true);
+    }
+    Files.move(temporary, directory.resolve("snapshot-" + boundary + ".bin"), StandardCopyOption.ATOMIC_MOVE);
+    deleteBefore(boundary);
+    logger.info("Journal compacted up to segment " + boundary);
+  }
+
+  /**
+   * Stop the writer once the pending records are durable (blocking).
+   */
+  @Override
+  public void close() {
+    closed = true;
+    queue.add(PendingWrite.CLOSE);
+    try {
+      writer.join();
+      channel.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      logger.error("Failed to close the journal segment", e);
+    }
+  }
+
+  private <T> void append(byte[] payload, Supplier<T> onDurable, Handler<AsyncResult<T>> resultHandler) {
+    final PendingWrite<T> write = new PendingWrite<>(payload, Vertx.currentContext(), onDurable, resultHandler);
+    if (payload.length + HEADER_SIZE > segmentSize) {
+      write.fail(new IllegalArgumentException("The record does not fit in a journal segment: " + payload.length + " bytes"));
+      return;
+    }
+    enqueue(write);
+  }
+
+  /**
+   * Queue a write for the writer, or fail it once the journal is closed: a write racing with {@link #close()} is either
+   * taken by the writer or failed, never left in the queue.
+   */
+  private void enqueue(PendingWrite<?> write) {
+    if (closed) {
+      write.fail(new IllegalStateException("The journal is closed"));
+      return;
+    }
+    queue.add(write);
+    if (terminated && queue.remove(write)) {// queued after the writer has drained the queue
+      write.fail(new IllegalStateException("The journal is closed"));
+    }
+  }
+
+  /**
+   * @return the sequence of the new segment, all the records appended before are in the previous segments
+   */
+  private long rollover() throws IOException {
+    final PendingWrite<Void> rollover = new PendingWrite<>(null, null, null, null);
+    enqueue(rollover);
+    try {
+      return rollover.rolled.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while rolling the journal", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to roll the journal", e.getCause());
+    }
+  }
+
+  private void writeLoop() {
+    final List<PendingWrite<?>> batch = new ArrayList<>();
+    boolean running = true;
+    while (running) {
+      int durable = 0;// the writes of the batch acknowledged so far
+      int mark = segment.position();// where the records not acknowledged yet start in the current segment
+      try {
+        batch.add(queue.take());
+        queue.drainTo(batch);// all the records appended during the previous fsync
+        for (int i = 0; i < batch.size(); i++) {
+          final PendingWrite<?> write = batch.get(i);
+          if (write == PendingWrite.CLOSE) {
+            running = false;
+          } else if (write.payload == null) {
+            segment.force();
+            durable = acknowledge(batch, durable, i);// applied before the snapshot reads the state
+            mark = segment.position();
+            roll();
+            mark = segment.position();
+            write.rolled.complete(sequence);
+            durable++;
+          } else {
+            if (segment.remaining() < write.payload.length + HEADER_SIZE) {
+              segment.force();
+              durable = acknowledge(batch, durable, i);// the failures of the batch are then in the next segment only
+              mark = segment.position();
+              roll();
+              mark = segment.position();
+            }
+            final CRC32 crc = new CRC32();
+            crc.update(write.payload);
+            segment.putInt(write.payload.length).putInt((int) crc.getValue()).put(write.payload);
+          }
+        }
+        segment.force();// group commit: one fsync for the whole batch
+        acknowledge(batch, durable, batch.size());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } catch (IOException | UncheckedIOException e) {
+        logger.error("Failed to write in the journal", e);
+        discardFrom(mark);// before the failure is known, a failed record must not be replayed
+        for (int i = durable; i < batch.size(); i++) {
+          batch.get(i).fail(e);
+        }
+      }
+      batch.clear();
+    }
+    terminated = true;
+    final List<PendingWrite<?>> left = new ArrayList<>();
+    queue.drainTo(left);// appended while closing
+    left.forEach(write -> write.fail(new IllegalStateException("The journal is closed")));
+  }
+
+  /**
+   * Zero the records written in the current segment from a position, the next ones being written there: a replay
+   * stops at the zero length of the first one.
+   *
+   * @param from the position of the first record to discard
+   */
+  private void discardFrom(int from) {
+    for (int i = from; i < segment.position(); i++) {
+      segment.put(i, (byte) 0);
+    }
+    segment.position(from);
+    try {
+      segment.force();
+    } catch (UncheckedIOException e) {
+      logger.error("Failed to discard the records of a failed batch", e);// zeroed in the page cache anyway
+    }
+  }
+
+  /**
+   * @return the index of the first write of the batch not acknowledged yet
+   */
+  private static int acknowledge(List<PendingWrite<?>> batch, int from, int to) {
+    for (int i = from; i < to; i++) {
+      batch.get(i).succeed();
+    }
+    return to;
+  }
+
+  private void roll() throws IOException {
+    final Path next = directory.resolve("journal-" + (sequence + 1) + ".log");
+    final FileChannel opened = FileChannel.open(next, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    final MappedByteBuffer mapped;
+    try {
+      mapped = opened.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    } catch (IOException e) {
+      opened.close();
+      Files.delete(next);// rolled again by the next write
+      throw e;
+    }
+    if (channel != null) {
+      channel.close();
+    }
+    sequence++;
+    channel = opened;
+    segment = mapped;
+  }
+
+  private void deleteBefore(long boundary) throws IOException {
+    for (Path segment : list(directory, SEGMENT_NAME)) {
+      if (sequenceOf(segment, SEGMENT_NAME) < boundary) {
+        Files.delete(segment);
+      }
+    }
+    for (Path snapshot : list(directory, SNAPSHOT_NAME)) {
+      if (sequenceOf(snapshot, SNAPSHOT_NAME) < boundary) {
+        Files.delete(snapshot);
+      }
+    }
+  }
+
+  private static List<Path> list(Path directory, Pattern pattern) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(file -> pattern.matcher(file.getFileName().toString()).matches())
+        .sorted((first, second) -> Long.compare(sequenceOf(first, pattern), sequenceOf(second, pattern)))
+        .collect(toList());
+    }
+  }
+
+  private static long sequenceOf(Path file, Pattern pattern) {
+    final Matcher matcher = pattern.matcher(file.getFileName().toString());
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException("Not a journal file: " + file);
+    }
+    return Long.parseLong(matcher.group(1));
+  }
+
+  private static void readSnapshot(Path snapshot, Visitor visitor) throws IOException {
+    try (DataInputStream raw = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+      final CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+      final DataInputStream in = new DataInputStream(checked);
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException("Not a snapshot: " + snapshot);
+      }
+      final List<Auction> auctions = new ArrayList<>();
+      while (in.readBoolean()) {
+        auctions.add(AuctionSerialization.readAuction(in));
+      }
+      if (checked.getChecksum().getValue() != raw.readLong()) {
+        throw new IOException("Corrupted snapshot: " + snapshot);
+      }
+      auctions.forEach(visitor::onAuction);
+    }
+  }
+
+  private static void replay(Path segment, Visitor visitor) throws IOException {
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      while (buffer.remaining() >= HEADER_SIZE) {
+        final int length = buffer.getInt();
+        final int checksum = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+          break;// end of the segment
+        }
+        final byte[] payload = new byte[length];
+        buffer.get(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          logger.warn("Torn record found in " + segment + ", the end of this segment is ignored");
+          break;
+        }
+        decode(payload, visitor);
+      }
+    }
+  }
+
+  private static void decode(byte[] payload, Visitor visitor) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    final byte type = in.readByte();
+    if (type == AUCTION) {
+      visitor.onAuction(AuctionSerialization.readAuction(in));
+    } else if (type == BID) {
+      visitor.onBid(in.readUTF(), AuctionSerialization.readBid(in));
+    } else {
+      throw new IOException("Unknown journal record type: " + type);
+    }
+  }
+
+  private static byte[] encode(RecordWriter recordWriter) {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    try {
+      recordWriter.write(new DataOutputStream(bytes));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);// cannot happen with an in-memory stream
+    }
+    return bytes.toByteArray();
+  }
+
+  @FunctionalInterface
+  private interface RecordWriter {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /**
+   * A record waiting to be written, what to do once it is durable and its acknowledgement, or a rollover request when
+   * there is no payload.
+   */
+  private static final class PendingWrite<T> {
+    private static final PendingWrite<Void> CLOSE = new PendingWrite<>(new byte[0], null, null, null);
+    private final byte[] payload;
+    private final Context context;
+    private final Supplier<T> onDurable;
+    private final Handler<AsyncResult<T>> resultHandler;
+    private final CompletableFuture<Long> rolled = new CompletableFuture<>();
+
+    private PendingWrite(byte[] payload, Context context, Supplier<T> onDurable, Handler<AsyncResult<T>> resultHandler) {
+      this.payload = payload;
+      this.context = context;
+      this.onDurable = onDurable;
+      this.resultHandler = resultHandler;
+    }
+
+    private void succeed() {
+      AsyncResult<T> result;
+      try {
+        result = Future.succeededFuture(onDurable == null ? null : onDurable.get());
+      } catch (RuntimeException e) {
+        logger.error("Failed to apply a journal record", e);// the writer goes on
+        result = Future.failedFuture(e);
+      }
+      complete(result);
+    }
+
+    private void fail(Throwable cause) {
+      if (payload == null) {
+        rolled.completeExceptionally(cause);
+      }
+      complete(Future.failedFuture(cause));
+    }
+
+    private void complete(AsyncResult<T> result) {
+      if (resultHandler == null) {
+        return;
+      }
+      if (context == null) {
+        resultHandler.handle(result);
+      } else {
+        context.runOnContext(v -> resultHandler.handle(result));
+      }
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+
+import java.math.BigDecimal;
+
+/**
+ * The outcome of a bid, see {@link AuctionRepository#recordABid}: whether it is accepted and, if not, why, along with a
+ * snapshot of the auction taken once the bid has been applied (or rejected), thus no further lookup is needed to answer
+ * the bidder. Outcomes are immutable and can be passed by reference between verticles.
+ */
+public final class BidOutcome {
+  /**
+   * The reasons of an outcome
+   */
+  public enum Status {
+    /**
+     * The bid is recorded
+     */
+    ACCEPTED,
+    /**
+     * The bid is below the current price of the auction
+     */
+    TOO_LOW,
+    /**
+     * The auction is closed
+     */
+    CLOSED,
+    /**
+     * There is no such auction
+     */
+    NOT_FOUND
+  }
+
+  private static final BidOutcome NOT_FOUND = new BidOutcome(Status.NOT_FOUND, null, null);
+  private final Status status;
+  private final Auction auction;
+  private final String version;
+
+  private BidOutcome(Status status, Auction auction, String version) {
+    this.status = status;
+    this.auction = auction;
+    this.version = version;
+  }
+
+  /**
+   * @param auction the snapshot of the auction once the bid is recorded
+   * @param version the version of the change, see {@link AuctionRepository#findChangesSince}
+   */
+  static BidOutcome accepted(Auction auction, String version) {
+    return new BidOutcome(Status.ACCEPTED, auction, version);
+  }
+
+  /**
+   * @param auction the snapshot of the auction which rejected the bid
+   * @param closed  true if the auction is closed, false if the bid is too low
+   */
+  static BidOutcome rejected(Auction auction, boolean closed) {
+    return new BidOutcome(closed ? Status.CLOSED : Status.TOO_LOW, auction, null);
+  }
+
+  static BidOutcome notFound() {
+    return NOT_FOUND;
+  }
+
+  /**
+   * @return the reason of this outcome
+   */
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * @return true if the bid is recorded
+   */
+  public boolean isAccepted() {
+    return status == Status.ACCEPTED;
+  }
+
+  /**
+   * @return a snapshot of the auction taken once the bid has been applied (possibly along with other bids), null if
+   * there is no such auction
+   */
+  public Auction getAuction() {
+    return auction;
+  }
+
+  /**
+   * @return the version of the change log once the bid is recorded (the snapshot of the auction reflecting at least this
+   * version), null unless the bid is accepted
+   */
+  public String getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the price of the auction once the bid has been applied, null if there is no such auction
+   */
+  public BigDecimal getCurrentPrice() {
+    return auction == null ? null : auction.getCurrentAuctionValue();
+  }
+
+  @Override
+  public String toString() {
+    return "BidOutcome{" + status + (auction == null ? "" : ", " + auction.getId() + " at " + getCurrentPrice()) + '}';
+  }
+}
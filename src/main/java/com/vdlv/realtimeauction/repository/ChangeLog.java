@@ -0,0 +1,82 @@
+package com.vdlv.realtimeauction.repository;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded log of the ids of the auctions changed (created, bid on or closed), each change being numbered by a
+ * version. It is a ring: only the last changes are kept, older versions requiring a full resynchronization.
+ * <p>
+ * The log is lock-free: a writer claims a version and then publishes its change in the slot of this version. A reader
+ * stops at the first version not published yet, thus it never skips a change.
+ */
+final class ChangeLog {
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicReferenceArray<Change> ring;
+
+  /**
+   * @param capacity the number of changes kept
+   */
+  ChangeLog(int capacity) {
+    this.ring = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * Record a change, once it is visible.
+   *
+   * @param id the id of the changed auction
+   * @return the version of the change
+   */
+  long add(String id) {
+    final long claimed = version.incrementAndGet();
+    ring.set(slotOf(claimed), new Change(claimed, id));
+    return claimed;
+  }
+
+  /**
+   * @return the version of the last recorded change
+   */
+  long version() {
+    return version.get();
+  }
+
+  /**
+   * @param since a version provided by this log
+   * @param ids   receives the ids of the auctions changed after this version, without duplicates
+   * @return the version the ids are up to, or -1 if the changes after the provided version are no longer known
+   */
+  long since(long since, Set<String> ids) {
+    final long last = version.get();
+    if (since < 0 || since > last || last - since > ring.length()) {
+      return -1;
+    }
+    long upTo = since;
+    while (upTo < last) {
+      final Change change = ring.get(slotOf(upTo + 1));
+      if (change == null || change.version < upTo + 1) {
+        break;// claimed but not published yet: the caller will get it with its next request
+      }
+      if (change.version > upTo + 1) {
+        return -1;// overwritten meanwhile
+      }
+      ids.add(change.id);
+      upTo++;
+    }
+    return upTo;
+  }
+
+  private int slotOf(long version) {
+    return (int) (version % ring.length());
+  }
+
+  private static final class Change {
+    private final long version;
+    private final String id;
+
+    private Change(long version, String id) {
+      this.version = version;
+      this.id = id;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A sorted view gathering the same partition (open or closed auctions) of every shard, and the archive for the closed
+ * auctions. Iterating merges the sources lazily: a page visits only its own auctions (plus one per source), and the
+ * auctions skipped by an offset are never loaded (see {@link Source}).
+ */
+final class Listing {
+  private final List<? extends Source> sources;
+
+  Listing(List<? extends Source> sources) {
+    this.sources = sources;
+  }
+
+  /**
+   * A sorted index of auctions taking part in a listing.
+   */
+  interface Source {
+    /**
+     * @return the number of auctions of this source
+     */
+    int size();
+
+    /**
+     * @param cursor a position in the index, null for the beginning
+     * @return the entries strictly after the provided position, from the most recent to the oldest. The value of an
+     * entry might be loaded only when requested.
+     */
+    Iterator<? extends Map.Entry<AuctionCursor, Auction>> entries(AuctionCursor cursor);
+  }
+
+  /**
+   * @return the number of auctions of this listing
+   */
+  int size() {
+    int size = 0;
+    for (Source source : sources) {
+      size += source.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return the auctions from the most recent to the oldest
+   */
+  Iterable<Auction> all() {
+    return from(0);
+  }
+
+  /**
+   * @param offset the number of auctions to skip
+   * @return the auctions from the most recent to the oldest, after the skipped ones
+   */
+  Iterable<Auction> from(int offset) {
+    return () -> {
+      final Merge merge = new Merge(null);
+      for (int i = 0; i < offset && merge.hasNext(); i++) {
+        merge.next();
+      }
+      return values(merge);
+    };
+  }
+
+  /**
+   * @param cursor a position in the indexes
+   * @return the auctions strictly after the provided position, from the most recent to the oldest
+   */
+  Iterable<Auction> after(AuctionCursor cursor) {
+    return () -> values(new Merge(cursor));
+  }
+
+  /**
+   * @param first a sorted sequence of auctions
+   * @param second a sorted sequence of auctions, all of them coming after those of the first one
+   * @return the concatenation of both sequences
+   */
+  static Iterable<Auction> concat(Iterable<Auction> first, Iterable<Auction> second) {
+    return () -> new Iterator<Auction>() {
+      private final Iterator<Auction> head = first.iterator();
+      private final Iterator<Auction> tail = second.iterator();
+
+      @Override
+      public boolean hasNext() {
+        return head.hasNext() || tail.hasNext();
+      }
+
+      @Override
+      public Auction next() {
+        return head.hasNext() ? head.next() : tail.next();
+      }
+    };
+  }
+
+  private static Iterator<Auction> values(Iterator<? extends Map.Entry<AuctionCursor, Auction>> entries) {
+    return new Iterator<Auction>() {
+      @Override
+      public boolean hasNext() {
+        return entries.hasNext();
+      }
+
+      @Override
+      public Auction next() {
+        return entries.next().getValue();
+      }
+    };
+  }
+
+  /**
+   * The k-way merge of the sources entries.
+   */
+  private final class Merge implements Iterator<Map.Entry<AuctionCursor, Auction>> {
+    private final PriorityQueue<Head> heads = new PriorityQueue<>(sources.size());
+
+    private Merge(AuctionCursor cursor) {
+      for (Source source : sources) {
+        final Iterator<? extends Map.Entry<AuctionCursor, Auction>> iterator = source.entries(cursor);
+        if (iterator.hasNext()) {
+          heads.add(new Head(iterator));
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<AuctionCursor, Auction> next() {
+      final Head head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException();
+      }
+      final Map.Entry<AuctionCursor, Auction> result = head.current;
+      if (head.iterator.hasNext()) {
+        head.current = head.iterator.next();
+        heads.add(head);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * The next entry of a source during a merge.
+   */
+  private static final class Head implements Comparable<Head> {
+    private final Iterator<? extends Map.Entry<AuctionCursor, Auction>> iterator;
+    private Map.Entry<AuctionCursor, Auction> current;
+
+    private Head(Iterator<? extends Map.Entry<AuctionCursor, Auction>> iterator) {
+      this.iterator = iterator;
+      this.current = iterator.next();
+    }
+
+    @Override
+    public int compareTo(Head head) {
+      return current.getKey().compareTo(head.current.getKey());
+    }
+  }
+}
@@ -0,0 +1,115 @@
+package com.vdlv.realtimeauction.repository;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel with a one millisecond tick: scheduling and firing a timer cost a constant time whatever
+ * the number of pending timers.
+ * <p>
+ * Each level has 64 slots, a slot of level n covering 64^n ticks: the six levels cover about two years (the timers
+ * beyond are parked in the last level and rescheduled when their slot comes up). A timer sits in the lowest level
+ * able to hold its remaining delay, and moves down (cascades) when the ticks reach the start of its slot, until it
+ * fires from the first level at its exact tick.
+ * <p>
+ * The wheel is thread safe. It does not own a thread: it is advanced to the current time by its callers, which fire
+ * the timers returned outside of the lock.
+ *
+ * @param <T> the type of the timer payloads
+ */
+final class TimerWheel<T> {
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int LEVELS = 6;
+
+  private final ArrayDeque<Timer<T>>[][] wheels;
+  private long now;
+  private int pending;
+
+  /**
+   * @param now the current tick (epoch milliseconds)
+   */
+  @SuppressWarnings("unchecked")
+  TimerWheel(long now) {
+    this.now = now;
+    this.wheels = new ArrayDeque[LEVELS][SLOTS];
+    for (ArrayDeque<Timer<T>>[] wheel : wheels) {
+      for (int slot = 0; slot < SLOTS; slot++) {
+        wheel[slot] = new ArrayDeque<>();
+      }
+    }
+  }
+
+  /**
+   * @param deadline the tick (epoch milliseconds) at which the timer fires, a past deadline fires on the next tick
+   * @param payload  the payload returned by {@link #advance(long)} when the timer fires
+   */
+  synchronized void schedule(long deadline, T payload) {
+    place(new Timer<>(Math.max(deadline, now + 1), payload));
+    pending++;
+  }
+
+  /**
+   * @param to the current tick (epoch milliseconds)
+   * @return the payloads of the timers whose deadline is reached, in deadline order
+   */
+  synchronized List<T> advance(long to) {
+    if (to <= now) {
+      return new ArrayList<>(0);
+    }
+    final List<T> fired = new ArrayList<>();
+    while (now < to) {
+      if (pending == 0) {
+        now = to;// nothing to cascade nor to fire
+        break;
+      }
+      now++;
+      for (int level = LEVELS - 1; level > 0; level--) {
+        if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0) {// the start of a slot of this level
+          final ArrayDeque<Timer<T>> slot = wheels[level][slotOf(now, level)];
+          for (int i = slot.size(); i > 0; i--) {
+            place(slot.poll());
+          }
+        }
+      }
+      final ArrayDeque<Timer<T>> slot = wheels[0][slotOf(now, 0)];
+      Timer<T> timer;
+      while ((timer = slot.poll()) != null) {
+        fired.add(timer.payload);
+        pending--;
+      }
+    }
+    return fired;
+  }
+
+  /**
+   * @return the number of timers not fired yet
+   */
+  synchronized int size() {
+    return pending;
+  }
+
+  private void place(Timer<T> timer) {
+    final long delay = Math.max(timer.deadline - now, 0);
+    int level = 0;
+    while (level < LEVELS - 1 && delay >>> (SLOT_BITS * (level + 1)) != 0) {
+      level++;
+    }
+    wheels[level][slotOf(Math.max(timer.deadline, now), level)].add(timer);
+  }
+
+  private static int slotOf(long tick, int level) {
+    return (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+  }
+
+  private static final class Timer<T> {
+    private final long deadline;
+    private final T payload;
+
+    private Timer(long deadline, T payload) {
+      this.deadline = deadline;
+      this.payload = payload;
+    }
+  }
+}
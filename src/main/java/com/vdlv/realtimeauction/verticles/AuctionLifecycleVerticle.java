@@ -0,0 +1,26 @@
+package com.vdlv.realtimeauction.verticles;
+
+import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.repository.AuctionRepository;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+/**
+ * AuctionLifecycleVerticle drives the ending timers of the auctions: every 'lifecycle.tick' milliseconds, the auctions
+ * that have reached their ending time are closed and a "closed" event is published on {@link Util#ClosedAuctionsTopic}.
+ *
+ * @author vim
+ */
+public class AuctionLifecycleVerticle extends AbstractVerticle {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuctionLifecycleVerticle.class);
+
+  @Override
+  public void start() {
+    final AuctionRepository repository = new AuctionRepository(vertx);
+    final long tick = config().getLong("lifecycle.tick", 10L);
+    vertx.setPeriodic(tick, id -> repository.closeEndedAuctions());
+    logger.info("Auction endings are checked every " + tick + " ms");
+  }
+}
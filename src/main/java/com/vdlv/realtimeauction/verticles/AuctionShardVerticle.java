@@ -0,0 +1,133 @@
+package com.vdlv.realtimeauction.verticles;
+
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.repository.AuctionRepository;
+import com.vdlv.realtimeauction.repository.BidOutcome;
+import io.vertx.core.AbstractVerticle;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AuctionShardVerticle decides the bids of the auctions belonging to one shard (see {@link Util#shardCount()}). Bids
+ * are routed to it over the event bus ({@link Util#shardAddress(int)}), thus all bids of an auction are checked on the
+ * same event loop, in order, and shards spread the bid load across the cores. It does not own the auctions: they sit
+ * in the store shared by all the event loops, which the listings and upserts read and write directly. When the
+ * repository is journaled, a bid is applied by the journal writer once durable, in the order of the journal, then
+ * acknowledged.
+ * <p>
+ * A command holds either one bid ({auctionId, buyer, price} or {auctionId, buyer, cents}, replied with its
+ * {@link BidOutcome}) or a batch of bids of
+ * one buyer ({buyer, bids: [{auctionId, price}]}, replied with an array of outcomes in the same order), applied auction
+ * by auction. The outcomes are passed by reference (see {@link LocalCodec}). A command holding a price which cannot be
+ * recorded (beyond the cents a bid can hold) fails with a 400 code.
+ *
+ * @author vim
+ */
+public class AuctionShardVerticle extends AbstractVerticle {
+
+  private static final Logger logger = LoggerFactory.getLogger(AuctionShardVerticle.class);
+
+  @Override
+  public void start() {
+    final int shard = config().getInteger("shard", 0);
+    final AuctionRepository repository = new AuctionRepository(vertx);
+    LocalCodec.register(vertx, BidOutcome.class);
+    LocalCodec.register(vertx, BidOutcome[].class);
+    vertx.eventBus().<JsonObject>consumer(Util.shardAddress(shard), message -> {
+      final JsonObject command = message.body();
+      if (command.containsKey("bids")) {
+        recordBids(repository, command, message);
+        return;
+      }
+      final Bid bid;
+      try {
+        bid = command.containsKey("cents") ? new Bid(command.getString("buyer"), command.getLong("cents"))
+          : new Bid(command.getString("buyer"), BigDecimal.valueOf(command.getDouble("price")));
+      } catch (ArithmeticException e) {
+        message.fail(400, "Invalid price: " + e.getMessage());
+        return;
+      }
+      repository.recordABid(command.getString("auctionId"), bid, result -> {
+        if (result.succeeded()) {
+          message.reply(result.result());
+        } else {
+          logger.error("Bid could not be made durable", result.cause());
+          message.fail(500, result.cause().getMessage());
+        }
+      });
+    });
+    logger.info("Shard " + shard + " is listening at: " + Util.shardAddress(shard));
+  }
+
+  private static void recordBids(AuctionRepository repository, JsonObject command, Message<JsonObject> message) {
+    final String buyer = command.getString("buyer");
+    final JsonArray bids = command.getJsonArray("bids");
+    // group the bids per auction, keeping their order, none being recorded unless all of them are valid
+    final Map<String, List<Integer>> positions = new LinkedHashMap<>();
+    final Bid[] parsed = new Bid[bids.size()];
+    for (int i = 0; i < bids.size(); i++) {
+      final JsonObject bid = bids.getJsonObject(i);
+      try {
+        parsed[i] = new Bid(buyer, BigDecimal.valueOf(bid.getDouble("price")));
+      } catch (ArithmeticException e) {
+        message.fail(400, "Invalid price: " + e.getMessage());
+        return;
+      }
+      positions.computeIfAbsent(bid.getString("auctionId"), id -> new ArrayList<>()).add(i);
+    }
+    final BidOutcome[] outcomes = new BidOutcome[bids.size()];
+    final List<Future> recorded = new ArrayList<>(positions.size());
+    positions.forEach((auctionId, indexes) -> {
+      final List<Bid> auctionBids = new ArrayList<>(indexes.size());
+      indexes.forEach(i -> auctionBids.add(parsed[i]));
+      final Future<List<BidOutcome>> result = Future.future();
+      repository.recordBids(auctionId, auctionBids, result);
+      recorded.add(result.map(auctionOutcomes -> {
+        for (int i = 0; i < auctionOutcomes.size(); i++) {
+          outcomes[indexes.get(i)] = auctionOutcomes.get(i);
+        }
+        return null;
+      }));
+    });
+    CompositeFuture.all(recorded).setHandler(result -> {
+      if (result.succeeded()) {
+        message.reply(outcomes);
+      } else {
+        logger.error("Bids could not be made durable", result.cause());
+        message.fail(500, result.cause().getMessage());
+      }
+    });
+  }
+
+  /**
+   * Deploy one verticle per shard.
+   *
+   * @param vertx         the Vert.x instance
+   * @param resultHandler notified once all shards are deployed
+   */
+  public static void deployAll(Vertx vertx, Handler<AsyncResult<Void>> resultHandler) {
+    final List<Future> deployments = new ArrayList<>();
+    for (int shard = 0; shard < Util.shardCount(); shard++) {
+      final Future<String> deployment = Future.future();
+      vertx.deployVerticle(AuctionShardVerticle.class.getName(), new DeploymentOptions().setConfig(new JsonObject().put("shard", shard)), deployment);
+      deployments.add(deployment);
+    }
+    CompositeFuture.all(deployments).<Void>mapEmpty().setHandler(resultHandler);
+  }
+}
@@ -1,11 +1,20 @@
 package com.vdlv.realtimeauction.verticles;
 
 import com.vdlv.realtimeauction.handlers.AuctionHandler;
+import com.vdlv.realtimeauction.handlers.AuctionSocketHandler;
+import com.vdlv.realtimeauction.handlers.AuctionSubscriptions;
+import com.vdlv.realtimeauction.handlers.BidPublisher;
+import com.vdlv.realtimeauction.handlers.CachingJWTAuth;
+import com.vdlv.realtimeauction.handlers.InMemoryAuthProvider;
 import com.vdlv.realtimeauction.handlers.LoginHandler;
+import com.vdlv.realtimeauction.handlers.OutboundQueue;
+import com.vdlv.realtimeauction.handlers.Subscribers;
 import com.vdlv.realtimeauction.handlers.ValidationFailureHandler;
 import com.vdlv.realtimeauction.model.Util;
 import com.vdlv.realtimeauction.repository.AuctionRepository;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
 import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
@@ -20,13 +29,19 @@ import io.vertx.ext.auth.shiro.ShiroAuthRealmType;
 import io.vertx.ext.bridge.BridgeEventType;
 import io.vertx.ext.bridge.PermittedOptions;
 import io.vertx.ext.web.Router;
-import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
-import io.vertx.ext.web.api.validation.ParameterType;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.contract.RouterFactoryOptions;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
 import io.vertx.ext.web.handler.*;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
 import io.vertx.ext.web.handler.sockjs.SockJSHandler;
+import io.vertx.ext.web.handler.sockjs.SockJSSocket;
 import xyz.jetdrone.vertx.spa.services.SPA;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 /**
  * FrontEndVerticle aims to deploy all endpoints (authentication and API) and static content (ReactJS app)
  *
@@ -34,48 +49,53 @@ import xyz.jetdrone.vertx.spa.services.SPA;
  */
 public class FrontEndVerticle extends AbstractVerticle {
   private final static Logger logger = LoggerFactory.getLogger(FrontEndVerticle.class.getName());
+  /**
+   * The contract of the API, its validators being built from it once, when the verticle starts
+   */
+  private final static String API_CONTRACT = "openapi.yaml";
+  private InMemoryAuthProvider credentials;// null with the Shiro realm
+  private BidPublisher publisher;
+  private Subscribers subscribers;
+  private AuctionSubscriptions subscriptions;
 
   @Override
-  public void start() {
-    final Router router = Router.router(vertx);
-    router.route().failureHandler(ErrorHandler.create());
-
-    final Builder builder = new Builder(router);
-    builder
-      .setupAuthenticationEndpoint()
-      .protectAPIEndpoints();
-
-    AuctionHandler ah = new AuctionHandler(new AuctionRepository(vertx));
-    HTTPRequestValidationHandler search = HTTPRequestValidationHandler.create()
-      .addQueryParam("closed", ParameterType.BOOL, false)
-      .addQueryParam("offset", ParameterType.INT, true)
-      .addQueryParam("max", ParameterType.INT, true);
-
-
-    router.get("/api/auctions")
-      .handler(search)
-      .handler(ah::handleGetAuctions)
-      .failureHandler(ValidationFailureHandler.create());
-
-    router.route("/api/bid/*").handler(BodyHandler.create());
-    HTTPRequestValidationHandler patch = HTTPRequestValidationHandler.create()
-      .addExpectedContentType("application/json")
-      .addPathParam("auctionId", ParameterType.GENERIC_STRING);
-
-    router.patch("/api/bid/:auctionId")
-      .handler(patch)
-      .handler(ah::handleBidForAuction)
-      .failureHandler(ValidationFailureHandler.create());
-
-    builder
-      .publishSPAApplication()
-      .setupDebuggingTools()
-      .setUpEventBusBridge()
-      .startVertxServer();
+  public void start(Future<Void> startFuture) {
+    // the frames of the subscribers that do not keep up are bounded
+    subscribers = new Subscribers(Util.subscriberQueueCapacity(), OutboundQueue.Policy.parse(Util.subscriberPolicy()));
+    OpenAPI3RouterFactory.create(vertx, API_CONTRACT, created -> {
+      if (created.failed()) {
+        startFuture.fail(created.cause());
+        return;
+      }
+      final Router router = Router.router(vertx);
+      router.route().failureHandler(ErrorHandler.create());
+
+      final JWTAuth jwtAuth = JWTAuth.create(vertx, new JWTAuthOptions()// the keystore is read once, when the verticle starts
+        .setKeyStore(new KeyStoreOptions()
+          .setType("jceks")
+          .setPath("keystore.jceks")
+          .setPassword("secret")));
+      new Builder(router, jwtAuth)
+        .setupAuthenticationEndpoint()
+        .protectAPIEndpoints()
+        .mountAPIEndpoints(created.result())
+        .publishSPAApplication()
+        .setupDebuggingTools()
+        .setUpEventBusBridge()
+        .setUpPriceSocket()
+        .startVertxServer(startFuture);
+    });
   }
 
   @Override
   public void stop() {
+    if (credentials != null) {
+      credentials.close();
+    }
+    if (publisher != null) {
+      publisher.close();
+      logger.info("Bids published: " + publisher.getPublished() + ", suppressed: " + publisher.getSuppressed());
+    }
     // will stop any SPA running processes in DEV mode
     SPA.stop();
   }
@@ -85,17 +105,27 @@ public class FrontEndVerticle extends AbstractVerticle {
    */
   private class Builder {
     private Router router;
+    private JWTAuth jwtAuth;
+    private JWTAuth authProvider;// caching the verified tokens, shared by the API and the event bus bridge
 
-    Builder(Router router) {
+    Builder(Router router, JWTAuth jwtAuth) {
       this.router = router;
+      this.jwtAuth = jwtAuth;
     }
 
     Builder setupAuthenticationEndpoint() {
-      AuthProvider shiroAuthProvider = ShiroAuth.create(
-        vertx,
-        new ShiroAuthOptions().setType(ShiroAuthRealmType.PROPERTIES).setConfig(new JsonObject())
-      );
-      router.route("/login").handler(LoginHandler.create(shiroAuthProvider)).failureHandler(context -> {
+      final AuthProvider usersAuthProvider;
+      if (Util.shiroRealm()) {
+        usersAuthProvider = ShiroAuth.create(
+          vertx,
+          new ShiroAuthOptions().setType(ShiroAuthRealmType.PROPERTIES).setConfig(new JsonObject())
+        );
+      } else {
+        // the credentials are loaded once and verified on a dedicated pool, apart from the worker pool
+        credentials = InMemoryAuthProvider.create(vertx, Util.usersFile(), Util.authWorkers());
+        usersAuthProvider = credentials;
+      }
+      router.route("/login").handler(LoginHandler.create(usersAuthProvider, jwtAuth)).failureHandler(context -> {
         if (logger.isDebugEnabled()) {
           logger.debug("Authentication failed");
         }
@@ -109,13 +139,8 @@ public class FrontEndVerticle extends AbstractVerticle {
     }
 
     Builder protectAPIEndpoints() {
-      JWTAuthOptions authConfig = new JWTAuthOptions()
-        .setKeyStore(new KeyStoreOptions()
-          .setType("jceks")
-          .setPath("keystore.jceks")
-          .setPassword("secret"));
-
-      JWTAuth authProvider = JWTAuth.create(vertx, authConfig);
+      // the tokens presented again are not verified again until they expire
+      authProvider = new CachingJWTAuth(jwtAuth, Util.tokenCacheCapacity());
 
       router.route("/api/*").handler(JWTAuthHandler.create(authProvider)).failureHandler(context -> {
         if (logger.isDebugEnabled()) {
@@ -129,6 +154,28 @@ public class FrontEndVerticle extends AbstractVerticle {
       return this;
     }
 
+    Builder mountAPIEndpoints(OpenAPI3RouterFactory factory) {
+      // the parameters and bodies are validated against the contract before reaching the handlers
+      // the updates of an auction are conflated before reaching the event bus bridge
+      publisher = AuctionHandler.publisher(vertx, Util.conflationInterval(), Util.conflationThreshold());
+      final AuctionRepository repository = new AuctionRepository(vertx);
+      AuctionHandler ah = new AuctionHandler(repository, publisher);
+      // the snapshot-plus-stream subscriptions, on the event loop publishing the bids (see setUpEventBusBridge)
+      subscriptions = new AuctionSubscriptions(vertx, repository, Util.subscriptionsPerSocket());
+      factory
+        .addHandlerByOperationId("getAuctions", ah::handleGetAuctions)
+        .addHandlerByOperationId("getChanges", ah::handleGetChanges)
+        .addHandlerByOperationId("bidForAuction", ah::handleBidForAuction)
+        .addHandlerByOperationId("bidsForAuctions", ah::handleBidsForAuctions)
+        .addHandlerByOperationId("getSubscribers", subscribers::handleGetSubscribers)
+        .setOptions(new RouterFactoryOptions()
+          .setRequireSecurityHandlers(false)// the JWT tokens are checked on /api/* beforehand
+          .setMountValidationFailureHandler(true))
+        .setValidationFailureHandler(ValidationFailureHandler.create());
+      router.mountSubRouter("/api", factory.getRouter());// the paths of the contract are relative to its /api server
+      return this;
+    }
+
     Builder publishSPAApplication() {
       // Serve the static resources
       router.route().handler(StaticHandler.create());
@@ -143,11 +190,63 @@ public class FrontEndVerticle extends AbstractVerticle {
     }
 
     Builder setUpEventBusBridge() {
+      // a socket receives the bids of the auctions it has registered to only (see Util.bidsAddress), or subscribes to a
+      // snapshot followed by the stream of its updates (see AuctionSubscriptions), its requests holding a JWT token as
+      // the API ones (an "Authorization: Bearer <token>" header)
       BridgeOptions options = new BridgeOptions()
-        .addOutboundPermitted(new PermittedOptions().setAddress(Util.BidsTopic));
+        .addInboundPermitted(new PermittedOptions().setAddress(Util.SubscribeAddress))
+        .addOutboundPermitted(new PermittedOptions().setAddressRegex(Pattern.quote(Util.BidsTopic + '.') + ".+"))
+        .addOutboundPermitted(new PermittedOptions().setAddressRegex(Pattern.quote(Util.SubscriptionsTopic + '.') + ".+"))
+        .addOutboundPermitted(new PermittedOptions().setAddress(Util.ClosedAuctionsTopic));
+      vertx.eventBus().localConsumer(Util.SubscribeAddress, subscriptions::handleSubscribe);
+      // the messages are delivered through the outbound queue of their socket once it lags
+      final Map<SockJSSocket, OutboundQueue<Buffer>> queues = new HashMap<>();
       SockJSHandler eventBusHandler = SockJSHandler.create(vertx).bridge(options, event -> {
+        final SockJSSocket socket = event.socket();
         if (event.type() == BridgeEventType.SOCKET_CREATED) {
           logger.info("A socket was created listening to auction topics");
+          queues.put(socket, subscribers.add("sockjs", socket, socket::write, socket::close));
+        } else if (event.type() == BridgeEventType.SOCKET_CLOSED) {
+          final OutboundQueue<Buffer> queue = queues.remove(socket);
+          if (queue != null) {
+            subscribers.remove(queue);
+          }
+          subscriptions.unregisterAll(socket);
+        } else if (event.type() == BridgeEventType.REGISTER || event.type() == BridgeEventType.UNREGISTER) {
+          final String address = event.getRawMessage().getString("address");
+          if (AuctionSubscriptions.isSubscription(address)) {
+            if (event.type() == BridgeEventType.REGISTER) {
+              // the address of another socket, or too many subscriptions
+              final boolean registered = subscriptions.register(socket, address);
+              event.complete(registered);
+              if (registered) {// the bridge listens to the address once this hook returned
+                vertx.runOnContext(v -> vertx.eventBus().send(address, AuctionSubscriptions.REGISTERED));
+              }
+              return;
+            }
+            subscriptions.unregister(socket, address);
+          }
+        } else if (event.type() == BridgeEventType.SEND || event.type() == BridgeEventType.PUBLISH) {
+          final String token = bearerToken(event.getRawMessage().getJsonObject("headers"));
+          if (token == null) {
+            event.complete(false);
+            return;
+          }
+          authProvider.authenticate(new JsonObject().put("jwt", token), user -> event.complete(user.succeeded()));
+          return;
+        } else if (event.type() == BridgeEventType.RECEIVE) {
+          final OutboundQueue<Buffer> queue = queues.get(socket);
+          if (queue != null && !queue.isWritable()) {
+            final JsonObject message = event.getRawMessage();
+            final String address = message.getString("address");
+            final JsonObject headers = message.getJsonObject("headers");
+            final String auction = headers == null ? null : headers.getString(AuctionSubscriptions.AUCTION_HEADER);
+            // the updates of an auction are conflated, never the closed auctions
+            queue.offer(auction != null ? auction : Util.ClosedAuctionsTopic.equals(address) ? null : address,
+              Buffer.buffer(message.encode()));
+            event.complete(false);
+            return;
+          }
         }
       /*if (event.type() == BridgeEventType.PUBLISH || event.type() == BridgeEventType.SEND) {
           event.complete(false);// reject events from the client (client listen to events coming from server)
@@ -159,17 +258,74 @@ public class FrontEndVerticle extends AbstractVerticle {
       return this;
     }
 
+    /**
+     * @param headers the headers of a message sent by a client of the event bus bridge, if any
+     * @return the JWT token of its "Authorization: Bearer" header (the name in any case), null if there is none
+     */
+    private String bearerToken(JsonObject headers) {
+      if (headers == null) {
+        return null;
+      }
+      for (Map.Entry<String, Object> header : headers) {
+        final Object value = header.getValue();
+        if (HttpHeaders.AUTHORIZATION.toString().equalsIgnoreCase(header.getKey()) && value instanceof String
+          && ((String) value).startsWith("Bearer ")) {
+          return ((String) value).substring("Bearer ".length());
+        }
+      }
+      return null;
+    }
+
+    Builder setUpPriceSocket() {
+      // the native alternative to the bridge, pushing compact price updates, authenticated as the API
+      router.get("/ws/auctions").handler(this::authenticateSocket).handler(new AuctionSocketHandler(subscribers))
+        .failureHandler(context -> {
+          if (logger.isDebugEnabled()) {
+            logger.debug("A native socket was refused, JWT token missing, invalid or expired.");
+          }
+          context.response()
+            .setStatusCode(401)
+            .putHeader(HttpHeaders.CONTENT_TYPE, HttpHeaders.TEXT_HTML)
+            .end("Unauthorized");
+        });
+      return this;
+    }
+
+    /**
+     * Verifies the JWT token of a WebSocket upgrade: either the bearer token of its Authorization header, or its token
+     * query parameter since a browser cannot set the headers of a WebSocket.
+     */
+    private void authenticateSocket(RoutingContext context) {
+      final String authorization = context.request().getHeader(HttpHeaders.AUTHORIZATION);
+      final String token = authorization != null && authorization.startsWith("Bearer ")
+        ? authorization.substring("Bearer ".length()) : context.request().getParam("token");
+      if (token == null) {
+        context.fail(401);
+        return;
+      }
+      authProvider.authenticate(new JsonObject().put("jwt", token), user -> {
+        if (user.failed()) {
+          context.fail(401);
+          return;
+        }
+        context.setUser(user.result());
+        context.next();
+      });
+    }
+
     private int resolvePort() {
       return Integer.getInteger("http.port", 8080);
     }
 
-    void startVertxServer() {
+    void startVertxServer(Future<Void> startFuture) {
       int port = resolvePort();
       vertx.createHttpServer().requestHandler(router).listen(port, res -> {
         if (res.failed()) {
           res.cause().printStackTrace();
+          startFuture.fail(res.cause());
         } else {
           logger.warn("Server listening at: http://localhost:" + port + "/");
+          startFuture.complete();
         }
       });
     }
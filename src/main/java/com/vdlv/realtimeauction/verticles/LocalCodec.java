@@ -0,0 +1,58 @@
+package com.vdlv.realtimeauction.verticles;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.shareddata.LocalMap;
+
+/**
+ * A codec passing immutable objects by reference on the event bus, between the verticles of a Vert.x instance: they are
+ * neither copied nor encoded. The event bus is not clustered, thus they never go over the wire.
+ *
+ * @param <T> the type of the objects
+ */
+public final class LocalCodec<T> implements MessageCodec<T, T> {
+  private final String name;
+
+  private LocalCodec(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Register the codec of a type as its default codec, unless it is already registered.
+   *
+   * @param vertx the Vert.x instance
+   * @param type  the type of the objects, immutable
+   */
+  public static <T> void register(Vertx vertx, Class<T> type) {
+    final LocalMap<String, Boolean> codecs = vertx.sharedData().getLocalMap("codecs");
+    if (codecs.putIfAbsent(type.getName(), true) == null) {
+      vertx.eventBus().registerDefaultCodec(type, new LocalCodec<>("local-" + type.getName()));
+    }
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, T object) {
+    throw new UnsupportedOperationException(name + " is local only");
+  }
+
+  @Override
+  public T decodeFromWire(int pos, Buffer buffer) {
+    throw new UnsupportedOperationException(name + " is local only");
+  }
+
+  @Override
+  public T transform(T object) {
+    return object;
+  }
+
+  @Override
+  public String name() {
+    return name;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
@@ -1,20 +1,134 @@
 package com.vdlv.realtimeauction.verticles;
 
+import com.vdlv.realtimeauction.model.CachedClock;
+import com.vdlv.realtimeauction.model.UniversalClock;
+import com.vdlv.realtimeauction.model.Util;
+import com.vdlv.realtimeauction.repository.AuctionRepository;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+
 /**
- * MainVerticle start all dependent verticles of the application
+ * MainVerticle start all dependent verticles of the application.
+ * When a 'journal.path' is configured, the auctions are restored from this journal beforehand and persisted in it,
+ * the journal being compacted by a periodic snapshot ('snapshot.interval'). When an 'archive.path' is configured, the
+ * auctions closed for longer than 'archive.grace.period' are periodically moved to the archive.
+ * The application clock is a cached clock refreshed every 'clock.resolution' milliseconds (0 for the system clock).
  *
  * @author vim
  */
 public class MainVerticle extends AbstractVerticle {
 
   private static final Logger logger = LoggerFactory.getLogger(MainVerticle.class);
+  private CachedClock clock;
 
   @Override
   public void start() {
+    final long clockResolution = config().getLong("clock.resolution", 1L);
+    if (clockResolution > 0) {
+      clock = CachedClock.start(vertx, clockResolution);
+      UniversalClock.use(clock);
+    }
+    final String journalPath = config().getString("journal.path");
+    final String archivePath = config().getString("archive.path");
+    if (journalPath == null && archivePath == null) {
+      deployVerticles();
+    } else {
+      vertx.executeBlocking(future -> {
+        try {
+          final AuctionRepository repository = new AuctionRepository(vertx);
+          if (archivePath != null) {// before the journal: a replayed auction takes precedence over its archived version
+            repository.openArchive(Paths.get(archivePath), config().getInteger("archive.cache.size", 1000));
+          }
+          if (journalPath != null) {
+            repository.openJournal(Paths.get(journalPath), config().getInteger("journal.segment.size", 64 * 1024 * 1024));
+          }
+          future.complete();
+        } catch (IOException e) {
+          future.fail(e);
+        }
+      }, res -> {
+        if (res.succeeded()) {
+          if (archivePath != null) {
+            logger.info("Closed auctions are archived in: " + archivePath);
+            scheduleArchival();
+          }
+          if (journalPath != null) {
+            logger.info("Auctions have been restored from the journal: " + journalPath);
+            scheduleSnapshots();
+          }
+          deployVerticles();
+        } else {
+          logger.error("Journal replay failed!", res.cause());
+        }
+      });
+    }
+  }
+
+  @Override
+  public void stop(Future<Void> stopFuture) {
+    final AuctionRepository repository = new AuctionRepository(vertx);
+    vertx.<Void>executeBlocking(future -> {
+      repository.closeJournal();// waits for the pending records
+      repository.closeArchive();
+      future.complete();
+    }, res -> {
+      if (clock != null) {
+        UniversalClock.use(UniversalClock.system());
+        clock.stop();
+      }
+      stopFuture.handle(res);
+    });
+  }
+
+  private void scheduleArchival() {
+    final AuctionRepository repository = new AuctionRepository(vertx);
+    final Duration gracePeriod = Duration.ofMillis(config().getLong("archive.grace.period", 300_000L));
+    vertx.setPeriodic(config().getLong("archive.interval", 60_000L), id -> vertx.<Integer>executeBlocking(future -> {
+      try {
+        future.complete(repository.archiveClosedAuctions(gracePeriod));
+      } catch (IOException e) {
+        future.fail(e);
+      }
+    }, true, res -> {
+      if (res.failed()) {
+        logger.error("Archival failed!", res.cause());
+      } else if (res.result() > 0) {
+        logger.info(res.result() + " closed auctions have been archived");
+      }
+    }));
+  }
+
+  private void scheduleSnapshots() {
+    final AuctionRepository repository = new AuctionRepository(vertx);
+    vertx.setPeriodic(config().getLong("snapshot.interval", 60_000L), id -> vertx.executeBlocking(future -> {
+      try {
+        repository.snapshot();
+        future.complete();
+      } catch (IOException e) {
+        future.fail(e);
+      }
+    }, true, res -> {
+      if (res.failed()) {
+        logger.error("Snapshot failed!", res.cause());
+      }
+    }));
+  }
+
+  private void deployVerticles() {
+    vertx.deployVerticle(AuctionLifecycleVerticle.class.getName(), new DeploymentOptions().setConfig(config()), res -> {
+      if (res.succeeded()) {
+        logger.info("AuctionLifecycleVerticle deployment id is: " + res.result());
+      } else {
+        logger.error("AuctionLifecycleVerticle deployment failed!");
+      }
+    });
     vertx.deployVerticle(AuctionManagementVerticle.class.getName(), res -> {
       if (res.succeeded()) {
         logger.info("AuctionManagementVerticle deployment id is: " + res.result());
@@ -22,6 +136,13 @@ public class MainVerticle extends AbstractVerticle {
         logger.error("AuctionManagementVerticle deployment failed!");
       }
     });
+    AuctionShardVerticle.deployAll(vertx, res -> {
+      if (res.succeeded()) {
+        logger.info(Util.shardCount() + " AuctionShardVerticle have been deployed");
+      } else {
+        logger.error("AuctionShardVerticle deployment failed!");
+      }
+    });
     vertx.deployVerticle(FrontEndVerticle.class.getName(), res -> {
       if (res.succeeded()) {
         logger.info("FrontEndVerticle deployment id is: " + res.result());
@@ -0,0 +1,35 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static com.vdlv.realtimeauction.model.Util.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class AuctionEncoderTest {
+
+  @Test
+  @Tag("Unit")
+  void encodesLikeJsonObjectTest() {
+    assertEncodedLikeJsonObject(new Auction("Cups of tea", THOUSAND));
+    Auction auction = new Auction("Tea \"vintage\" \\ café € 🍵 \t\n\u0001\u001f/", FIFTEEN, universalNow().plusHours(1));
+    auction.addBid(new Bid("Jöhn \"Doe\"", new BigDecimal("12345678.9")));
+    assertEncodedLikeJsonObject(auction);
+  }
+
+  private static void assertEncodedLikeJsonObject(Auction auction) {
+    final JsonObject expected = new JsonObject().
+      put("id", auction.getId()).
+      put("product", auction.getProduct()).
+      put("price", auction.getCurrentAuctionValue().doubleValue()).
+      put("ending", auction.getEndingTime().toString()).
+      put("buyer", auction.getCurrentBuyer());
+    assertThat(AuctionEncoder.encode(auction).toString(), is(expected.encode()));
+  }
+}
@@ -0,0 +1,65 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.KeyStoreOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.jwt.JWTOptions;
+
+import java.util.Arrays;
+import java.util.function.IntSupplier;
+
+/**
+ * A rough benchmark of the authentication (not run by the build): the p50/p99 latency of the signature of a token at
+ * login, with a provider created per login (the former login) or shared, and of the authentication of a request, with
+ * the signature verified each time (the former API protection) or once thanks to {@link CachingJWTAuth}.
+ * Run it with {@code java -cp target/test-classes:target/classes:<deps> ...AuthBenchmark} from the project directory.
+ */
+public final class AuthBenchmark {
+  private static final int OPERATIONS = 20_000;
+  private static final int ROUNDS = 3;
+
+  private AuthBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    final Vertx vertx = Vertx.vertx();
+    final JWTAuthOptions options = new JWTAuthOptions()
+      .setKeyStore(new KeyStoreOptions()
+        .setType("jceks")
+        .setPath("src/main/resources/keystore.jceks")
+        .setPassword("secret"));
+    final JWTAuth shared = JWTAuth.create(vertx, options);
+    final CachingJWTAuth cached = new CachingJWTAuth(shared, 10000);
+    final JsonObject claims = new JsonObject().put("sub", "martin");
+    final JWTOptions expiry = new JWTOptions().setExpiresInMinutes(60);
+    final JsonObject authInfo = new JsonObject().put("jwt", shared.generateToken(claims, expiry));
+    for (int round = 0; round < ROUNDS; round++) {
+      run("login, provider per login", 200, () -> JWTAuth.create(vertx, options).generateToken(claims, expiry).length());
+      run("login, shared provider", OPERATIONS, () -> shared.generateToken(claims, expiry).length());
+      run("request, verified", OPERATIONS, () -> verify(shared, authInfo));
+      run("request, cached", OPERATIONS, () -> verify(cached, authInfo));
+    }
+    vertx.close();
+  }
+
+  private static int verify(JWTAuth auth, JsonObject authInfo) {
+    final int[] result = new int[1];
+    auth.authenticate(authInfo, res -> result[0] = res.succeeded() ? 1 : 0);// synchronous
+    return result[0];
+  }
+
+  private static void run(String name, int operations, IntSupplier operation) {
+    final long[] latencies = new long[operations];
+    int sink = 0;
+    for (int i = 0; i < operations; i++) {
+      final long start = System.nanoTime();
+      sink += operation.getAsInt();
+      latencies[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(latencies);
+    System.out.printf("%-26s: p50 %8.1f us, p99 %8.1f us (%d)%n", name, latencies[operations / 2] / 1e3,
+      latencies[operations * 99 / 100] / 1e3, sink);
+  }
+}
@@ -0,0 +1,97 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import io.github.glytching.junit.extension.system.SystemProperty;
+import io.github.glytching.junit.extension.system.SystemPropertyExtension;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+@ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
+@SystemProperty(name = "vertx.environment", value = "JUNIT")
+class BidPublisherTest {
+
+  @Test
+  void conflatesTheUpdatesOfAnAuctionTest(Vertx vertx, VertxTestContext testContext) {
+    final BidPublisher publisher = AuctionHandler.publisher(vertx, 50, 0);
+    final Auction auction = new Auction("Potatoes", new BigDecimal("20.00"));
+    final List<Double> prices = listen(vertx, auction);
+    vertx.runOnContext(v -> {
+      for (int i = 1; i <= 100; i++) {
+        auction.addBid(new Bid("martin", BigDecimal.valueOf(20 + i)));
+        publisher.publish(auction);
+      }
+      vertx.setTimer(200, id -> testContext.verify(() -> {
+        assertThat(prices, is(Collections.singletonList(120.0)));// the latest state only
+        assertThat(publisher.getPublished(), is(1L));
+        assertThat(publisher.getSuppressed(), is(99L));
+        testContext.completeNow();
+      }));
+    });
+  }
+
+  @Test
+  void publishesAtOnceAboveTheThresholdTest(Vertx vertx, VertxTestContext testContext) {
+    final BidPublisher publisher = AuctionHandler.publisher(vertx, 500, 10);
+    final Auction auction = new Auction("Potatoes", new BigDecimal("20.00"));
+    listen(vertx, auction);
+    vertx.runOnContext(v -> {
+      auction.addBid(new Bid("martin", new BigDecimal("21.00")));
+      publisher.publish(auction);
+      vertx.setTimer(600, id -> testContext.verify(() -> {
+        assertThat(publisher.getPublished(), is(1L));// flushed
+        auction.addBid(new Bid("martin", new BigDecimal("22.00")));
+        publisher.publish(auction);
+        assertThat(publisher.getPublished(), is(1L));// below 23.10
+        auction.addBid(new Bid("martin", new BigDecimal("23.10")));
+        publisher.publish(auction);
+        assertThat(publisher.getPublished(), is(2L));// at once
+        assertThat(publisher.getSuppressed(), is(1L));
+        publisher.close();
+        testContext.completeNow();
+      }));
+    });
+  }
+
+  @Test
+  void publishesEveryUpdateWithoutIntervalTest(Vertx vertx, VertxTestContext testContext) {
+    final BidPublisher publisher = AuctionHandler.publisher(vertx, 0, 10);
+    final Auction auction = new Auction("Potatoes", new BigDecimal("20.00"));
+    final List<Double> prices = listen(vertx, auction);
+    vertx.runOnContext(v -> {
+      for (int i = 1; i <= 3; i++) {
+        auction.addBid(new Bid("martin", BigDecimal.valueOf(20 + i)));
+        publisher.publish(auction);
+      }
+      vertx.setTimer(100, id -> testContext.verify(() -> {
+        assertThat(prices, is(Arrays.asList(21.0, 22.0, 23.0)));
+        assertThat(publisher.getSuppressed(), is(0L));
+        testContext.completeNow();
+      }));
+    });
+  }
+
+  /**
+   * @return the prices published for the auction
+   */
+  private static List<Double> listen(Vertx vertx, Auction auction) {
+    final List<Double> prices = new CopyOnWriteArrayList<>();
+    vertx.eventBus().<String>consumer(Util.bidsAddress(auction.getId()),
+      message -> prices.add(new JsonObject(message.body()).getDouble("price")));
+    return prices;
+  }
+}
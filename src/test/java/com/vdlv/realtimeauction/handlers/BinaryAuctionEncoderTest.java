@@ -0,0 +1,87 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.vdlv.realtimeauction.model.Util.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryAuctionEncoderTest {
+
+  @Test
+  @Tag("Unit")
+  void decodesToTheJsonFormTest() {
+    Auction auction = new Auction("Tea \"vintage\" café € 🍵", FIFTEEN, universalNow().plusHours(1));
+    auction.addBid(new Bid("Jöhn Doe", new BigDecimal("12345678.9")));
+    assertDecodedToTheJsonForm(auction);
+    assertDecodedToTheJsonForm(new Auction("Cups of tea", THOUSAND));
+    assertDecodedToTheJsonForm(new Auction("not-a-uuid", "Spoons", TEN, universalNow()));
+  }
+
+  @Test
+  @Tag("Unit")
+  void isSmallerThanTheJsonFormTest() {
+    Auction auction = new Auction("Cups of tea", THOUSAND, universalNow().plusHours(1));
+    auction.addBid(new Bid("martin", new BigDecimal("1500.5")));
+    assertThat(BinaryAuctionEncoder.encode(auction).length() * 2, lessThan(AuctionEncoder.encode(auction).length()));
+  }
+
+  @Test
+  @Tag("Unit")
+  void readsBidPriceTest() {
+    assertThat(BinaryAuctionEncoder.readBidCents(Buffer.buffer(new byte[]{(byte) 0xb9, 0x60})), is(12345L));
+    assertThrows(IllegalArgumentException.class, () -> BinaryAuctionEncoder.readBidCents(Buffer.buffer()));
+    assertThrows(IllegalArgumentException.class, () -> BinaryAuctionEncoder.readBidCents(Buffer.buffer(new byte[]{(byte) 0xb9})));
+    assertThrows(IllegalArgumentException.class, () -> BinaryAuctionEncoder.readBidCents(Buffer.buffer(new byte[]{1, 2})));
+    byte[] beyondTheMaximum = {-127, -128, -23, -125, -79, -34, 22};// 10^14 + 1 cents
+    assertThrows(IllegalArgumentException.class, () -> BinaryAuctionEncoder.readBidCents(Buffer.buffer(beyondTheMaximum)));
+  }
+
+  @Test
+  @Tag("Unit")
+  void decodesListingTest() {
+    List<Auction> auctions = Arrays.asList(new Auction("Cups of tea", THOUSAND), new Auction("Spoons", TEN));
+    assertThat(BinaryAuctionEncoder.decodeListing(Buffer.buffer(new byte[]{2})
+        .appendBuffer(BinaryAuctionEncoder.encode(auctions.get(0)))
+        .appendBuffer(BinaryAuctionEncoder.encode(auctions.get(1)))),
+      contains(json(auctions.get(0)), json(auctions.get(1))));
+  }
+
+  @Test
+  @Tag("Unit")
+  void decodesUpdatesTest() {
+    final Buffer frame = BinaryAuctionEncoder.encodeUpdate(3, 1234567, 0, "Jöhn Doe")
+      .appendBuffer(BinaryAuctionEncoder.encodeUpdate(300, 1234600, 0, null));
+    assertThat(BinaryAuctionEncoder.encodeUpdate(300, 1234600, 0, null).length(), is(6));
+    final List<String> buyers = new ArrayList<>();
+    assertThat(BinaryAuctionEncoder.decodeUpdates(frame, buyers), contains(
+      new JsonObject().put("index", 3L).put("price", 12345.67).put("buyer", "Jöhn Doe"),
+      new JsonObject().put("index", 300L).put("price", 12346.0).put("buyer", "Jöhn Doe")));
+    assertThat(buyers, contains("Jöhn Doe"));
+    assertThrows(IllegalArgumentException.class, () ->
+      BinaryAuctionEncoder.decodeUpdates(BinaryAuctionEncoder.encodeUpdate(0, 100, 2, null), new ArrayList<>()));
+  }
+
+  private static void assertDecodedToTheJsonForm(Auction auction) {
+    assertThat(BinaryAuctionEncoder.decode(BinaryAuctionEncoder.encode(auction)), is(json(auction)));
+  }
+
+  private static JsonObject json(Auction auction) {
+    final JsonObject json = new JsonObject(AuctionEncoder.encode(auction).toString());
+    final ZonedDateTime ending = ZonedDateTime.parse(json.getString("ending"));
+    return json.put("ending", ending.withZoneSameInstant(ZoneOffset.UTC).toString());// the same instant, in UTC
+  }
+}
@@ -0,0 +1,100 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.github.glytching.junit.extension.system.SystemProperty;
+import io.github.glytching.junit.extension.system.SystemPropertyExtension;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.KeyStoreOptions;
+import io.vertx.ext.auth.User;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.jwt.JWTOptions;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+@ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
+@SystemProperty(name = "vertx.environment", value = "JUNIT")
+class CachingJWTAuthTest {
+
+  @Test
+  void verifiesATokenOnceTest(Vertx vertx, VertxTestContext testContext) {
+    final CountingJWTAuth delegate = new CountingJWTAuth(vertx);
+    final CachingJWTAuth auth = new CachingJWTAuth(delegate, 10);
+    final String token = auth.generateToken(new JsonObject().put("sub", "martin"), new JWTOptions().setExpiresInMinutes(60));
+    auth.authenticate(new JsonObject().put("jwt", token), testContext.succeeding(first ->
+      auth.authenticate(new JsonObject().put("jwt", token), testContext.succeeding(second -> testContext.verify(() -> {
+        assertThat(second.principal().getString("sub"), is("martin"));
+        assertThat(delegate.verifications.get(), is(1));
+        testContext.completeNow();
+      })))));
+  }
+
+  @Test
+  void verifiesAnExpiredTokenAgainTest(Vertx vertx, VertxTestContext testContext) {
+    final CountingJWTAuth delegate = new CountingJWTAuth(vertx);
+    final CachingJWTAuth auth = new CachingJWTAuth(delegate, 10);
+    final String token = auth.generateToken(new JsonObject().put("sub", "martin"), new JWTOptions().setExpiresInSeconds(1));
+    auth.authenticate(new JsonObject().put("jwt", token), testContext.succeeding(first ->
+      vertx.setTimer(1100, timer ->
+        auth.authenticate(new JsonObject().put("jwt", token), testContext.failing(expired -> testContext.verify(() -> {
+          assertThat(delegate.verifications.get(), is(2));
+          assertThat(auth.size(), is(0));
+          testContext.completeNow();
+        }))))));
+  }
+
+  @Test
+  void rejectsAnInvalidTokenTest(Vertx vertx, VertxTestContext testContext) {
+    final CachingJWTAuth auth = new CachingJWTAuth(new CountingJWTAuth(vertx), 10);
+    final String token = auth.generateToken(new JsonObject().put("sub", "martin"), new JWTOptions().setExpiresInMinutes(60));
+    auth.authenticate(new JsonObject().put("jwt", token.substring(0, token.length() - 2)), testContext.failing(invalid -> testContext.verify(() -> {
+      assertThat(auth.size(), is(0));
+      testContext.completeNow();
+    })));
+  }
+
+  @Test
+  void isBoundedTest(Vertx vertx, VertxTestContext testContext) {
+    final CachingJWTAuth auth = new CachingJWTAuth(new CountingJWTAuth(vertx), 2);
+    for (int i = 0; i < 5; i++) {
+      final String token = auth.generateToken(new JsonObject().put("sub", "user" + i), new JWTOptions().setExpiresInMinutes(60));
+      auth.authenticate(new JsonObject().put("jwt", token), testContext.succeeding(user -> testContext.verify(() ->
+        assertThat(auth.size(), lessThanOrEqualTo(2)))));
+    }
+    testContext.completeNow();
+  }
+
+  private static final class CountingJWTAuth implements JWTAuth {
+    private final JWTAuth delegate;
+    private final AtomicInteger verifications = new AtomicInteger();
+
+    private CountingJWTAuth(Vertx vertx) {
+      delegate = JWTAuth.create(vertx, new JWTAuthOptions()
+        .setKeyStore(new KeyStoreOptions()
+          .setType("jceks")
+          .setPath("keystore.jceks")
+          .setPassword("secret")));
+    }
+
+    @Override
+    public void authenticate(JsonObject authInfo, Handler<AsyncResult<User>> resultHandler) {
+      verifications.incrementAndGet();
+      delegate.authenticate(authInfo, resultHandler);
+    }
+
+    @Override
+    public String generateToken(JsonObject claims, JWTOptions options) {
+      return delegate.generateToken(claims, options);
+    }
+  }
+}
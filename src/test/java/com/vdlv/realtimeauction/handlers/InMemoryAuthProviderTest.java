@@ -0,0 +1,80 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.github.glytching.junit.extension.system.SystemProperty;
+import io.github.glytching.junit.extension.system.SystemPropertyExtension;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+@ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
+@SystemProperty(name = "vertx.environment", value = "JUNIT")
+class InMemoryAuthProviderTest {
+
+  @Test
+  void authenticatesTest(Vertx vertx, VertxTestContext testContext) {
+    final InMemoryAuthProvider provider = InMemoryAuthProvider.create(vertx, "vertx-users.properties", 2);
+    provider.authenticate(credentials("user1", "test123"), testContext.succeeding(user ->
+      user.isAuthorized("play_golf", testContext.succeeding(golf ->
+        user.isAuthorized("role:administrator", testContext.succeeding(administrator -> testContext.verify(() -> {
+          assertThat(user.principal().getString("username"), is("user1"));
+          assertThat(golf, is(true));
+          assertThat(administrator, is(false));
+          provider.close();
+          testContext.completeNow();
+        })))))));
+  }
+
+  @Test
+  void rejectsWrongCredentialsTest(Vertx vertx, VertxTestContext testContext) {
+    final InMemoryAuthProvider provider = InMemoryAuthProvider.create(vertx, "vertx-users.properties", 2);
+    final Checkpoint rejected = testContext.checkpoint(3);
+    provider.authenticate(credentials("martin", "wrong"), testContext.failing(failure -> rejected.flag()));
+    provider.authenticate(credentials("nobody", "test123"), testContext.failing(failure -> rejected.flag()));
+    provider.authenticate(new JsonObject().put("username", "martin"), testContext.failing(failure -> rejected.flag()));
+  }
+
+  @Test
+  void throttlesAUsernameTest(Vertx vertx, VertxTestContext testContext) throws InterruptedException {
+    final InMemoryAuthProvider provider = InMemoryAuthProvider.create(vertx, "vertx-users.properties", 1);
+    final WorkerExecutor pool = vertx.createSharedWorkerExecutor(InMemoryAuthProvider.EXECUTOR, 1);
+    final CountDownLatch busy = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    pool.executeBlocking(future -> {// keeps the verifier busy, the attempts are pending
+      busy.countDown();
+      try {
+        release.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      future.complete();
+    }, false, done -> {
+    });
+    assertThat(busy.await(5, TimeUnit.SECONDS), is(true));
+
+    final Checkpoint authenticated = testContext.checkpoint(InMemoryAuthProvider.MAX_PENDING_PER_USER + 1);
+    for (int i = 0; i < InMemoryAuthProvider.MAX_PENDING_PER_USER; i++) {
+      provider.authenticate(credentials("martin", "test123"), testContext.succeeding(user -> authenticated.flag()));
+    }
+    provider.authenticate(credentials("martin", "test123"), testContext.failing(throttled -> testContext.verify(() -> {
+      assertThat(throttled.getMessage(), containsString("Too many"));
+      provider.authenticate(credentials("tom", "test123"), testContext.succeeding(user -> authenticated.flag()));
+      release.countDown();
+    })));
+  }
+
+  private static JsonObject credentials(String username, String password) {
+    return new JsonObject().put("username", username).put("password", password);
+  }
+}
@@ -0,0 +1,87 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A rough benchmark of the encoding of a page of auctions (not run by the build): the bytes allocated and the p50/p99
+ * latency per page of 100 auctions, for the JsonArray tree encoded into a String (the former listing), the
+ * {@link AuctionEncoder} and the encoded forms cached by the auctions.
+ * Run it with a fixed heap, e.g. {@code java -Xms2g -Xmx2g -cp target/test-classes:target/classes:<deps> ...ListingBenchmark}.
+ */
+public final class ListingBenchmark {
+  private static final int AUCTIONS = 10_000;
+  private static final int PAGE = 100;
+  private static final int PAGES = 20_000;
+  private static final int ROUNDS = 5;
+
+  private ListingBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    final Auction[] auctions = new Auction[AUCTIONS];
+    for (int a = 0; a < AUCTIONS; a++) {
+      auctions[a] = new Auction("Benchmark product " + a, Util.ZERO, Util.universalNow().plusHours(1));
+      auctions[a].addBid(new Bid("Buyer " + a % 100, BigDecimal.valueOf(100_00L + a, 2)));
+    }
+    final Function<Auction, Buffer> cached = AuctionEncoder::encode;
+    for (int round = 0; round < ROUNDS; round++) {
+      run("tree", auctions, ListingBenchmark::tree);
+      run("direct", auctions, page -> {
+        final List<Buffer> items = new ArrayList<>(page.size());
+        page.forEach(auction -> items.add(AuctionEncoder.encode(auction)));
+        return items;
+      });
+      run("cached", auctions, page -> {
+        final List<Buffer> items = new ArrayList<>(page.size());
+        page.forEach(auction -> items.add(auction.encode(cached)));
+        return items;
+      });
+    }
+  }
+
+  private static Object tree(List<Auction> page) {
+    final JsonArray resp = new JsonArray();
+    page.forEach(auction -> resp.add(new JsonObject().
+      put("id", auction.getId()).
+      put("product", auction.getProduct()).
+      put("price", auction.getCurrentAuctionValue().doubleValue()).
+      put("ending", auction.getEndingTime().toString()).
+      put("buyer", auction.getCurrentBuyer())));
+    return Buffer.buffer(resp.encode());// as written by HttpServerResponse.end(String)
+  }
+
+  private static void run(String name, Auction[] auctions, Function<List<Auction>, Object> encoder) {
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    final long thread = Thread.currentThread().getId();
+    final long[] latencies = new long[PAGES];
+    final List<Auction> page = new ArrayList<>(PAGE);
+    int sink = 0;
+    final long allocated = threads.getThreadAllocatedBytes(thread);
+    for (int p = 0; p < PAGES; p++) {
+      page.clear();
+      final int from = (p * PAGE) % AUCTIONS;
+      for (int i = 0; i < PAGE; i++) {
+        page.add((Auction) auctions[from + i].copy());// as handed out by the repository
+      }
+      final long start = System.nanoTime();
+      sink += encoder.apply(page).hashCode() & 1;
+      latencies[p] = System.nanoTime() - start;
+    }
+    final double bytesPerPage = (threads.getThreadAllocatedBytes(thread) - allocated) / (double) PAGES;
+    Arrays.sort(latencies);
+    System.out.printf("%-6s: %6.1f KB allocated per page, p50 %5.1f us, p99 %5.1f us (%d)%n", name, bytesPerPage / 1024,
+      latencies[PAGES / 2] / 1e3, latencies[PAGES * 99 / 100] / 1e3, sink);
+  }
+}
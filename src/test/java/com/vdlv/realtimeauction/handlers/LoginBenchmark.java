@@ -0,0 +1,93 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.AuthProvider;
+import io.vertx.ext.auth.shiro.ShiroAuth;
+import io.vertx.ext.auth.shiro.ShiroAuthOptions;
+import io.vertx.ext.auth.shiro.ShiroAuthRealmType;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A rough benchmark of a login storm (not run by the build): the logins per second and their p50/p99 latency, with a
+ * given number of logins in flight, for the Shiro properties realm and for the {@link InMemoryAuthProvider}, both
+ * reading the same users file.
+ * Run it with {@code java -cp target/test-classes:target/classes:<deps> ...LoginBenchmark}.
+ */
+public final class LoginBenchmark {
+  private static final int USERS = 10_000;
+  private static final int LOGINS = 100_000;
+  private static final int IN_FLIGHT = 256;
+  private static final int ROUNDS = 3;
+
+  private LoginBenchmark() {
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    final Path file = Files.createTempFile("users", ".properties");
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+      for (int u = 0; u < USERS; u++) {
+        out.println("user.user" + u + " = password" + u + ",bidder");
+      }
+      out.println("role.bidder = bid");
+    }
+    final Vertx vertx = Vertx.vertx();
+    final AuthProvider shiro = ShiroAuth.create(vertx, new ShiroAuthOptions().setType(ShiroAuthRealmType.PROPERTIES)
+      .setConfig(new JsonObject().put("properties_path", "file:" + file)));
+    final InMemoryAuthProvider memory = InMemoryAuthProvider.create(vertx, file.toString(), Runtime.getRuntime().availableProcessors());
+    for (int round = 0; round < ROUNDS; round++) {
+      run(vertx, "shiro", shiro);
+      run(vertx, "in-memory", memory);
+    }
+    memory.close();
+    Files.delete(file);
+    System.exit(0);// the Shiro realm keeps a scheduler thread alive
+  }
+
+  private static void run(Vertx vertx, String name, AuthProvider provider) throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(LOGINS);
+    final AtomicInteger sent = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final long[] latencies = new long[LOGINS];
+    final long start = System.nanoTime();
+    vertx.runOnContext(v -> {// as the login handler, on an event loop
+      for (int i = 0; i < IN_FLIGHT; i++) {
+        login(provider, sent, latencies, failures, done);
+      }
+    });
+    done.await();
+    final long elapsed = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    System.out.printf("%-9s: %8.0f logins/s, p50 %7.1f us, p99 %8.1f us, %d failures%n", name, LOGINS / (elapsed / 1e9),
+      latencies[LOGINS / 2] / 1e3, latencies[LOGINS * 99 / 100] / 1e3, failures.get());
+  }
+
+  /**
+   * Send a login, and the next one once it is done.
+   */
+  private static void login(AuthProvider provider, AtomicInteger sent, long[] latencies, AtomicInteger failures,
+                            CountDownLatch done) {
+    final int login = sent.getAndIncrement();
+    if (login >= LOGINS) {
+      return;
+    }
+    final int user = ThreadLocalRandom.current().nextInt(USERS);
+    final long start = System.nanoTime();
+    provider.authenticate(new JsonObject().put("username", "user" + user).put("password", "password" + user), res -> {
+      latencies[login] = System.nanoTime() - start;
+      if (res.failed()) {
+        failures.incrementAndGet();
+      }
+      done.countDown();
+      login(provider, sent, latencies, failures, done);
+    });
+  }
+}
@@ -0,0 +1,145 @@
+package com.vdlv.realtimeauction.handlers;
+
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.WriteStream;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class OutboundQueueTest {
+
+  @Test
+  @Tag("Unit")
+  void writesAtOnceWhileTheSocketKeepsUpTest() {
+    final Socket socket = new Socket();
+    final OutboundQueue<String> queue = socket.queue(2, OutboundQueue.Policy.DISCONNECT);
+    queue.offer("a", "a1");
+    queue.offer("a", "a2");
+    assertThat(socket.written, is(Arrays.asList("a1", "a2")));
+    assertThat(queue.depth(), is(0));
+    assertThat(queue.isWritable(), is(true));
+  }
+
+  @Test
+  @Tag("Unit")
+  void conflatesTheFramesOfAnAuctionTest() {
+    final Socket socket = new Socket();
+    final OutboundQueue<String> queue = socket.queue(2, OutboundQueue.Policy.CONFLATE);
+    socket.full = true;
+    queue.offer("a", "a1");
+    queue.offer("b", "b1");
+    queue.offer("a", "a2");// replaces a1, keeping its place
+    queue.offer(null, "closed");// never conflated, drops the oldest
+    assertThat(queue.depth(), is(2));
+    assertThat(queue.getConflated(), is(1L));
+    assertThat(queue.getDropped(), is(1L));
+    assertThat(queue.isWritable(), is(false));
+    socket.drain();
+    assertThat(socket.written, is(Arrays.asList("b1", "closed")));
+    assertThat(queue.isWritable(), is(true));
+  }
+
+  @Test
+  @Tag("Unit")
+  void dropsTheOldestFramesTest() {
+    final Socket socket = new Socket();
+    final OutboundQueue<String> queue = socket.queue(2, OutboundQueue.Policy.DROP_OLDEST);
+    socket.full = true;
+    queue.offer("a", "a1");
+    queue.offer("a", "a2");
+    queue.offer("a", "a3");
+    assertThat(queue.getDropped(), is(1L));
+    socket.drain();
+    queue.offer("a", "a4");// behind the queued frames
+    assertThat(socket.written, is(Arrays.asList("a2", "a3", "a4")));
+    assertThat(queue.toJson().getLong("written"), is(3L));
+  }
+
+  @Test
+  @Tag("Unit")
+  void disconnectsTheSlowSubscribersTest() {
+    final Socket socket = new Socket();
+    final OutboundQueue<String> queue = socket.queue(2, OutboundQueue.Policy.DISCONNECT);
+    socket.full = true;
+    queue.offer("a", "a1");
+    queue.offer("a", "a2");
+    assertThat(socket.closed, is(false));
+    queue.offer("a", "a3");
+    assertThat(socket.closed, is(true));
+    socket.drain();
+    assertThat(socket.written, is(Collections.emptyList()));
+    final JsonObject metrics = queue.toJson();
+    assertThat(metrics.getInteger("depth"), is(0));
+    assertThat(metrics.getLong("dropped"), is(3L));
+    assertThat(metrics.getString("policy"), is("DISCONNECT"));
+  }
+
+  @Test
+  @Tag("Unit")
+  void parsesThePoliciesTest() {
+    assertThat(OutboundQueue.Policy.parse("conflate"), is(OutboundQueue.Policy.CONFLATE));
+    assertThat(OutboundQueue.Policy.parse("drop-oldest"), is(OutboundQueue.Policy.DROP_OLDEST));
+    assertThat(OutboundQueue.Policy.parse(" Disconnect "), is(OutboundQueue.Policy.DISCONNECT));
+    assertThrows(IllegalArgumentException.class, () -> OutboundQueue.Policy.parse("block"));
+  }
+
+  /**
+   * A socket whose write queue is full on demand.
+   */
+  private static final class Socket implements WriteStream<String> {
+    private final List<String> written = new ArrayList<>();
+    private boolean full;
+    private boolean closed;
+    private Handler<Void> drainHandler;
+
+    private OutboundQueue<String> queue(int capacity, OutboundQueue.Policy policy) {
+      return new OutboundQueue<>("test", "fake", this, written::add, () -> closed = true, capacity, policy);
+    }
+
+    private void drain() {
+      full = false;
+      drainHandler.handle(null);
+    }
+
+    @Override
+    public WriteStream<String> exceptionHandler(Handler<Throwable> handler) {
+      return this;
+    }
+
+    @Override
+    public WriteStream<String> write(String data) {
+      written.add(data);
+      return this;
+    }
+
+    @Override
+    public void end() {
+      closed = true;
+    }
+
+    @Override
+    public WriteStream<String> setWriteQueueMaxSize(int maxSize) {
+      return this;
+    }
+
+    @Override
+    public boolean writeQueueFull() {
+      return full;
+    }
+
+    @Override
+    public WriteStream<String> drainHandler(Handler<Void> handler) {
+      drainHandler = handler;
+      return this;
+    }
+  }
+}
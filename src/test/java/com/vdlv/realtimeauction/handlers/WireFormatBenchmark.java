@@ -0,0 +1,52 @@
+package com.vdlv.realtimeauction.handlers;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.buffer.Buffer;
+
+import java.math.BigDecimal;
+import java.util.function.Function;
+
+/**
+ * A rough benchmark of the wire formats of the auctions (not run by the build): the size of a page of 100 auctions and
+ * the encoding throughput (uncached) of the JSON form ({@link AuctionEncoder}) and of the binary form
+ * ({@link BinaryAuctionEncoder}).
+ * Run it with a fixed heap, e.g. {@code java -Xms2g -Xmx2g -cp target/test-classes:target/classes:<deps> ...WireFormatBenchmark}.
+ */
+public final class WireFormatBenchmark {
+  private static final int AUCTIONS = 10_000;
+  private static final int PAGE = 100;
+  private static final int ENCODINGS = 2_000_000;
+  private static final int ROUNDS = 5;
+
+  private WireFormatBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    final Auction[] auctions = new Auction[AUCTIONS];
+    for (int a = 0; a < AUCTIONS; a++) {
+      auctions[a] = new Auction("Benchmark product " + a, Util.ZERO, Util.universalNow().plusHours(1));
+      auctions[a].addBid(new Bid("Buyer " + a % 100, BigDecimal.valueOf(100_00L + a, 2)));
+    }
+    for (int round = 0; round < ROUNDS; round++) {
+      run("json", auctions, AuctionEncoder::encode, 2 + PAGE - 1);// brackets and commas
+      run("binary", auctions, BinaryAuctionEncoder::encode, 1);// the count
+    }
+  }
+
+  private static void run(String name, Auction[] auctions, Function<Auction, Buffer> encoder, int framing) {
+    long pageBytes = framing;
+    for (int i = 0; i < PAGE; i++) {
+      pageBytes += encoder.apply(auctions[i]).length();
+    }
+    int sink = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < ENCODINGS; i++) {
+      sink += encoder.apply(auctions[i % AUCTIONS]).length();
+    }
+    final long elapsed = System.nanoTime() - start;
+    System.out.printf("%-6s: %5d bytes per page, %5.1f ns per auction, %5.1f MB/s (%d)%n", name, pageBytes,
+      elapsed / (double) ENCODINGS, sink / (elapsed / 1e3), sink & 1);
+  }
+}
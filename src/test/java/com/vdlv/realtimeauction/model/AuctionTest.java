@@ -7,6 +7,8 @@ import org.junit.jupiter.api.Test;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static com.vdlv.realtimeauction.model.Util.*;
 import static java.time.temporal.ChronoUnit.MILLIS;
@@ -33,6 +35,37 @@ class AuctionTest {
     assertThat(auction.getEndingTime(), within(5, MINUTES, Util.universalNow()));
   }
 
+  @Test
+  @Tag("Unit")
+  void lifecycleStatesTest() throws InterruptedException {
+    Auction auction = new Auction(PRODUCT_TEST_1, ONE_HUNDRED, Util.universalNow().plus(10, MILLIS));
+    assertThat(auction.getState(), is(Auction.State.SCHEDULED));
+    assertThat(auction.activate(), is(Auction.State.OPEN));
+    Thread.sleep(15);
+    assertFalse(auction.isClosed());// the scheduler has not closed it yet
+    assertTrue(auction.close());
+    assertFalse(auction.close());
+    assertTrue(auction.isClosed());
+    assertThat(((Auction) auction.copy()).getState(), is(Auction.State.CLOSED));
+    assertThat(auction.activate(), is(Auction.State.CLOSED));
+  }
+
+  @Test
+  @Tag("Unit")
+  void copiesKeepTheirOwnBidsTest() {
+    Auction auction = new Auction(PRODUCT_TEST_1, ONE_HUNDRED);
+    assertTrue(auction.addBid(new Bid(BUYER_1, TWO_HUNDRED)));
+    Auction copy = (Auction) auction.copy();
+    assertTrue(auction.addBid(new Bid(BUYER_1, FOUR_HUNDRED)));
+    assertTrue(copy.addBid(new Bid(BUYER_2, THREE_HUNDRED)));// same slot of the shared history
+    assertThat(auction.getCurrentBuyer(), is(BUYER_1));
+    assertThat(auction.getCurrentAuctionValue(), is(FOUR_HUNDRED));
+    assertThat(copy.getCurrentBuyer(), is(BUYER_2));
+    assertThat(copy.getBids().get(0).getPrice(), is(TWO_HUNDRED));
+    assertThat(copy.getBids().get(1).getPrice(), is(THREE_HUNDRED));
+    assertThat(auction.getBidCount(), is(2));
+  }
+
   @Test
   @Tag("Unit")
   void ctorNullProduct() {
@@ -181,4 +214,23 @@ class AuctionTest {
     assertThat(auctions.get(2).getProduct(), is(PRODUCT_TEST_1 + ".3"));
   }
 
+  @Test
+  @Tag("Unit")
+  void encodedFormIsCachedPerVersionTest() {
+    final AtomicInteger calls = new AtomicInteger();
+    final Function<Auction, String> encoder = auction -> auction.getCurrentBuyer() + "@" + calls.incrementAndGet();
+    Auction auction = new Auction(PRODUCT_TEST_1, ONE_HUNDRED);
+    assertThat(auction.getVersion(), is(0));
+    String first = auction.encode(encoder);
+    assertThat(auction.encode(encoder), sameInstance(first));
+    assertThat(((Auction) auction.copy()).encode(encoder), sameInstance(first));// shared with the copies
+
+    assertTrue(auction.addBid(new Bid(BUYER_1, TWO_HUNDRED)));
+    assertThat(auction.getVersion(), is(1));
+    String second = auction.encode(encoder);
+    assertThat(second, is(BUYER_1 + "@2"));
+    assertFalse(auction.addBid(new Bid(BUYER_2, ONE_HUNDRED)));// a rejected bid keeps the version
+    assertThat(auction.encode(encoder), sameInstance(second));
+    assertThat(calls.get(), is(2));
+  }
 }
@@ -0,0 +1,81 @@
+package com.vdlv.realtimeauction.model;
+
+import java.math.BigDecimal;
+import java.time.ZonedDateTime;
+
+/**
+ * A rough benchmark of the bid history (not run by the build): the heap retained per recorded bid and the throughput
+ * of {@link Auction#addBid(Bid)} for accepted and rejected bids, over 1000 auctions of 1000 bids.
+ * Run it with a fixed heap, e.g. {@code java -Xms2g -Xmx2g -cp target/test-classes:target/classes:<deps> ...BidBenchmark}.
+ */
+public final class BidBenchmark {
+  private static final int AUCTIONS = 1_000;
+  private static final int BIDS_PER_AUCTION = 1_000;
+  private static final int BUYERS = 100;
+  private static final int ROUNDS = 10;
+
+  private BidBenchmark() {
+  }
+
+  public static void main(String[] args) {
+    final String[] buyers = new String[BUYERS];
+    for (int i = 0; i < BUYERS; i++) {
+      buyers[i] = "Buyer " + i;
+    }
+    final BigDecimal[] prices = new BigDecimal[BIDS_PER_AUCTION];
+    for (int i = 0; i < BIDS_PER_AUCTION; i++) {
+      prices[i] = BigDecimal.valueOf(100_00L + i, 2);
+    }
+    final ZonedDateTime now = Util.universalNow();
+
+    System.out.printf("retained heap: %.1f bytes per bid%n", retainedBytesPerBid(buyers, prices, now));
+    for (int round = 0; round < ROUNDS; round++) {
+      final Auction[] auctions = new Auction[AUCTIONS];
+      for (int a = 0; a < AUCTIONS; a++) {
+        auctions[a] = new Auction("Benchmark " + a, Util.ZERO, now.plusHours(1));
+      }
+      long start = System.nanoTime();
+      for (Auction auction : auctions) {
+        for (int i = 0; i < BIDS_PER_AUCTION; i++) {
+          auction.addBid(new Bid(buyers[i % BUYERS], prices[i], now));
+        }
+      }
+      final long accepted = System.nanoTime() - start;
+      start = System.nanoTime();
+      int rejected = 0;
+      for (Auction auction : auctions) {
+        for (int i = 0; i < BIDS_PER_AUCTION; i++) {
+          if (!auction.addBid(new Bid(buyers[i % BUYERS], prices[i], now))) {
+            rejected++;
+          }
+        }
+      }
+      final long rejection = System.nanoTime() - start;
+      final long bids = AUCTIONS * (long) BIDS_PER_AUCTION;
+      System.out.printf("round %d: accepted %.1f M bids/s, rejected %.1f M bids/s (%d)%n", round,
+        bids * 1e3 / accepted, bids * 1e3 / rejection, rejected);
+    }
+  }
+
+  private static double retainedBytesPerBid(String[] buyers, BigDecimal[] prices, ZonedDateTime now) {
+    final long before = usedHeap();
+    final Auction[] auctions = new Auction[AUCTIONS];
+    for (int a = 0; a < AUCTIONS; a++) {
+      auctions[a] = new Auction("Benchmark " + a, Util.ZERO, now.plusHours(1));
+      for (int i = 0; i < BIDS_PER_AUCTION; i++) {
+        auctions[a].addBid(new Bid(buyers[i % BUYERS], prices[i].add(BigDecimal.ONE), now.plusNanos(i * 1_000L)));
+      }
+    }
+    final long after = usedHeap();
+    final int count = auctions[AUCTIONS - 1].getBidCount();// keeps the auctions reachable
+    return (after - before) / (double) (AUCTIONS * (long) count);
+  }
+
+  private static long usedHeap() {
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -1,5 +1,7 @@
 package com.vdlv.realtimeauction.model;
 
+import java.math.BigDecimal;
+
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -9,6 +11,7 @@ import static java.time.temporal.ChronoUnit.SECONDS;
 import static org.exparity.hamcrest.date.ZonedDateTimeMatchers.within;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -63,4 +66,21 @@ class BidTest {
     assertNotEquals(bid1, bid2);
   }
 
+  @Test
+  @Tag("Unit")
+  void historiesShareTheNameOfABuyer() {
+    BidHistory history1 = BidHistory.EMPTY.append(new Bid(new String(BUYER_TEST), ONE_HUNDRED));
+    BidHistory history2 = BidHistory.EMPTY.append(new Bid(new String(BUYER_TEST), ONE_HUNDRED));
+    assertThat(history1.get(0).getBuyer(), is(sameInstance(history2.get(0).getBuyer())));
+  }
+
+  @Test
+  @Tag("Unit")
+  void centsAndMicrosRoundTrip() {
+    Bid bid = new Bid(BUYER_TEST, new BigDecimal("1234.56"));
+    assertThat(Bid.fromCents(bid.cents()), is(new BigDecimal("1234.56")));
+    assertThat(Bid.fromMicros(bid.micros()), is(bid.getTime()));
+    assertThat(Bid.fromMicros(-1).toString(), is("1969-12-31T23:59:59.999999Z"));
+  }
+
 }
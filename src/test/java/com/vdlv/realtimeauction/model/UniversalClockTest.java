@@ -0,0 +1,74 @@
+package com.vdlv.realtimeauction.model;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static com.vdlv.realtimeauction.model.Util.*;
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static org.exparity.hamcrest.date.ZonedDateTimeMatchers.within;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Tests suite for the application clocks")
+class UniversalClockTest {
+
+  private static final Instant START = Instant.parse("2019-06-01T10:15:30.123456Z");
+
+  @AfterEach
+  void restoreSystemClock() {
+    UniversalClock.use(UniversalClock.system());
+  }
+
+  @Test
+  @Tag("Unit")
+  void systemClockTest() {
+    assertThat(universalNow(), within(1, SECONDS, Instant.now().atZone(ZoneOffset.UTC)));
+    assertThat(universalNow().getZone(), is(ZoneOffset.UTC));
+  }
+
+  @Test
+  @Tag("Unit")
+  void virtualClockTest() {
+    VirtualClock clock = new VirtualClock(START);
+    UniversalClock.use(clock);
+    assertThat(universalNow().toInstant(), is(START));
+    clock.advance(Duration.ofHours(3));
+    assertThat(universalNow().toInstant(), is(START.plus(Duration.ofHours(3))));
+    assertThat(new Bid("John Doe", TEN).getTime().toInstant(), is(START.plus(Duration.ofHours(3))));
+  }
+
+  @Test
+  @Tag("Unit")
+  void auctionsFollowTheClockTest() {
+    VirtualClock clock = new VirtualClock(START);
+    UniversalClock.use(clock);
+    Auction auction = new Auction("Cups of tea", TEN);
+    assertThat(auction.getEndingTime().toInstant(), is(START.plus(Duration.ofMinutes(auctionValidityInMinutes()))));
+    clock.advance(Duration.ofMinutes(auctionValidityInMinutes()));
+    assertFalse(auction.isClosed());
+    assertTrue(auction.addBid(new Bid("John Doe", TEN)));// at the ending time
+    clock.advance(Duration.ofNanos(1_000));
+    assertTrue(auction.isClosed());
+    assertFalse(auction.addBid(new Bid("Jane Doe", TWENTY)));
+  }
+
+  @Test
+  @Tag("Unit")
+  void cachedClockTest() {
+    VirtualClock source = new VirtualClock(START);
+    CachedClock clock = new CachedClock(source);
+    source.advance(Duration.ofMillis(5));
+    assertThat(clock.instant(), is(START));
+    clock.refresh();
+    assertThat(clock.instant(), is(START.plusMillis(5)));
+    assertThat(clock.millis(), is(START.toEpochMilli() + 5));
+  }
+}
@@ -0,0 +1,129 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.github.glytching.junit.extension.system.SystemProperty;
+import io.github.glytching.junit.extension.system.SystemPropertyExtension;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static com.vdlv.realtimeauction.model.Util.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
+@SystemProperty(name = "vertx.environment", value = "JUNIT")
+class AuctionArchiveTest {
+
+  private final static String BUYER = "John Doe";
+  private final static int CACHE_SIZE = 2;
+
+  @Test
+  void closedAuctionsAreArchivedTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openArchive(directory, CACHE_SIZE);
+    ZonedDateTime now = universalNow();
+    Auction sold = new Auction("Carrots and potatoes", FIFTEEN, now.minusHours(2));
+    sold.addBid(new Bid(BUYER, TWENTY, now.minusHours(3)));
+    repo.upsertAuction(sold);
+    for (int i = 1; i <= 10; i++) {
+      repo.upsertAuction(new Auction("Old auction " + i, THOUSAND, now.minusHours(1).minusMinutes(i)));
+    }
+    Auction recentlyClosed = repo.upsertAuction(new Auction("Mercedes Class A", THOUSAND, now.minusSeconds(1)));
+    Auction open = repo.upsertAuction(new Auction("Google TV", THOUSAND));
+
+    assertThat(repo.archiveClosedAuctions(Duration.ofMinutes(5)), is(11));
+    assertThat(repo.archiveClosedAuctions(Duration.ofMinutes(5)), is(0));
+
+    List<Auction> closed = repo.findClosedAuctions(0, 100);
+    assertThat(closed.size(), is(12));
+    assertThat(closed.get(0).getId(), is(recentlyClosed.getId()));// the live closed auctions come first
+    assertThat(closed.get(1).getProduct(), is("Old auction 1"));
+    assertThat(closed.get(11).getId(), is(sold.getId()));
+    assertThat(repo.findClosedAuctions(10, 5).size(), is(2));
+    assertThat(repo.findClosedAuctionsAfter(AuctionCursor.of(closed.get(5)), 100).size(), is(6));
+    assertThat(repo.findAuctions(0, 100).size(), is(13));
+    assertThat(repo.findAuctions(0, 100).get(0).getId(), is(open.getId()));
+
+    Auction archived = repo.findAuctionById(sold.getId()).get();
+    assertThat(archived.getBidCount(), is(1));
+    assertThat(archived.getCurrentBuyer(), is(BUYER));
+    BidOutcome rejected = repo.recordABid(sold.getId(), new Bid(BUYER, THOUSAND));
+    assertThat(rejected.getStatus(), is(BidOutcome.Status.CLOSED));// archived
+    assertThat(rejected.getAuction().getId(), is(sold.getId()));
+    repo.closeArchive();
+
+    Vertx restarted = Vertx.vertx();
+    try {
+      AuctionRepository restored = new AuctionRepository(restarted);
+      restored.openArchive(directory, CACHE_SIZE);
+      assertThat(restored.findClosedAuctions(0, 100).size(), is(11));
+      assertThat(restored.findAuctionById(sold.getId()).get().getCurrentBuyer(), is(BUYER));
+      restored.closeArchive();
+    } finally {
+      restarted.close();
+    }
+    context.completeNow();
+  }
+
+  @Test
+  void bidForAnArchivedAuctionIsReadOnAWorkerTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openArchive(directory, CACHE_SIZE);
+    Auction sold = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN, universalNow().minusHours(1)));
+    assertThat(repo.archiveClosedAuctions(Duration.ofMinutes(5)), is(1));
+    vertx.runOnContext(v -> repo.recordABid(sold.getId(), new Bid(BUYER, THOUSAND), context.succeeding(rejected -> context.verify(() -> {
+      assertThat(rejected.getStatus(), is(BidOutcome.Status.CLOSED));
+      assertThat(rejected.getAuction().getId(), is(sold.getId()));
+      repo.recordABid("unknown", new Bid(BUYER, THOUSAND), context.succeeding(unknown -> context.verify(() -> {
+        assertThat(unknown.getStatus(), is(BidOutcome.Status.NOT_FOUND));
+        repo.closeArchive();
+        context.completeNow();
+      })));
+    }))));
+  }
+
+  @Test
+  void uncachedArchiveIsListedOnAWorkerTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openArchive(directory, CACHE_SIZE);
+    for (int i = 1; i <= 5; i++) {// more than the cache
+      repo.upsertAuction(new Auction("Old auction " + i, THOUSAND, universalNow().minusHours(1).minusMinutes(i)));
+    }
+    assertThat(repo.archiveClosedAuctions(Duration.ofMinutes(5)), is(5));
+    vertx.runOnContext(v -> {
+      assertThrows(IllegalStateException.class, () -> repo.findClosedAuctions(0, 100));// never blocks an event loop
+      repo.query(() -> repo.findClosedAuctions(0, 100), context.succeeding(closed -> context.verify(() -> {
+        assertThat(closed.size(), is(5));
+        assertThat(closed.get(0).getProduct(), is("Old auction 1"));
+        repo.closeArchive();
+        context.completeNow();
+      })));
+    });
+  }
+
+  @Test
+  void upsertedAuctionLeavesTheArchiveTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openArchive(directory, CACHE_SIZE);
+    Auction auction = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN, universalNow().minusHours(1)));
+    assertThat(repo.archiveClosedAuctions(Duration.ofMinutes(5)), is(1));
+
+    repo.upsertAuction(new Auction(auction.getId(), "Carrots", FIFTEEN, universalNow().plusMinutes(5)));
+    assertThat(repo.findClosedAuctions(0, 10).size(), is(0));
+    assertThat(repo.findOpenAuctions(0, 10).size(), is(1));
+    assertThat(repo.findAuctionById(auction.getId()).get().getProduct(), is("Carrots"));
+    repo.closeArchive();
+    context.completeNow();
+  }
+}
@@ -2,23 +2,37 @@ package com.vdlv.realtimeauction.repository;
 
 import com.vdlv.realtimeauction.model.Auction;
 import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.UniversalClock;
+import com.vdlv.realtimeauction.model.VirtualClock;
 import io.github.glytching.junit.extension.system.SystemProperty;
 import io.github.glytching.junit.extension.system.SystemPropertyExtension;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static com.vdlv.realtimeauction.model.Util.*;
 import static com.vdlv.realtimeauction.repository.AuctionRepository.*;
+import static java.math.RoundingMode.CEILING;
 import static java.time.temporal.ChronoUnit.MILLIS;
 import static org.exparity.hamcrest.date.ZonedDateTimeMatchers.after;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
 @SystemProperty(name = "vertx.environment", value = "JUNIT")
@@ -57,10 +71,130 @@ class AuctionRepositoryTest {
     repo.upsertAuction(CARROTS_AND_POTATOES);
     assertThat(repo.findAuctions(0, 10).size(), is(1));
 
-    repo.recordABid(CARROTS_AND_POTATOES.getId(), new Bid(BUYER, TWENTY));
+    String before = repo.findChangesSince(null).getVersion();
+    BidOutcome accepted = repo.recordABid(CARROTS_AND_POTATOES.getId(), new Bid(BUYER, TWENTY));
+    assertThat(accepted.isAccepted(), is(true));
+    assertThat(accepted.getAuction().getCurrentBuyer(), is(BUYER));
+    assertThat(repo.changeNumber(accepted.getVersion()), is(repo.changeNumber(before) + 1));// the version of the bid
+    assertThat(repo.findChangesSince(accepted.getVersion()).getAuctions().size(), is(0));
 
     Auction auction = repo.findAuctionById(CARROTS_AND_POTATOES.getId()).get();
     assertThat(auction.getCurrentAuctionValue(), is(TWENTY));
+
+    BidOutcome tooLow = repo.recordABid(CARROTS_AND_POTATOES.getId(), new Bid(BUYER, FIFTEEN));
+    assertThat(tooLow.getStatus(), is(BidOutcome.Status.TOO_LOW));
+    assertThat(tooLow.getCurrentPrice(), is(TWENTY));
+    assertThat(tooLow.getVersion(), is(nullValue()));
+    assertThat(repo.recordABid("unknown", new Bid(BUYER, TWENTY)).getStatus(), is(BidOutcome.Status.NOT_FOUND));
+    context.completeNow();
+  }
+
+  @Test
+  void recordBidsTest(Vertx vertx, VertxTestContext context) {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    Auction auction = repo.upsertAuction(new Auction("Batched carrots", FIFTEEN));
+    repo.recordBids(auction.getId(), Arrays.asList(new Bid(BUYER, TWENTY), new Bid(BUYER, FIFTEEN), new Bid(BUYER, THOUSAND)),
+      context.succeeding(recorded -> context.verify(() -> {
+        assertThat(recorded.stream().map(BidOutcome::getStatus).collect(Collectors.toList()),
+          is(Arrays.asList(BidOutcome.Status.ACCEPTED, BidOutcome.Status.TOO_LOW, BidOutcome.Status.ACCEPTED)));
+        assertThat(recorded.get(1).getCurrentPrice(), is(THOUSAND));// the snapshot once all the bids are applied
+        assertThat(repo.findAuctionById(auction.getId()).get().getBidCount(), is(2));
+        repo.recordBids("unknown", Arrays.asList(new Bid(BUYER, TWENTY)), context.succeeding(none -> context.verify(() -> {
+          assertThat(none.get(0).getStatus(), is(BidOutcome.Status.NOT_FOUND));
+          assertThat(none.get(0).getAuction(), is(nullValue()));
+          context.completeNow();
+        })));
+      })));
+  }
+
+  @Test
+  void listingVersionTest(Vertx vertx, VertxTestContext context) {
+    UniversalClock.use(new VirtualClock(Instant.now()));
+    try {
+      AuctionRepository repo = new AuctionRepository(vertx);
+      Auction auction = repo.upsertAuction(new Auction("Versioned carrots", FIFTEEN, universalNow().plusMinutes(1)));
+      String all = repo.listingVersion(null);
+      String open = repo.listingVersion(false);
+      String closed = repo.listingVersion(true);
+      assertThat(repo.listingVersion(null), is(all));
+
+      assertThat(repo.recordABid(auction.getId(), new Bid(BUYER, TWENTY)).isAccepted(), is(true));
+      assertThat(repo.listingVersion(false), not(open));
+      assertThat(repo.listingVersion(null), not(all));
+      assertThat(repo.listingVersion(true), is(closed));// bids only change the open auctions
+      open = repo.listingVersion(false);
+      assertThat(repo.recordABid(auction.getId(), new Bid(BUYER, TWENTY)).isAccepted(), is(false));
+      assertThat(repo.listingVersion(false), is(open));
+
+      ((VirtualClock) UniversalClock.current()).advance(Duration.ofMinutes(2));
+      assertThat(repo.listingVersion(true), not(closed));// closed by the listing itself
+      assertThat(repo.listingVersion(false), not(open));
+      Vertx restarted = Vertx.vertx();
+      assertThat(new AuctionRepository(restarted).listingVersion(true), not(repo.listingVersion(true)));
+      restarted.close();
+    } finally {
+      UniversalClock.use(UniversalClock.system());
+    }
+    context.completeNow();
+  }
+
+  @Test
+  void findChangesSinceTest(Vertx vertx, VertxTestContext context) {
+    UniversalClock.use(new VirtualClock(Instant.now()));
+    try {
+      AuctionRepository repo = new AuctionRepository(vertx);
+      AuctionChanges initial = repo.findChangesSince(null);
+      assertThat(initial.isResyncRequired(), is(true));
+      Auction first = repo.upsertAuction(new Auction("Carrots", FIFTEEN, universalNow().plusMinutes(1)));
+      Auction second = repo.upsertAuction(new Auction("Potatoes", FIFTEEN, universalNow().plusMinutes(2)));
+      repo.recordABid(first.getId(), new Bid(BUYER, TWENTY));
+
+      AuctionChanges changes = repo.findChangesSince(initial.getVersion());
+      assertThat(changes.isResyncRequired(), is(false));
+      assertThat(changes.getAuctions().size(), is(2));
+      assertThat(changes.getAuctions().get(0).getCurrentBuyer(), is(BUYER));
+      assertThat(repo.findChangesSince(changes.getVersion()).getAuctions().size(), is(0));
+
+      ((VirtualClock) UniversalClock.current()).advance(Duration.ofSeconds(90));
+      AuctionChanges closed = repo.findChangesSince(changes.getVersion());
+      assertThat(closed.getAuctions().size(), is(1));
+      assertThat(closed.getAuctions().get(0).getId(), is(first.getId()));
+      assertThat(closed.getAuctions().get(0).isClosed(), is(true));
+      assertThat(repo.findChangesSince("0-" + changes.getVersion()).isResyncRequired(), is(true));// another store
+      assertThat(second.isClosed(), is(false));
+    } finally {
+      UniversalClock.use(UniversalClock.system());
+    }
+    context.completeNow();
+  }
+
+  @Test
+  void concurrentBidsAreNeverLostTest(Vertx vertx, VertxTestContext context) throws InterruptedException {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    Auction auction = new Auction("Concurrent carrots", ZERO);
+    repo.upsertAuction(auction);
+
+    final int threads = 4;
+    final int bidsPerThread = 500;
+    final AtomicInteger accepted = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      new Thread(() -> {
+        for (int i = 0; i < bidsPerThread; i++) {
+          BigDecimal price = BigDecimal.valueOf(i * threads + offset + 1);
+          if (repo.recordABid(auction.getId(), new Bid(BUYER, price)).isAccepted()) {
+            accepted.incrementAndGet();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+    done.await();
+
+    Auction result = repo.findAuctionById(auction.getId()).get();
+    assertThat(result.getBidCount(), is(accepted.get()));
+    assertThat(result.getCurrentAuctionValue(), is(BigDecimal.valueOf(threads * bidsPerThread).setScale(2, CEILING)));
     context.completeNow();
   }
 
@@ -79,6 +213,97 @@ class AuctionRepositoryTest {
     context.completeNow();
   }
 
+  @Test
+  void upsertedAuctionIsIndexedOnceTest(Vertx vertx, VertxTestContext context) throws InterruptedException {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    Auction shortTermAuction = new Auction("Mercedes Class B", THOUSAND, universalNow().plus(10, MILLIS));
+    repo.upsertAuction(shortTermAuction);
+    repo.upsertAuction(shortTermAuction);
+    assertThat(repo.findOpenAuctions(0, 10).size(), is(1));
+    Thread.sleep(15);
+    assertThat(repo.findOpenAuctions(0, 10).size(), is(0));
+    assertThat(repo.findClosedAuctions(0, 10).size(), is(1));
+    repo.upsertAuction(shortTermAuction);
+    assertThat(repo.findAuctions(0, 10).size(), is(1));
+    context.completeNow();
+  }
+
+  @Test
+  void movingAuctionsAreListedOnceTest(Vertx vertx, VertxTestContext context) throws InterruptedException {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    List<Auction> auctions = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      auctions.add(repo.upsertAuction(new Auction("Moving auction " + i, FIFTEEN, universalNow().plus(2 * i, MILLIS))));
+    }
+    Thread writer = new Thread(() -> {
+      for (int i = 0; i < 2000; i++) {
+        repo.closeEndedAuctions();
+        Auction auction = auctions.get(i % auctions.size());
+        repo.upsertAuction(new Auction(auction.getId(), auction.getProduct(), FIFTEEN, auction.getEndingTime()));
+      }
+    });
+    writer.start();
+    while (writer.isAlive()) {
+      List<Auction> listed = repo.findAuctions(0, 100);
+      assertThat(listed.stream().map(Auction::getId).distinct().count(), is(50L));
+      assertThat(listed.size(), is(50));
+    }
+    writer.join();
+    context.completeNow();
+  }
+
+  @Test
+  void closedEventIsPublishedOnceTest(Vertx vertx, VertxTestContext context) {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    Auction shortTermAuction = new Auction("Mercedes Class D", THOUSAND, universalNow().plus(50, MILLIS));
+    shortTermAuction.addBid(new Bid(BUYER, TWO_THOUSAND));
+    repo.upsertAuction(shortTermAuction);
+    assertThat(repo.findAuctionById(shortTermAuction.getId()).get().getState(), is(Auction.State.OPEN));
+    AtomicInteger events = new AtomicInteger();
+    vertx.eventBus().<String>consumer(ClosedAuctionsTopic, message -> context.verify(() -> {
+      JsonObject event = new JsonObject(message.body());
+      assertThat(event.getString("auctionId"), is(shortTermAuction.getId()));
+      assertThat(event.getString("winner"), is(BUYER));
+      assertThat(events.incrementAndGet(), is(1));
+      assertThat(repo.findAuctionById(shortTermAuction.getId()).get().getState(), is(Auction.State.CLOSED));
+      vertx.setTimer(50, id -> context.completeNow());// no duplicate event
+    }));
+    vertx.setPeriodic(10, id -> repo.closeEndedAuctions());
+  }
+
+  @Test
+  void simulatedHoursTest(Vertx vertx, VertxTestContext context) {
+    VirtualClock clock = new VirtualClock(Instant.now());
+    UniversalClock.use(clock);
+    try {
+      AuctionRepository repo = new AuctionRepository(vertx);
+      AtomicInteger closedEvents = new AtomicInteger();
+      vertx.eventBus().consumer(ClosedAuctionsTopic, message -> closedEvents.incrementAndGet());
+      int inserted = 0;
+      for (int second = 0; second < 6 * 3600; second++) {// six hours, second by second
+        if (second % 150 == 0) {
+          repo.upsertAuction(new Auction("Carrots and potatoes " + second, FIFTEEN));
+          inserted++;
+        }
+        for (Auction auction : repo.findOpenAuctions(0, 2)) {
+          repo.recordABid(auction.getId(), new Bid(BUYER, auction.getCurrentAuctionValue().add(BigDecimal.ONE)));
+        }
+        clock.advance(Duration.ofSeconds(1));
+        repo.closeEndedAuctions();
+      }
+      int expectedClosed = inserted - 2;// those inserted during the last five minutes are still open
+      assertThat(repo.findOpenAuctions(0, 10).size(), is(2));
+      assertThat(repo.findClosedAuctions(0, 100).size(), is(expectedClosed > 100 ? 100 : expectedClosed));
+      assertThat(repo.findAuctions(0, 10).get(2).getBidCount(), is(300));// two auctions receive bids each second
+      vertx.setTimer(100, id -> context.verify(() -> {
+        assertThat(closedEvents.get(), is(expectedClosed));
+        context.completeNow();
+      }));
+    } finally {
+      UniversalClock.use(UniversalClock.system());
+    }
+  }
+
   @Test
   void findAuctionsPaginationAndSortingTest(Vertx vertx, VertxTestContext context) throws InterruptedException {
     AuctionRepository repo = new AuctionRepository(vertx);
@@ -96,6 +321,59 @@ class AuctionRepositoryTest {
     context.completeNow();
   }
 
+  @Test
+  void findAuctionsWithCursorTest(Vertx vertx, VertxTestContext context) throws InterruptedException {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    Auction shortTermAuction = new Auction("Mercedes Class C", THOUSAND, universalNow().plus(30, MILLIS));
+    repo.upsertAuction(shortTermAuction);
+    for (int i = 0; i < 6; i++) {
+      repo.upsertAuction(new Auction("Carrots and potatoes " + i, FIFTEEN));
+      Thread.sleep(5);
+    }
+
+    List<Auction> page = repo.findOpenAuctions(0, 3);
+    assertThat(page.get(0).getProduct(), is("Carrots and potatoes 5"));
+    Thread.sleep(30);// the short term auction is now closed, it should not shift the next page
+    page = repo.findOpenAuctionsAfter(AuctionCursor.decode(AuctionCursor.of(page.get(2)).encode()), 3);
+    assertThat(page.size(), is(3));
+    assertThat(page.get(0).getProduct(), is("Carrots and potatoes 2"));
+    assertThat(page.get(2).getProduct(), is("Carrots and potatoes 0"));
+    assertThat(repo.findOpenAuctionsAfter(AuctionCursor.of(page.get(2)), 3).size(), is(0));
+
+    page = repo.findAuctionsAfter(AuctionCursor.of(page.get(2)), 3);
+    assertThat(page.size(), is(1));
+    assertThat(page.get(0).getProduct(), is("Mercedes Class C"));
+    context.completeNow();
+  }
+
+  @Test
+  @SystemProperty(name = "auction.shards", value = "4")
+  void shardedListingsAreMergedTest(Vertx vertx, VertxTestContext context) {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    for (int i = 0; i < 40; i++) {
+      repo.upsertAuction(new Auction("Carrots and potatoes " + i, FIFTEEN, universalNow().plusMinutes(i + 1)));
+    }
+    for (int i = 0; i < 40; i++) {
+      assertThat(repo.shardOf("" + i) < 4, is(true));
+    }
+
+    List<Auction> page = repo.findOpenAuctions(5, 10);
+    assertThat(page.size(), is(10));
+    for (int i = 0; i < 10; i++) {
+      assertThat(page.get(i).getProduct(), is("Carrots and potatoes " + (34 - i)));
+    }
+    page = repo.findOpenAuctionsAfter(AuctionCursor.of(page.get(9)), 100);
+    assertThat(page.size(), is(25));
+    assertThat(page.get(24).getProduct(), is("Carrots and potatoes 0"));
+    context.completeNow();
+  }
+
+  @Test
+  void malformedCursorTest() {
+    assertThrows(IllegalArgumentException.class, () -> AuctionCursor.decode("not a cursor"));
+    assertThrows(IllegalArgumentException.class, () -> AuctionCursor.decode("YWJj"));
+  }
+
   @Test
   void checkMaxItemPerPageGreaterThanListSizeTest() {
     assertThat(checkMax(3, 2), is(2));
@@ -0,0 +1,197 @@
+package com.vdlv.realtimeauction.repository;
+
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import io.github.glytching.junit.extension.system.SystemProperty;
+import io.github.glytching.junit.extension.system.SystemPropertyExtension;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.Checkpoint;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.vdlv.realtimeauction.model.Util.*;
+import static java.math.RoundingMode.CEILING;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@ExtendWith({VertxExtension.class, SystemPropertyExtension.class})
+@SystemProperty(name = "vertx.environment", value = "JUNIT")
+class BidJournalTest {
+
+  private final static String BUYER = "John Doe";
+  private final static int SEGMENT_SIZE = 1024;
+
+  @Test
+  void journalIsReplayedTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openJournal(directory, SEGMENT_SIZE);
+    Auction auction = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN));
+    Auction otherAuction = new Auction("Mercedes Class A", THOUSAND);
+    otherAuction.addBid(new Bid(BUYER, TWO_THOUSAND));
+    repo.upsertAuction(otherAuction);
+
+    Checkpoint durableBids = context.checkpoint(20);
+    for (int i = 0; i < 20; i++) {// more than a segment
+      repo.recordABid(auction.getId(), new Bid(BUYER, BigDecimal.valueOf(20 + i)), context.succeeding(accepted -> context.verify(() -> {
+        assertThat(accepted.isAccepted(), is(true));
+        durableBids.flag();
+      })));
+    }
+    assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), is(true));
+    repo.closeJournal();
+
+    Vertx restarted = Vertx.vertx();
+    try {
+      AuctionRepository restored = new AuctionRepository(restarted);
+      restored.openJournal(directory, SEGMENT_SIZE);
+      assertThat(restored.findAuctions(0, 10).size(), is(2));
+      Auction restoredAuction = restored.findAuctionById(auction.getId()).get();
+      assertThat(restoredAuction.getBidCount(), is(20));
+      assertThat(restoredAuction.getCurrentAuctionValue(), is(BigDecimal.valueOf(39).setScale(2, CEILING)));
+      assertThat(restoredAuction.getEndingTime(), is(auction.getEndingTime()));
+      assertThat(restored.findAuctionById(otherAuction.getId()).get().getCurrentBuyer(), is(BUYER));
+      restored.closeJournal();
+    } finally {
+      restarted.close();
+    }
+  }
+
+  @Test
+  void snapshotCompactsJournalTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openJournal(directory, SEGMENT_SIZE);
+    Auction auction = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN));
+    Auction otherAuction = repo.upsertAuction(new Auction("Mercedes Class A", THOUSAND));
+    Checkpoint durableBids = context.checkpoint(21);
+    for (int i = 0; i < 20; i++) {// more than a segment
+      repo.recordABid(auction.getId(), new Bid(BUYER, BigDecimal.valueOf(20 + i)), context.succeeding(accepted -> durableBids.flag()));
+    }
+    repo.snapshot();// the bids appended before are in the snapshot, whether they are applied yet or not
+    repo.recordABid(otherAuction.getId(), new Bid(BUYER, TWO_THOUSAND), context.succeeding(accepted -> durableBids.flag()));
+    assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), is(true));
+    repo.closeJournal();
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.map(file -> file.getFileName().toString()).filter(name -> name.startsWith("snapshot-")).count(), is(1L));
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.filter(file -> file.getFileName().toString().startsWith("journal-")).count(), is(1L));// only the segment written after the snapshot
+    }
+
+    Vertx restarted = Vertx.vertx();
+    try {
+      AuctionRepository restored = new AuctionRepository(restarted);
+      restored.openJournal(directory, SEGMENT_SIZE);
+      assertThat(restored.findAuctions(0, 10).size(), is(2));
+      Auction restoredAuction = restored.findAuctionById(auction.getId()).get();
+      assertThat(restoredAuction.getBidCount(), is(20));
+      assertThat(restoredAuction.getCurrentAuctionValue(), is(BigDecimal.valueOf(39).setScale(2, CEILING)));
+      assertThat(restored.findAuctionById(otherAuction.getId()).get().getCurrentBuyer(), is(BUYER));
+      restored.closeJournal();
+    } finally {
+      restarted.close();
+    }
+  }
+
+  @Test
+  void journaledBidIsRecordedOnceDurableTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openJournal(directory, SEGMENT_SIZE);
+    Auction auction = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN));
+    assertThrows(IllegalStateException.class, () -> repo.recordABid(auction.getId(), new Bid(BUYER, TWENTY)));
+    assertThat(repo.findAuctionById(auction.getId()).get().getBidCount(), is(0));
+
+    Checkpoint durableBids = context.checkpoint(2);
+    repo.recordABid(auction.getId(), new Bid(BUYER, THOUSAND), context.succeeding(accepted -> context.verify(() -> {
+      assertThat(accepted.isAccepted(), is(true));
+      durableBids.flag();
+    })));
+    repo.recordABid(auction.getId(), new Bid(BUYER, TWO_HUNDRED), context.succeeding(outbid -> context.verify(() -> {
+      assertThat(outbid.isAccepted(), is(false));// outbid while being journaled
+      assertThat(outbid.getAuction().getCurrentAuctionValue(), is(THOUSAND));
+      durableBids.flag();
+    })));
+    assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), is(true));
+    repo.closeJournal();
+  }
+
+  @Test
+  void journaledBatchIsRecordedOnceDurableTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openJournal(directory, SEGMENT_SIZE);
+    Auction auction = repo.upsertAuction(new Auction("Carrots and potatoes", FIFTEEN));
+    Checkpoint durableBids = context.checkpoint();
+    repo.recordBids(auction.getId(), Arrays.asList(new Bid(BUYER, THOUSAND), new Bid(BUYER, TWO_HUNDRED), new Bid(BUYER, TWO_THOUSAND)),
+      context.succeeding(outcomes -> context.verify(() -> {
+        assertThat(outcomes.get(0).isAccepted(), is(true));
+        assertThat(outcomes.get(1).isAccepted(), is(false));
+        assertThat(outcomes.get(2).isAccepted(), is(true));
+        assertThat(outcomes.get(0).getAuction().getCurrentAuctionValue(), is(TWO_THOUSAND));// the snapshot of the batch
+        assertThat(outcomes.get(0).getVersion(), is(outcomes.get(2).getVersion()));
+        durableBids.flag();
+      })));
+    assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), is(true));
+    repo.closeJournal();
+
+    Vertx restarted = Vertx.vertx();
+    try {
+      AuctionRepository restored = new AuctionRepository(restarted);
+      restored.openJournal(directory, SEGMENT_SIZE);
+      assertThat(restored.findAuctionById(auction.getId()).get().getBidCount(), is(2));
+      restored.closeJournal();
+    } finally {
+      restarted.close();
+    }
+  }
+
+  @Test
+  void appendRacingWithCloseIsAnsweredTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws Exception {
+    BidJournal journal = BidJournal.open(directory, SEGMENT_SIZE, new BidJournal.Visitor() {
+      @Override
+      public void onAuction(Auction auction) {
+      }
+
+      @Override
+      public void onBid(String auctionId, Bid bid) {
+      }
+    });
+    int appends = 1000;
+    Checkpoint answered = context.checkpoint(appends + 1);
+    Thread appender = new Thread(() -> {
+      for (int i = 0; i < appends; i++) {// some before the close, some during, some after: all of them are answered
+        journal.appendBid("auction", new Bid(BUYER, BigDecimal.valueOf(20 + i)), () -> null, result -> answered.flag());
+      }
+    });
+    appender.start();
+    journal.close();
+    appender.join();
+    journal.appendBid("auction", new Bid(BUYER, TWENTY), () -> null, context.failing(closed -> context.verify(() -> {
+      assertThat(closed instanceof IllegalStateException, is(true));
+      answered.flag();
+    })));
+    assertThat(context.awaitCompletion(5, TimeUnit.SECONDS), is(true));
+  }
+
+  @Test
+  void journalWithoutRecordTest(Vertx vertx, VertxTestContext context, @TempDir Path directory) throws IOException {
+    AuctionRepository repo = new AuctionRepository(vertx);
+    repo.openJournal(directory, SEGMENT_SIZE);
+    repo.closeJournal();
+    repo.openJournal(directory, SEGMENT_SIZE);
+    assertThat(repo.findAuctions(0, 10).size(), is(0));
+    repo.closeJournal();
+    context.completeNow();
+  }
+}
@@ -0,0 +1,52 @@
+package com.vdlv.realtimeauction.repository;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class ChangeLogTest {
+
+  @Test
+  @Tag("Unit")
+  void changesAreDeduplicatedTest() {
+    ChangeLog log = new ChangeLog(8);
+    assertThat(log.version(), is(0L));
+    log.add("a");
+    log.add("b");
+    log.add("a");
+    log.add("c");
+
+    Set<String> ids = new LinkedHashSet<>();
+    assertThat(log.since(0, ids), is(4L));
+    assertThat(new ArrayList<>(ids), is(asList("a", "b", "c")));
+    ids.clear();
+    assertThat(log.since(3, ids), is(4L));
+    assertThat(new ArrayList<>(ids), is(asList("c")));
+    ids.clear();
+    assertThat(log.since(4, ids), is(4L));
+    assertThat(ids, is(empty()));
+  }
+
+  @Test
+  @Tag("Unit")
+  void rolledOverChangesRequireAResyncTest() {
+    ChangeLog log = new ChangeLog(4);
+    for (int i = 0; i < 10; i++) {
+      log.add("auction " + i);
+    }
+    Set<String> ids = new LinkedHashSet<>();
+    assertThat(log.since(5, ids), is(-1L));
+    assertThat(log.since(6, ids), is(10L));
+    assertThat(ids.size(), is(4));
+    assertThat(log.since(11, ids), is(-1L));// not provided by this log
+    assertThat(log.since(-1, ids), is(-1L));
+  }
+}
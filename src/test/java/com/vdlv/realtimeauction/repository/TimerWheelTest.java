@@ -0,0 +1,64 @@
+package com.vdlv.realtimeauction.repository;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class TimerWheelTest {
+
+  private static final long START = 1_000_000L;
+
+  @Test
+  @Tag("Unit")
+  void timersFireAtTheirDeadlineTest() {
+    TimerWheel<String> wheel = new TimerWheel<>(START);
+    wheel.schedule(START + 10, "10 ms");
+    wheel.schedule(START + 5_000, "5 s");
+    wheel.schedule(START + 3_600_000, "1 h");
+    wheel.schedule(START + 63, "63 ms");
+    wheel.schedule(START + 64, "64 ms");
+
+    assertThat(wheel.advance(START + 9), is(empty()));
+    assertThat(wheel.advance(START + 10), is(asList("10 ms")));
+    assertThat(wheel.advance(START + 4_999), is(asList("63 ms", "64 ms")));
+    assertThat(wheel.advance(START + 5_000), is(asList("5 s")));
+    assertThat(wheel.advance(START + 3_599_999), is(empty()));
+    assertThat(wheel.size(), is(1));
+    assertThat(wheel.advance(START + 3_600_000), is(asList("1 h")));
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  @Tag("Unit")
+  void everyTimerFiresExactlyOnceTest() {
+    TimerWheel<Long> wheel = new TimerWheel<>(START);
+    for (long delay = 1; delay < 300_000; delay += 997) {
+      wheel.schedule(START + delay, START + delay);
+    }
+    List<Long> fired = new ArrayList<>();
+    for (long now = START; now < START + 300_000; now += 250) {
+      for (Long deadline : wheel.advance(now)) {
+        assertThat(deadline <= now && deadline > now - 250, is(true));
+        fired.add(deadline);
+      }
+    }
+    assertThat(fired.size(), is(301));
+    assertThat(wheel.size(), is(0));
+  }
+
+  @Test
+  @Tag("Unit")
+  void pastDeadlineFiresOnNextTickTest() {
+    TimerWheel<String> wheel = new TimerWheel<>(START);
+    wheel.advance(START + 100);
+    wheel.schedule(START, "late");
+    assertThat(wheel.advance(START + 101), is(asList("late")));
+  }
+}
@@ -0,0 +1,115 @@
+package com.vdlv.realtimeauction.verticles;
+
+import com.vdlv.realtimeauction.handlers.AuctionHandler;
+import com.vdlv.realtimeauction.handlers.BidPublisher;
+import com.vdlv.realtimeauction.model.Auction;
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.WebSocket;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.auth.KeyStoreOptions;
+import io.vertx.ext.auth.jwt.JWTAuth;
+import io.vertx.ext.auth.jwt.JWTAuthOptions;
+import io.vertx.ext.jwt.JWTOptions;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A rough benchmark of the push of the accepted bids to the browsers (not run by the build): the messages per second
+ * received by the clients and the bytes per update, through the SockJS event bus bridge (its raw WebSocket transport,
+ * the lightest one) and through the native WebSocket endpoint of {@link FrontEndVerticle}. The clients subscribe to
+ * all the auctions, which receive bids in turn, each update being published (no conflation).
+ * Run it with {@code java -cp target/test-classes:target/classes:<deps> ...BroadcastBenchmark}, along with a
+ * {@code java.util.logging.config.file} at the WARNING level.
+ */
+public final class BroadcastBenchmark {
+  private static final int PORT = 8183;
+  private static final int AUCTIONS = 10;
+  private static final int CLIENTS = 20;
+  private static final int UPDATES = 10_000;
+  private static final int ROUNDS = 3;
+  private static final String[] BUYERS = {"martin", "john", "jane", "alice", "bob"};
+
+  private BroadcastBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.setProperty("http.port", Integer.toString(PORT));
+    final Vertx vertx = Vertx.vertx();
+    final CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(new FrontEndVerticle(), res -> {
+      if (res.succeeded()) {
+        deployed.complete(res.result());
+      } else {
+        deployed.completeExceptionally(res.cause());
+      }
+    });
+    deployed.get();
+    final String token = JWTAuth.create(vertx, new JWTAuthOptions()// the native endpoint is authenticated
+      .setKeyStore(new KeyStoreOptions().setType("jceks").setPath("keystore.jceks").setPassword("secret")))
+      .generateToken(new JsonObject().put("sub", "benchmark"), new JWTOptions().setExpiresInMinutes(60));
+    final BidPublisher publisher = AuctionHandler.publisher(vertx, 0, 0);
+    final List<Auction> auctions = new ArrayList<>();
+    for (int i = 0; i < AUCTIONS; i++) {
+      auctions.add(new Auction("Product " + i, BigDecimal.ONE, Util.universalNow().plusHours(1)));
+    }
+    final HttpClient client = vertx.createHttpClient(new HttpClientOptions().setMaxPoolSize(CLIENTS));// one connection per socket
+    for (int round = 0; round < ROUNDS; round++) {
+      run(vertx, client, publisher, auctions, "sockjs", "/eventbus/websocket", (socket, auction) ->
+        socket.writeTextMessage(new JsonObject().put("type", "register").put("address", Util.bidsAddress(auction.getId())).encode()));
+      run(vertx, client, publisher, auctions, "native", "/ws/auctions?token=" + token, (socket, auction) ->
+        socket.writeTextMessage(new JsonObject().put("subscribe", new JsonArray().add(auction.getId())).encode()));
+    }
+    vertx.close();
+  }
+
+  private static void run(Vertx vertx, HttpClient client, BidPublisher publisher, List<Auction> auctions, String name,
+                          String uri, Subscriber subscriber) throws Exception {
+    final CountDownLatch received = new CountDownLatch(UPDATES * CLIENTS);
+    final AtomicLong bytes = new AtomicLong();
+    final List<WebSocket> sockets = new ArrayList<>();
+    for (int c = 0; c < CLIENTS; c++) {
+      final CompletableFuture<WebSocket> connected = new CompletableFuture<>();
+      client.websocket(PORT, "localhost", uri, connected::complete, connected::completeExceptionally);
+      final WebSocket socket = connected.get();
+      socket.frameHandler(frame -> {
+        if (frame.isBinary() || !frame.textData().contains("subscribed")) {// not the subscription acknowledgements
+          bytes.addAndGet(frame.binaryData().length());
+          received.countDown();
+        }
+      });
+      auctions.forEach(auction -> subscriber.subscribe(socket, auction));
+      sockets.add(socket);
+    }
+    Thread.sleep(500);// the subscriptions are registered
+    final long start = System.nanoTime();
+    vertx.runOnContext(v -> {
+      for (int u = 0; u < UPDATES; u++) {
+        final Auction auction = auctions.get(u % AUCTIONS);
+        auction.addBid(new Bid(BUYERS[u % BUYERS.length], auction.getCurrentAuctionValue().add(BigDecimal.ONE)));
+        publisher.publish(auction);
+      }
+    });
+    final boolean complete = received.await(60, TimeUnit.SECONDS);
+    final long elapsed = System.nanoTime() - start;
+    final long messages = (long) UPDATES * CLIENTS - received.getCount();
+    System.out.printf("%s: %9.0f messages/s, %6.1f bytes/update%s%n", name, messages / (elapsed / 1e9),
+      bytes.get() / (double) messages, complete ? "" : " (incomplete: " + messages + " messages)");
+    sockets.forEach(WebSocket::close);
+    Thread.sleep(200);
+  }
+
+  private interface Subscriber {
+    void subscribe(WebSocket socket, Auction auction);
+  }
+}
@@ -1,17 +1,26 @@
 package com.vdlv.realtimeauction.verticles;
 
+import com.vdlv.realtimeauction.handlers.AuctionHandler;
+import com.vdlv.realtimeauction.handlers.AuctionSubscriptions;
+import com.vdlv.realtimeauction.handlers.BidPublisher;
+import com.vdlv.realtimeauction.model.Bid;
+import com.vdlv.realtimeauction.model.Util;
 import com.vdlv.realtimeauction.repository.AuctionRepository;
 import io.github.glytching.junit.extension.system.SystemProperty;
 import io.github.glytching.junit.extension.system.SystemPropertyExtension;
 import io.restassured.RestAssured;
 import io.restassured.http.ContentType;
 import io.restassured.response.Response;
+import io.vertx.core.MultiMap;
 import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.ext.web.client.WebClient;
+import io.vertx.junit5.Checkpoint;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
 import org.junit.jupiter.api.AfterAll;
@@ -20,7 +29,10 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import java.math.BigDecimal;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.restassured.RestAssured.given;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -45,10 +57,11 @@ class FrontEndVerticleTest {
 
   @BeforeEach
   void init(Vertx vertx, VertxTestContext testContext) {
-    vertx.deployVerticle(new FrontEndVerticle(), testContext.succeeding(ar -> {
-      wait(50);// ensure server is really really started (we had sometimes connection refused messages)
-      testContext.completeNow();
-    }));
+    AuctionShardVerticle.deployAll(vertx, testContext.succeeding(shards ->
+      vertx.deployVerticle(new FrontEndVerticle(), testContext.succeeding(ar -> {
+        wait(50);// ensure server is really really started (we had sometimes connection refused messages)
+        testContext.completeNow();
+      }))));
     AuctionManagementVerticle.initializeAuctions(new AuctionRepository(vertx));
   }
 
@@ -153,6 +166,106 @@ class FrontEndVerticleTest {
       })));
   }
 
+  @Test
+  void getOpenAuctionsWithCursor(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    WebClient webClient = WebClient.create(vertx);
+    webClient.get(8080, "localhost", "/api/auctions")
+      .addQueryParam("offset", "0")
+      .addQueryParam("max", "3")
+      .addQueryParam("closed", "false")
+      .bearerTokenAuthentication(token)
+      .send(testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(200));
+        assertThat(response.bodyAsJsonArray().size(), is(3));
+        String cursor = response.getHeader("X-Next-Cursor");
+        assertThat(cursor, not(isEmptyOrNullString()));
+        webClient.get(8080, "localhost", "/api/auctions")
+          .addQueryParam("offset", "0")
+          .addQueryParam("max", "3")
+          .addQueryParam("closed", "false")
+          .addQueryParam("cursor", cursor)
+          .bearerTokenAuthentication(token)
+          .send(testContext.succeeding(next -> testContext.verify(() -> {
+            assertThat(next.statusCode(), is(200));
+            assertThat(next.bodyAsJsonArray().size(), is(1));
+            assertThat(next.getHeader("X-Next-Cursor"), nullValue());
+            testContext.completeNow();
+          })));
+      })));
+  }
+
+  @Test
+  void getAuctionsIfNoneMatch(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    String auctionId = auctions(false, token).getJsonObject(0).getString("id");
+    WebClient webClient = WebClient.create(vertx);
+    webClient.get(8080, "localhost", "/api/auctions?closed=false&offset=0&max=10")
+      .bearerTokenAuthentication(token)
+      .send(testContext.succeeding(first -> {
+        String etag = first.getHeader("ETag");
+        webClient.get(8080, "localhost", "/api/auctions?closed=false&offset=0&max=10")
+          .bearerTokenAuthentication(token)
+          .putHeader("If-None-Match", etag)
+          .send(testContext.succeeding(unchanged -> testContext.verify(() -> {
+            assertThat(first.statusCode(), is(200));
+            assertThat(unchanged.statusCode(), is(304));
+            assertThat(unchanged.getHeader("ETag"), is(etag));
+            assertThat(new AuctionRepository(vertx).recordABid(auctionId, new Bid("martin", new BigDecimal("100000"))).isAccepted(), is(true));
+            webClient.get(8080, "localhost", "/api/auctions?closed=false&offset=0&max=10")
+              .bearerTokenAuthentication(token)
+              .putHeader("If-None-Match", etag)
+              .send(testContext.succeeding(changed -> testContext.verify(() -> {
+                assertThat(changed.statusCode(), is(200));
+                assertThat(changed.getHeader("ETag"), not(etag));
+                testContext.completeNow();
+              })));
+          })));
+      }));
+  }
+
+  @Test
+  void getChangesSinceAVersion(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    String auctionId = auctions(false, token).getJsonObject(0).getString("id");
+    WebClient webClient = WebClient.create(vertx);
+    webClient.get(8080, "localhost", "/api/auctions/changes")
+      .bearerTokenAuthentication(token)
+      .send(testContext.succeeding(initial -> {
+        JsonObject resync = initial.bodyAsJsonObject();
+        new AuctionRepository(vertx).recordABid(auctionId, new Bid("martin", new BigDecimal("100000")));
+        webClient.get(8080, "localhost", "/api/auctions/changes")
+          .bearerTokenAuthentication(token)
+          .addQueryParam("since", resync.getString("version"))
+          .send(testContext.succeeding(delta -> testContext.verify(() -> {
+            assertThat(resync.getBoolean("resync"), is(true));
+            assertThat(resync.getJsonArray("auctions").size(), is(0));
+            JsonObject changes = delta.bodyAsJsonObject();
+            assertThat(changes.getBoolean("resync"), is(false));
+            assertThat(changes.getJsonArray("auctions").size(), is(1));
+            assertThat(changes.getJsonArray("auctions").getJsonObject(0).getString("buyer"), is("martin"));
+            assertThat(changes.getString("version"), not(resync.getString("version")));
+            testContext.completeNow();
+          })));
+      }));
+  }
+
+  @Test
+  void getAuctionsWithInvalidCursor(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    WebClient webClient = WebClient.create(vertx);
+    webClient.get(8080, "localhost", "/api/auctions")
+      .addQueryParam("offset", "0")
+      .addQueryParam("max", "3")
+      .addQueryParam("cursor", "YWJj")
+      .bearerTokenAuthentication(token)
+      .send(testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(422));
+        assertThat(response.bodyAsJsonObject().getString("param"), is("cursor"));
+        testContext.completeNow();
+      })));
+  }
+
   @Test
   void getClosedAuctions(Vertx vertx, VertxTestContext testContext) {
     String token = authenticate("martin", "test123");
@@ -188,6 +301,306 @@ class FrontEndVerticleTest {
       })));
   }
 
+  @Test
+  void bidsArePushedToTheSocketsRegisteredToTheirAuction(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray auctions = auctions(false, token);
+    String watched = auctions.getJsonObject(0).getString("id");
+    String other = auctions.getJsonObject(1).getString("id");
+
+    WebClient webClient = WebClient.create(vertx);
+    AtomicLong retries = new AtomicLong(-1);
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", socket -> {
+      socket.handler(frame -> testContext.verify(() -> {
+        JsonObject message = frame.toJsonObject();
+        assertThat(message.getString("address"), is(Util.bidsAddress(watched)));// never the other auction
+        assertThat(new JsonObject(message.getString("body")).getString("id"), is(watched));
+        vertx.cancelTimer(retries.get());
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("type", "register").put("address", Util.bidsAddress(watched)).encode());
+      AtomicInteger round = new AtomicInteger();
+      // the bridge does not acknowledge a registration: bid again until the bid of the watched auction is pushed
+      retries.set(vertx.setPeriodic(100, id -> {
+        double price = 10000.0 + round.incrementAndGet();
+        webClient.patch(8080, "localhost", "/api/bid/" + other)
+          .bearerTokenAuthentication(token)
+          .sendJsonObject(new JsonObject().put("price", price), testContext.succeeding(first ->
+            webClient.patch(8080, "localhost", "/api/bid/" + watched)
+              .bearerTokenAuthentication(token)
+              .sendJsonObject(new JsonObject().put("price", price), testContext.succeeding(second -> testContext.verify(() -> {
+                assertThat(first.statusCode(), is(200));
+                assertThat(second.statusCode(), is(200));
+              })))));
+      }));
+    }, testContext::failNow);
+  }
+
+  @Test
+  void pricesArePushedToTheNativeSocketsSubscribedToTheirAuction(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray auctions = auctions(false, token);
+    String watched = auctions.getJsonObject(0).getString("id");
+    String other = auctions.getJsonObject(1).getString("id");
+
+    WebClient webClient = WebClient.create(vertx);
+    vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions?token=" + token, socket -> {
+      socket.textMessageHandler(text -> testContext.verify(() -> {
+        assertThat(new JsonObject(text).getJsonObject("subscribed").getInteger(watched), is(0));
+        webClient.patch(8080, "localhost", "/api/bid/" + other)
+          .bearerTokenAuthentication(token)
+          .sendJsonObject(new JsonObject().put("price", 10000.0), testContext.succeeding(first ->
+            webClient.patch(8080, "localhost", "/api/bid/" + watched)
+              .bearerTokenAuthentication(token)
+              .sendJsonObject(new JsonObject().put("price", 10000.0), testContext.succeeding(second -> testContext.verify(() -> {
+                assertThat(first.statusCode(), is(200));
+                assertThat(second.statusCode(), is(200));
+              })))));
+      }));
+      socket.binaryMessageHandler(frame -> testContext.verify(() -> {
+        // never the other auction: index 0, 10000.00, buyer 0 named martin
+        assertThat(frame, is(Buffer.buffer(new byte[]{0, (byte) 0xc0, (byte) 0x84, 0x3d, 0, 7}).appendString("martin")));
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("subscribe", new JsonArray().add(watched)).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void nativeSocketRejectsMalformedRequests(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions?token=" + token, socket -> {
+      socket.textMessageHandler(text -> testContext.verify(() -> {
+        assertThat(new JsonObject(text).getString("error"), startsWith("Expected subscribe or unsubscribe"));
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("subscribe", "not an array").encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void nativeSocketRepliesOnceBeyondTheMaximumSubscriptions(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray ids = new JsonArray();
+    for (int i = 0; i <= 1000; i++) {
+      ids.add("auction-" + i);
+    }
+    Checkpoint replied = testContext.checkpoint();// a second reply fails the test
+    vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions?token=" + token, socket -> {
+      socket.textMessageHandler(text -> testContext.verify(() -> {
+        JsonObject reply = new JsonObject(text);
+        assertThat(reply.getJsonObject("subscribed").size(), is(1000));
+        assertThat(reply.getJsonArray("rejected"), is(new JsonArray().add("auction-1000")));
+        assertThat(reply.getString("error"), startsWith("Too many subscriptions"));
+        replied.flag();
+      }));
+      socket.writeTextMessage(new JsonObject().put("subscribe", ids).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void nativeSocketRefusesAnonymousClients(Vertx vertx, VertxTestContext testContext) {
+    vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions?token=forged",
+      socket -> testContext.failNow(new AssertionError("The socket was opened without a valid token")),
+      failure -> vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions",
+        socket -> testContext.failNow(new AssertionError("The socket was opened without a token")),
+        anonymous -> testContext.verify(() -> {
+          assertThat(failure.getMessage(), containsString("401"));
+          assertThat(anonymous.getMessage(), containsString("401"));
+          testContext.completeNow();
+        })));
+  }
+
+  @Test
+  void subscriptionStreamsTheUpdatesAfterItsSnapshot(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    String address = Util.SubscriptionsTopic + ".snapshot-0123456789";
+    String[] snapshot = new String[2];// version, watched auction
+
+    WebClient webClient = WebClient.create(vertx);
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", socket -> {
+      socket.handler(frame -> testContext.verify(() -> {
+        JsonObject message = frame.toJsonObject();
+        if (AuctionSubscriptions.REGISTERED.equals(message.getString("body"))) {
+          assertThat(message.getString("address"), is(address));
+          socket.writeTextMessage(new JsonObject().put("type", "send").put("address", Util.SubscribeAddress)
+            .put("replyAddress", "reply").put("headers", bearer(token))
+            .put("body", new JsonObject().put("address", address).put("offset", 0).put("max", 10)).encode());
+        } else if ("reply".equals(message.getString("address"))) {
+          JsonObject reply = new JsonObject(message.getString("body"));
+          assertThat(reply.getBoolean("snapshot"), is(true));
+          assertThat(reply.getJsonArray("auctions").size(), is(4));
+          snapshot[0] = reply.getString("version");
+          snapshot[1] = reply.getJsonArray("auctions").getJsonObject(0).getString("id");
+          webClient.patch(8080, "localhost", "/api/bid/" + snapshot[1])
+            .bearerTokenAuthentication(token)
+            .sendJsonObject(new JsonObject().put("price", 10000.0), testContext.succeeding(response ->
+              testContext.verify(() -> assertThat(response.statusCode(), is(200)))));
+        } else {
+          assertThat(message.getString("address"), is(address));
+          JsonObject headers = message.getJsonObject("headers");
+          assertThat(headers.getString(AuctionSubscriptions.AUCTION_HEADER), is(snapshot[1]));
+          assertThat(changeNumber(headers.getString(BidPublisher.VERSION_HEADER)), greaterThan(changeNumber(snapshot[0])));
+          assertThat(new JsonObject(message.getString("body")).getDouble("price"), is(10000.0));
+          testContext.completeNow();
+        }
+      }));
+      socket.writeTextMessage(new JsonObject().put("type", "register").put("address", address).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void subscriptionResumesFromAKnownVersion(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray auctions = auctions(false, token);
+    String changed = auctions.getJsonObject(0).getString("id");
+    String unchanged = auctions.getJsonObject(1).getString("id");
+    AuctionRepository repository = new AuctionRepository(vertx);
+    String version = repository.findChangesSince(null).getVersion();
+    repository.recordABid(changed, new Bid("martin", new BigDecimal("100000")));// while disconnected
+    String address = Util.SubscriptionsTopic + ".resumed-0123456789";
+
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", socket -> {
+      socket.handler(frame -> testContext.verify(() -> {
+        if (AuctionSubscriptions.REGISTERED.equals(frame.toJsonObject().getString("body"))) {// resumed once registered
+          socket.writeTextMessage(new JsonObject().put("type", "send").put("address", Util.SubscribeAddress)
+            .put("replyAddress", "reply").put("headers", bearer(token))
+            .put("body", new JsonObject().put("address", address).put("since", version)
+              .put("auctions", new JsonArray().add(changed).add(unchanged))).encode());
+          return;
+        }
+        JsonObject reply = new JsonObject(frame.toJsonObject().getString("body"));
+        assertThat(reply.getBoolean("snapshot"), is(false));
+        assertThat(reply.getJsonArray("auctions").size(), is(1));// the changes only
+        assertThat(reply.getJsonArray("auctions").getJsonObject(0).getString("id"), is(changed));
+        assertThat(changeNumber(reply.getString("version")), greaterThan(changeNumber(version)));
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("type", "register").put("address", address).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void subscriptionRequiresItsAddressToBeRegistered(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", socket -> {
+      socket.handler(frame -> testContext.verify(() -> {
+        JsonObject error = frame.toJsonObject();
+        assertThat(error.getString("type"), is("err"));
+        assertThat(error.getInteger("failureCode"), is(400));
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("type", "send").put("address", Util.SubscribeAddress)
+        .put("replyAddress", "reply").put("headers", bearer(token))
+        .put("body", new JsonObject().put("address", Util.SubscriptionsTopic + ".unregistered-0123456789")).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void subscriptionRequiresAToken(Vertx vertx, VertxTestContext testContext) {
+    String address = Util.SubscriptionsTopic + ".anonymous-0123456789";
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", socket -> {
+      socket.handler(frame -> testContext.verify(() -> {
+        JsonObject message = frame.toJsonObject();
+        if (AuctionSubscriptions.REGISTERED.equals(message.getString("body"))) {// registering needs no token
+          socket.writeTextMessage(new JsonObject().put("type", "send").put("address", Util.SubscribeAddress)
+            .put("replyAddress", "reply").put("headers", bearer("forged"))
+            .put("body", new JsonObject().put("address", address).put("offset", 0).put("max", 10)).encode());
+          return;
+        }
+        assertThat(message.getString("type"), is("err"));
+        assertThat(message.getString("body"), is("rejected"));// by the bridge hook
+        testContext.completeNow();
+      }));
+      socket.writeTextMessage(new JsonObject().put("type", "register").put("address", address).encode());
+    }, testContext::failNow);
+  }
+
+  @Test
+  void subscriptionAddressesAreBoundedAndOwned(Vertx vertx, VertxTestContext testContext) {
+    String owned = Util.SubscriptionsTopic + ".owned-0123456789";
+    vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", owner -> {
+      owner.handler(registered -> vertx.createHttpClient().websocket(8080, "localhost", "/eventbus/websocket", other -> {
+        AtomicInteger denied = new AtomicInteger();
+        other.handler(frame -> testContext.verify(() -> {
+          JsonObject error = frame.toJsonObject();
+          if (AuctionSubscriptions.REGISTERED.equals(error.getString("body"))) {
+            return;// the addresses within the limit
+          }
+          assertThat(error.getString("type"), is("err"));
+          assertThat(error.getString("body"), is("rejected"));// by the bridge hook
+          if (denied.incrementAndGet() == 2) {// the address of the owner, then the address beyond the limit
+            testContext.completeNow();
+          }
+        }));
+        other.writeTextMessage(new JsonObject().put("type", "register").put("address", owned).encode());
+        for (int i = 0; i <= 4; i++) {// 4 subscriptions per socket by default
+          other.writeTextMessage(new JsonObject().put("type", "register")
+            .put("address", Util.SubscriptionsTopic + ".other-0123456789-" + i).encode());
+        }
+      }, testContext::failNow));
+      owner.writeTextMessage(new JsonObject().put("type", "register").put("address", owned).encode());// acknowledged
+    }, testContext::failNow);
+  }
+
+  private static JsonObject bearer(String token) {
+    return new JsonObject().put("Authorization", "Bearer " + token);
+  }
+
+  private static long changeNumber(String version) {
+    return Long.parseLong(version.substring(version.indexOf('-') + 1));
+  }
+
+  @Test
+  void getSubscribersMetrics(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    WebClient webClient = WebClient.create(vertx);
+    MultiMap headers = MultiMap.caseInsensitiveMultiMap().add(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+    vertx.createHttpClient().websocket(8080, "localhost", "/ws/auctions", headers, socket ->
+      webClient.get(8080, "localhost", "/api/subscribers")
+        .bearerTokenAuthentication(token)
+        .send(testContext.succeeding(response -> testContext.verify(() -> {
+          assertThat(response.statusCode(), is(200));
+          JsonArray subscribers = response.bodyAsJsonArray();
+          assertThat(subscribers.size(), is(1));
+          JsonObject subscriber = subscribers.getJsonObject(0);
+          assertThat(subscriber.getString("transport"), is("native"));
+          assertThat(subscriber.getString("policy"), is("CONFLATE"));
+          assertThat(subscriber.getInteger("depth"), is(0));
+          assertThat(subscriber.getLong("dropped"), is(0L));
+          assertThat(subscriber.containsKey("remote"), is(false));// the clients are not disclosed to the bidders
+          testContext.completeNow();
+        }))), testContext::failNow);
+  }
+
+  @Test
+  void bidForAnAuctionInBinary(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray auctions = auctions(false, token);
+    JsonObject auction = auctions.getJsonObject(0);
+
+    WebClient webClient = WebClient.create(vertx);
+    webClient.patch(8080, "localhost", "/api/bid/" + auction.getString("id"))
+      .bearerTokenAuthentication(token)
+      .putHeader("Content-Type", AuctionHandler.BINARY_MEDIA_TYPE)
+      .putHeader("Accept", AuctionHandler.BINARY_MEDIA_TYPE + ", application/json;q=0.5")
+      .sendBuffer(Buffer.buffer(new byte[]{(byte) 0xc0, (byte) 0x84, 0x3d}), testContext.succeeding(bid -> {// 10000.00
+        webClient.get(8080, "localhost", "/api/auctions?closed=false&offset=0&max=10")
+          .bearerTokenAuthentication(token)
+          .putHeader("Accept", AuctionHandler.BINARY_MEDIA_TYPE)
+          .send(testContext.succeeding(listing -> testContext.verify(() -> {
+            assertThat(bid.statusCode(), is(200));
+            assertThat(bid.getHeader("Content-Type"), is(AuctionHandler.BINARY_MEDIA_TYPE));
+            assertThat(new AuctionRepository(vertx).findAuctionById(auction.getString("id")).get().getCurrentBuyer(), is("martin"));
+            assertThat(listing.statusCode(), is(200));
+            assertThat(listing.getHeader("Content-Type"), is(AuctionHandler.BINARY_MEDIA_TYPE));
+            assertThat(listing.getHeader("ETag"), endsWith("-b\""));
+            assertThat(listing.bodyAsBuffer().getByte(0), is((byte) auctions.size()));// the number of auctions
+            testContext.completeNow();
+          })));
+      }));
+  }
+
   @Test
   void bidForAnAuctionWithATooSmallPrice(Vertx vertx, VertxTestContext testContext) {
     String token = authenticate("martin", "test123");
@@ -201,10 +614,34 @@ class FrontEndVerticleTest {
         assertThat(response.statusCode(), is(422));
         JsonObject body = response.bodyAsJsonObject();
         assertThat(body.getString("message"), is("Sorry, your offer is below the current product price"));
+        assertThat(body.getDouble("price"), is(auction.getDouble("price")));
         testContext.completeNow();
       })));
   }
 
+  @Test
+  void bidForAnAuctionWithATooLargePrice(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray auctions = auctions(false, token);
+    JsonObject auction = auctions.getJsonObject(0);
+
+    WebClient webClient = WebClient.create(vertx);
+    webClient.patch(8080, "localhost", "/api/bid/" + auction.getString("id"))
+      .bearerTokenAuthentication(token)
+      .sendJsonObject(new JsonObject().put("price", 1e30), testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(400));// beyond the maximum of the contract
+        byte[] tooManyCents = {-1, -1, -1, -1, -1, -1, -1, -1, 0x7f};// Long.MAX_VALUE, beyond the cents a bid can hold
+        webClient.patch(8080, "localhost", "/api/bid/" + auction.getString("id"))
+          .bearerTokenAuthentication(token)
+          .putHeader("Content-Type", AuctionHandler.BINARY_MEDIA_TYPE)
+          .sendBuffer(Buffer.buffer(tooManyCents), testContext.succeeding(binary -> testContext.verify(() -> {
+            assertThat(binary.statusCode(), is(422));// beyond the maximum of the contract too
+            assertThat(binary.bodyAsJsonObject().getString("type"), is("ValidationException"));
+            testContext.completeNow();
+          })));
+      })));
+  }
+
   @Test
   void bidForAClosedAuction(Vertx vertx, VertxTestContext testContext) {
     String token = authenticate("martin", "test123");
@@ -222,6 +659,71 @@ class FrontEndVerticleTest {
       })));
   }
 
+  @Test
+  void bidForAnUnknownAuction(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+
+    WebClient webClient = WebClient.create(vertx);
+    webClient.patch(8080, "localhost", "/api/bid/unknown")
+      .bearerTokenAuthentication(token)
+      .sendJsonObject(new JsonObject().put("price", 10000.0), testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(404));
+        JsonObject body = response.bodyAsJsonObject();
+        assertThat(body.getString("message"), is("Sorry, this auction does not exist"));
+        testContext.completeNow();
+      })));
+  }
+
+  @Test
+  void batchOfBidsHappyPath(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    JsonArray open = auctions(false, token);
+    JsonObject closed = auctions(true, token).getJsonObject(0);
+    String first = open.getJsonObject(0).getString("id");
+    String second = open.getJsonObject(1).getString("id");
+    JsonArray bids = new JsonArray().
+      add(new JsonObject().put("auctionId", first).put("price", 10000.0)).
+      add(new JsonObject().put("auctionId", second).put("price", 20000.0)).
+      add(new JsonObject().put("auctionId", first).put("price", 9000.0)).
+      add(new JsonObject().put("auctionId", closed.getString("id")).put("price", 10000.0)).
+      add(new JsonObject().put("auctionId", "unknown").put("price", 10000.0)).
+      add(new JsonObject().put("auctionId", first).put("price", 11000.0));
+    Checkpoint broadcasts = testContext.checkpoint(2);// once per updated auction, strict
+    Checkpoint answered = testContext.checkpoint();
+    vertx.eventBus().consumer(Util.bidsAddress(first), message -> broadcasts.flag());
+    vertx.eventBus().consumer(Util.bidsAddress(second), message -> broadcasts.flag());
+
+    WebClient webClient = WebClient.create(vertx);
+    webClient.post(8080, "localhost", "/api/bids")
+      .bearerTokenAuthentication(token)
+      .sendJson(bids, testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(200));
+        JsonArray outcomes = response.bodyAsJsonArray();
+        assertThat(outcomes.size(), is(6));
+        assertThat(outcomes.getJsonObject(0).getBoolean("accepted"), is(true));
+        assertThat(outcomes.getJsonObject(1).getBoolean("accepted"), is(true));
+        assertThat(outcomes.getJsonObject(2).getBoolean("accepted"), is(false));
+        assertThat(outcomes.getJsonObject(2).getString("message"), is("Sorry, your offer is below the current product price"));
+        assertThat(outcomes.getJsonObject(3).getString("message"), is("Sorry, the auction is closed for this product"));
+        assertThat(outcomes.getJsonObject(4).getString("message"), is("Sorry, this auction does not exist"));
+        assertThat(outcomes.getJsonObject(5).getBoolean("accepted"), is(true));
+        assertThat(outcomes.getJsonObject(5).getString("auctionId"), is(first));
+        answered.flag();
+      })));
+  }
+
+  @Test
+  void batchOfBidsMustBeAnArray(Vertx vertx, VertxTestContext testContext) {
+    String token = authenticate("martin", "test123");
+    WebClient webClient = WebClient.create(vertx);
+    webClient.post(8080, "localhost", "/api/bids")
+      .bearerTokenAuthentication(token)
+      .sendJsonObject(new JsonObject().put("price", 10000.0), testContext.succeeding(response -> testContext.verify(() -> {
+        assertThat(response.statusCode(), is(400));// the body does not match the schema
+        testContext.completeNow();
+      })));
+  }
+
   /**
    * Use Rest-Assured for testing authentication and getting the JWT token (I need an integration test library for that
    * not vertx unit test framework)
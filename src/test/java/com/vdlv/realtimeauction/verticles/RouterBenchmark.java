@@ -0,0 +1,211 @@
+package com.vdlv.realtimeauction.verticles;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.ext.web.Router;
+import io.vertx.ext.web.RoutingContext;
+import io.vertx.ext.web.api.RequestParameter;
+import io.vertx.ext.web.api.RequestParameters;
+import io.vertx.ext.web.api.contract.RouterFactoryOptions;
+import io.vertx.ext.web.api.contract.openapi3.OpenAPI3RouterFactory;
+import io.vertx.ext.web.api.validation.HTTPRequestValidationHandler;
+import io.vertx.ext.web.api.validation.ParameterType;
+import io.vertx.ext.web.handler.BodyHandler;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A rough benchmark of the routing and validation overhead of the API (not run by the build): the requests per second
+ * and their p50/p99 latency, with a given number of requests in flight, for a listing (GET with query parameters) and
+ * a bid (PATCH with a JSON body). The handlers only read the parameters and answer at once, so the difference is the
+ * per-request cost of the routers: the validators built by hand on the main router, their parameters being read after
+ * checking their names, as before, and the ones compiled from the OpenAPI contract, mounted as {@link FrontEndVerticle}
+ * does, their parameters being read directly.
+ * Run it with {@code java -cp target/test-classes:target/classes:<deps> ...RouterBenchmark}, along with a
+ * {@code java.util.logging.config.file} at the WARNING level: the default configuration logs each routing step.
+ */
+public final class RouterBenchmark {
+  private static final int REQUESTS = 100_000;
+  private static final int IN_FLIGHT = 64;
+  private static final int ROUNDS = 3;
+  private static final String LISTING = "/api/auctions?closed=false&offset=0&max=10";
+  private static final String BID = "/api/bid/0b6f8a2e-1c3d-4e5f-8a9b-0c1d2e3f4a5b";
+  private static final Buffer BID_BODY = Buffer.buffer("{\"price\":12.5}");
+
+  private RouterBenchmark() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    final Vertx vertx = Vertx.vertx();
+    final HttpServer handBuilt = listen(vertx, handBuilt(vertx), 8181);
+    final HttpServer contract = listen(vertx, contract(vertx), 8182);
+    final HttpClient client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true).setMaxPoolSize(IN_FLIGHT));
+    for (int round = 0; round < ROUNDS; round++) {
+      run(vertx, client, "hand-built listing", 8181, HttpMethod.GET, LISTING, null);
+      run(vertx, client, "contract   listing", 8182, HttpMethod.GET, LISTING, null);
+      run(vertx, client, "hand-built bid    ", 8181, HttpMethod.PATCH, BID, BID_BODY);
+      run(vertx, client, "contract   bid    ", 8182, HttpMethod.PATCH, BID, BID_BODY);
+    }
+    client.close();
+    handBuilt.close();
+    contract.close();
+    vertx.close();
+  }
+
+  /**
+   * @return the router of the API as it was built by hand, before the contract
+   */
+  private static Router handBuilt(Vertx vertx) {
+    final Router router = Router.router(vertx);
+    router.get("/api/auctions")
+      .handler(HTTPRequestValidationHandler.create()
+        .addQueryParam("closed", ParameterType.BOOL, false)
+        .addQueryParam("offset", ParameterType.INT, true)
+        .addQueryParam("max", ParameterType.INT, true)
+        .addQueryParamWithPattern("cursor", "[A-Za-z0-9_-]+", false))
+      .handler(context -> {
+        final RequestParameters params = context.get("parsedParameters");
+        Boolean closed = null;
+        if (params.queryParametersNames().contains("closed")) {
+          closed = params.queryParameter("closed").getBoolean();
+        }
+        Integer offset = 0;
+        if (params.queryParametersNames().contains("offset")) {
+          offset = params.queryParameter("offset").getInteger();
+        }
+        Integer max = 10;
+        if (params.queryParametersNames().contains("max")) {
+          max = params.queryParameter("max").getInteger();
+        }
+        String cursor = null;
+        if (params.queryParametersNames().contains("cursor")) {
+          cursor = params.queryParameter("cursor").getString();
+        }
+        context.response().end(closed + "," + offset + "," + max + "," + cursor);
+      });
+    router.route("/api/bid/*").handler(BodyHandler.create());
+    router.patch("/api/bid/:auctionId")
+      .handler(HTTPRequestValidationHandler.create()
+        .addExpectedContentType("application/json")
+        .addPathParam("auctionId", ParameterType.GENERIC_STRING))
+      .handler(RouterBenchmark::bid);
+    return router;
+  }
+
+  /**
+   * @return the router of the API built from its contract, as {@link FrontEndVerticle} does
+   */
+  private static Router contract(Vertx vertx) throws Exception {
+    final CompletableFuture<OpenAPI3RouterFactory> created = new CompletableFuture<>();
+    OpenAPI3RouterFactory.create(vertx, "openapi.yaml", res -> {
+      if (res.succeeded()) {
+        created.complete(res.result());
+      } else {
+        created.completeExceptionally(res.cause());
+      }
+    });
+    final OpenAPI3RouterFactory factory = created.get();
+    final Handler<RoutingContext> unused = context -> context.response().setStatusCode(501).end();
+    factory
+      .addHandlerByOperationId("getAuctions", context -> {
+        final RequestParameters params = context.get("parsedParameters");
+        final RequestParameter closed = params.queryParameter("closed");
+        final int offset = params.queryParameter("offset").getInteger();
+        final int max = params.queryParameter("max").getInteger();
+        final RequestParameter cursor = params.queryParameter("cursor");
+        context.response().end((closed == null ? null : closed.getBoolean()) + "," + offset + "," + max + ","
+          + (cursor == null ? null : cursor.getString()));
+      })
+      .addHandlerByOperationId("bidForAuction", RouterBenchmark::bid)
+      .addHandlerByOperationId("getChanges", unused)
+      .addHandlerByOperationId("bidsForAuctions", unused)
+      .setOptions(new RouterFactoryOptions().setRequireSecurityHandlers(false));
+    final Router router = Router.router(vertx);
+    router.mountSubRouter("/api", factory.getRouter());
+    return router;
+  }
+
+  private static void bid(RoutingContext context) {
+    final RequestParameters params = context.get("parsedParameters");
+    context.response().end(params.pathParameter("auctionId").getString() + "," + context.getBodyAsJson().getDouble("price"));
+  }
+
+  private static HttpServer listen(Vertx vertx, Router router, int port) throws Exception {
+    final CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router).listen(port, res -> {
+      if (res.succeeded()) {
+        listening.complete(res.result());
+      } else {
+        listening.completeExceptionally(res.cause());
+      }
+    });
+    return listening.get();
+  }
+
+  private static void run(Vertx vertx, HttpClient client, String name, int port, HttpMethod method, String uri,
+                          Buffer body) throws InterruptedException {
+    final CountDownLatch done = new CountDownLatch(REQUESTS);
+    final AtomicInteger sent = new AtomicInteger();
+    final AtomicInteger failures = new AtomicInteger();
+    final long[] latencies = new long[REQUESTS];
+    final Function<Handler<Integer>, HttpClientRequest> request = status -> {
+      final HttpClientRequest req = client.request(method, port, "localhost", uri, response -> {
+        response.bodyHandler(b -> status.handle(response.statusCode()));
+      });
+      if (body != null) {
+        req.putHeader("Content-Type", "application/json");
+      }
+      return req;
+    };
+    final long start = System.nanoTime();
+    vertx.runOnContext(v -> {
+      for (int i = 0; i < IN_FLIGHT; i++) {
+        send(request, body, sent, latencies, failures, done);
+      }
+    });
+    done.await();
+    final long elapsed = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    System.out.printf("%s: %8.0f requests/s, p50 %6.1f us, p99 %7.1f us, %d failures%n", name, REQUESTS / (elapsed / 1e9),
+      latencies[REQUESTS / 2] / 1e3, latencies[REQUESTS * 99 / 100] / 1e3, failures.get());
+  }
+
+  /**
+   * Send a request, and the next one once it is answered.
+   */
+  private static void send(Function<Handler<Integer>, HttpClientRequest> request, Buffer body, AtomicInteger sent,
+                           long[] latencies, AtomicInteger failures, CountDownLatch done) {
+    final int index = sent.getAndIncrement();
+    if (index >= REQUESTS) {
+      return;
+    }
+    final long start = System.nanoTime();
+    final HttpClientRequest req = request.apply(status -> {
+      latencies[index] = System.nanoTime() - start;
+      if (status != 200) {
+        failures.incrementAndGet();
+      }
+      done.countDown();
+      send(request, body, sent, latencies, failures, done);
+    });
+    req.exceptionHandler(e -> {
+      failures.incrementAndGet();
+      done.countDown();
+    });
+    if (body == null) {
+      req.end();
+    } else {
+      req.end(body);
+    }
+  }
+}